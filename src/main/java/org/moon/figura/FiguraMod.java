@@ -2,6 +2,7 @@ package org.moon.figura;
 
 import com.mojang.blaze3d.vertex.PoseStack;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
@@ -12,6 +13,8 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
 import net.minecraft.server.packs.PackType;
 import net.minecraft.server.players.GameProfileCache;
+import net.minecraft.util.profiling.InactiveProfiler;
+import net.minecraft.util.profiling.ProfilerFiller;
 import net.minecraft.world.entity.Entity;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.avatar.AvatarManager;
@@ -28,10 +31,10 @@ import org.moon.figura.gui.PaperDoll;
 import org.moon.figura.gui.PopupMenu;
 import org.moon.figura.lua.FiguraAPIManager;
 import org.moon.figura.lua.FiguraLuaPrinter;
-import org.moon.figura.lua.docs.FiguraDocsManager;
 import org.moon.figura.mixin.SkullBlockEntityAccessor;
 import org.moon.figura.trust.TrustManager;
 import org.moon.figura.utils.ColorUtils;
+import org.moon.figura.utils.SaveScheduler;
 import org.moon.figura.utils.TextUtils;
 import org.moon.figura.utils.Version;
 import org.moon.figura.wizards.AvatarWizard;
@@ -48,10 +51,10 @@ public class FiguraMod implements ClientModInitializer {
 
     public static final String MOD_ID = "figura";
     public static final String MOD_NAME = "Figura";
-    public static final Version VERSION = new Version(FabricLoader.getInstance().getModContainer(FiguraMod.MOD_ID).get().getMetadata().getVersion().getFriendlyString());
+    //no mod container nor game directory outside of the game, like in the unit tests
+    public static final Version VERSION = new Version(FabricLoader.getInstance().getModContainer(FiguraMod.MOD_ID).map(mod -> mod.getMetadata().getVersion().getFriendlyString()).orElse("0.0.0"));
     public static final boolean DEBUG_MODE = Math.random() + 1 < 0;
     public static final Calendar CALENDAR = Calendar.getInstance();
-    public static final Path GAME_DIR = FabricLoader.getInstance().getGameDir().normalize();
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_NAME);
 
     public static int ticks;
@@ -66,7 +69,6 @@ public class FiguraMod implements ClientModInitializer {
         LocalAvatarFetcher.init();
         CacheAvatarLoader.init();
         FiguraAPIManager.init();
-        FiguraDocsManager.init();
         FiguraCommands.init();
 
         //register events
@@ -74,6 +76,7 @@ public class FiguraMod implements ClientModInitializer {
         WorldRenderEvents.END.register(levelRenderer -> AvatarManager.afterWorldRender(levelRenderer.tickDelta()));
         WorldRenderEvents.AFTER_ENTITIES.register(FiguraMod::renderFirstPersonWorldParts);
         HudRenderCallback.EVENT.register(FiguraMod::hudRender);
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> SaveScheduler.INSTANCE.shutdown());
         registerResourceListener(ResourceManagerHelper.get(PackType.CLIENT_RESOURCES));
     }
 
@@ -82,6 +85,7 @@ public class FiguraMod implements ClientModInitializer {
         NetworkStuff.tick();
         popPushProfiler("files");
         LocalAvatarLoader.tickWatchedKey();
+        SaveScheduler.INSTANCE.tick();
         popPushProfiler("avatars");
         AvatarManager.tickLoadedAvatars();
         popPushProfiler("chatPrint");
@@ -134,7 +138,7 @@ public class FiguraMod implements ClientModInitializer {
     //mod root directory
     public static Path getFiguraDirectory() {
         String config = Config.MAIN_DIR.asString();
-        Path p = config.isBlank() ? GAME_DIR.resolve(MOD_ID) : Path.of(config);
+        Path p = config.isBlank() ? FabricLoader.getInstance().getGameDir().normalize().resolve(MOD_ID) : Path.of(config);
         try {
             Files.createDirectories(p);
         } catch (FileAlreadyExistsException ignored) {
@@ -201,29 +205,36 @@ public class FiguraMod implements ClientModInitializer {
 
     // -- profiler -- //
 
+    //the profiler is not thread safe, so avatars ticking off thread are not profiled
+    //neither is anything running without a client, like the unit tests
+    private static ProfilerFiller getProfiler() {
+        Minecraft minecraft = Minecraft.getInstance();
+        return minecraft != null && minecraft.isSameThread() ? minecraft.getProfiler() : InactiveProfiler.INSTANCE;
+    }
+
     public static void pushProfiler(String name) {
-        Minecraft.getInstance().getProfiler().push(name);
+        getProfiler().push(name);
     }
 
     public static void pushProfiler(Avatar avatar) {
-        Minecraft.getInstance().getProfiler().push(avatar.entityName.isBlank() ? avatar.owner.toString() : avatar.entityName);
+        getProfiler().push(avatar.entityName.isBlank() ? avatar.owner.toString() : avatar.entityName);
     }
 
     public static void popPushProfiler(String name) {
-        Minecraft.getInstance().getProfiler().popPush(name);
+        getProfiler().popPush(name);
     }
 
     public static void popProfiler() {
-        Minecraft.getInstance().getProfiler().pop();
+        getProfiler().pop();
     }
 
     public static <T> T popReturnProfiler(T var) {
-        Minecraft.getInstance().getProfiler().pop();
+        getProfiler().pop();
         return var;
     }
 
     public static void popProfiler(int times) {
-        var profiler = Minecraft.getInstance().getProfiler();
+        var profiler = getProfiler();
         for (int i = 0; i < times; i++)
             profiler.pop();
     }
@@ -1,42 +1,42 @@
 package org.moon.figura.avatar;
 
-import com.mojang.blaze3d.audio.OggAudioStream;
-import com.mojang.blaze3d.audio.SoundBuffer;
+import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.platform.Lighting;
+import com.mojang.blaze3d.platform.Window;
 import com.mojang.blaze3d.systems.RenderSystem;
-import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.*;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.math.Axis;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.model.EntityModel;
 import net.minecraft.client.model.geom.ModelPart;
+import net.minecraft.client.renderer.GameRenderer;
 import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.entity.LivingEntityRenderer;
 import net.minecraft.client.renderer.entity.player.PlayerRenderer;
 import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.core.Direction;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.Tag;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.*;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.phys.Vec3;
-import org.luaj.vm2.LuaFunction;
+import org.joml.Matrix4f;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
+import org.lwjgl.opengl.GL30;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.animation.Animation;
 import org.moon.figura.animation.AnimationPlayer;
 import org.moon.figura.config.Config;
 import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.lua.FiguraLuaRuntime;
+import org.moon.figura.lua.LuaBytecode;
 import org.moon.figura.lua.api.entity.EntityAPI;
-import org.moon.figura.lua.api.event.LuaEvent;
 import org.moon.figura.lua.api.particle.ParticleAPI;
 import org.moon.figura.lua.api.ping.PingArg;
 import org.moon.figura.lua.api.ping.PingFunction;
@@ -45,14 +45,15 @@ import org.moon.figura.lua.api.world.BlockStateAPI;
 import org.moon.figura.lua.api.world.ItemStackAPI;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
-import org.moon.figura.math.vector.FiguraVec3;
-import org.moon.figura.math.vector.FiguraVec4;
+import org.moon.figura.model.FiguraModelPart;
 import org.moon.figura.model.ParentType;
 import org.moon.figura.model.PartCustomization;
+import org.moon.figura.model.VanillaModelData;
 import org.moon.figura.model.rendering.AvatarRenderer;
 import org.moon.figura.model.rendering.EntityRenderMode;
 import org.moon.figura.model.rendering.ImmediateAvatarRenderer;
 import org.moon.figura.model.rendering.PartFilterScheme;
+import org.moon.figura.model.rendering.texture.FiguraTexture;
 import org.moon.figura.trust.Trust;
 import org.moon.figura.trust.TrustContainer;
 import org.moon.figura.trust.TrustManager;
@@ -61,7 +62,6 @@ import org.moon.figura.utils.RefilledNumber;
 import org.moon.figura.utils.Version;
 import org.moon.figura.utils.ui.UIHelper;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -85,6 +85,10 @@ public class Avatar {
     public boolean loaded = true;
     public final boolean isHost;
 
+    //shared CEM avatars have no entity of their own
+    //a single one runs for every entity of its type, which is swapped in before being used
+    public final boolean shared;
+
     //metadata
     public String name, entityName;
     public String authors;
@@ -96,6 +100,7 @@ public class Avatar {
 
     //Runtime data
     private final Queue<Supplier<Varargs>> events = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> mainThreadTasks = new ConcurrentLinkedQueue<>();
 
     public AvatarRenderer renderer;
     public FiguraLuaRuntime luaRuntime;
@@ -103,7 +108,7 @@ public class Avatar {
 
     public final TrustContainer.PlayerContainer trust;
 
-    public final Map<String, SoundBuffer> customSounds = new HashMap<>();
+    public final Map<String, CustomSound> customSounds = new HashMap<>();
     public final Map<Integer, Animation> animations = new HashMap<>();
 
     //runtime status
@@ -119,9 +124,18 @@ public class Avatar {
     public final Instructions init, render, worldRender, tick, worldTick;
     public final RefilledNumber particlesRemaining, soundsRemaining;
 
-    private Avatar(UUID owner, EntityType<?> type, String name) {
+    //timings, in nanoseconds, of the last tick and of the last frame renders
+    public long tickTime, renderTime, frameRenderTime;
+    public int renderBatches, frameRenderBatches; //vertex batches sent to the buffers, each one a draw call at most
+    public long vertices, frameVertices;
+
+    //skull parts of this frame, shared by every skull
+    private ImmediateAvatarRenderer.Baked bakedSkull;
+
+    private Avatar(UUID owner, EntityType<?> type, String name, boolean shared) {
         this.owner = owner;
         this.entityType = type;
+        this.shared = shared;
         this.isHost = type == EntityType.PLAYER && FiguraMod.isLocal(owner);
         this.trust = type == EntityType.PLAYER ? TrustManager.get(owner) : TrustManager.getMobTrust(owner);
         this.complexity = new Instructions(trust.get(Trust.COMPLEXITY));
@@ -136,14 +150,27 @@ public class Avatar {
     }
 
     public Avatar(UUID owner) {
-        this(owner, EntityType.PLAYER, EntityUtils.getNameForUUID(owner));
+        this(owner, EntityType.PLAYER, EntityUtils.getNameForUUID(owner), false);
     }
 
     public Avatar(Entity entity) {
-        this(entity.getUUID(), entity.getType(), entity.getName().getString());
+        this(entity.getUUID(), entity.getType(), entity.getName().getString(), false);
+    }
+
+    //shared avatar for all entities of the type, owned by an uuid made from the type id
+    public Avatar(EntityType<?> type) {
+        this(UUID.nameUUIDFromBytes(BuiltInRegistries.ENTITY_TYPE.getKey(type).toString().getBytes(StandardCharsets.UTF_8)), type, type.getDescription().getString(), true);
     }
 
     public void load(CompoundTag nbt) {
+        load(nbt, null);
+    }
+
+    /**
+     * @param bytecode precompiled scripts, only from this client avatar cache
+     * any bytecode inside the avatar nbt itself is ignored, as LuaJ runs it unverified
+     */
+    public void load(CompoundTag nbt, CompoundTag bytecode) {
         Runnable toRun = () -> {
             this.nbt = nbt;
             loaded = false;
@@ -186,7 +213,7 @@ public class Avatar {
 
                 //sounds and script
                 loadCustomSounds();
-                createLuaRuntime();
+                createLuaRuntime(bytecode);
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("", e);
                 clean();
@@ -200,11 +227,21 @@ public class Avatar {
     }
 
     public void tick() {
+        tick(List.of());
+    }
+
+    /**
+     * @param instances the entities a shared avatar ticks for, each one running the tick event with its own budget
+     */
+    public void tick(List<Entity> instances) {
         if (scriptError || luaRuntime == null || !loaded)
             return;
 
+        long start = System.nanoTime();
+
         //fetch this avatar entity
-        if (luaRuntime.getUser() == null) {
+        //shared avatars are given their entities instead
+        if (!shared && luaRuntime.getUser() == null) {
             Entity entity = EntityUtils.getEntityByUUID(owner);
             if (entity != null) {
                 luaRuntime.setUser(entity);
@@ -235,10 +272,21 @@ public class Avatar {
         run("WORLD_TICK", worldTick);
 
         FiguraMod.popPushProfiler("tick");
-        tick.reset(trust.get(Trust.TICK_INST));
-        tickEvent();
+        if (!shared) {
+            tick.reset(trust.get(Trust.TICK_INST));
+            tickEvent();
+        } else {
+            for (Entity entity : instances) {
+                if (scriptError)
+                    break;
+                setInstance(entity);
+                tick.reset(trust.get(Trust.TICK_INST));
+                tickEvent();
+            }
+        }
 
         FiguraMod.popProfiler();
+        tickTime = System.nanoTime() - start;
     }
 
     public void render(float delta) {
@@ -250,6 +298,18 @@ public class Avatar {
 
         complexity.reset(trust.get(Trust.COMPLEXITY));
 
+        renderTime = frameRenderTime;
+        frameRenderTime = 0;
+        renderBatches = frameRenderBatches;
+        frameRenderBatches = 0;
+        vertices = frameVertices;
+        frameVertices = 0;
+
+        if (bakedSkull != null) {
+            bakedSkull.free();
+            bakedSkull = null;
+        }
+
         if (scriptError || luaRuntime == null || !loaded)
             return;
 
@@ -275,6 +335,10 @@ public class Avatar {
     }
 
     public Varargs run(Object toRun, Instructions limit, Object... args) {
+        //nothing would be called, so skip the arguments parsing and the event creation
+        if (events.isEmpty() && !hasListeners(toRun))
+            return null;
+
         //create event
         Supplier<Varargs> ev = () -> {
             if (scriptError || luaRuntime == null || !loaded)
@@ -293,16 +357,10 @@ public class Avatar {
             //get and call event
             try {
                 Varargs ret;
-                if (toRun instanceof LuaEvent event)
-                    ret = event.call(val);
-                else if (toRun instanceof String event)
-                    ret = luaRuntime.events.__index(event).call(val);
-                else if (toRun instanceof LuaFunction func)
-                    ret = func.invoke(val);
-                else if (toRun instanceof Pair<?, ?> pair)
+                if (toRun instanceof Pair<?, ?> pair)
                     ret = luaRuntime.load(pair.getFirst().toString(), pair.getSecond().toString()).invoke(val);
                 else
-                    throw new IllegalArgumentException("Internal event error - Invalid type to run!");
+                    ret = AvatarEvents.call(luaRuntime.events, toRun, val);
 
                 limit.use(luaRuntime.getInstructions());
                 return ret;
@@ -338,21 +396,73 @@ public class Avatar {
         return val;
     }
 
+    //if running this would call any lua function
+    public boolean hasListeners(Object toRun) {
+        if (toRun instanceof String && (scriptError || luaRuntime == null || !loaded))
+            return false;
+        return AvatarEvents.hasListeners(luaRuntime == null ? null : luaRuntime.events, toRun);
+    }
+
+    /**
+     * sets the entity a shared avatar is currently ticking or rendering
+     * the script sees it as its user, and also receives it in the render events
+     * @param entity the entity being handled
+     */
+    public void setInstance(Entity entity) {
+        if (!shared || !loaded || luaRuntime == null)
+            return;
+
+        EntityAPI<?> current = luaRuntime.entityAPI;
+        if (current != null && current.getEntity() == entity)
+            return;
+
+        luaRuntime.setUser(entity);
+        if (current == null)
+            run("ENTITY_INIT", init.post());
+    }
+
+    // -- main thread tasks -- //
+
+    /**
+     * runs a task that touches the client state (sound engine, particle engine, ...)
+     * when the avatar is ticking off the client thread, the task is delayed until the tick finishes
+     * @param task the task to run
+     */
+    public void runOnMainThread(Runnable task) {
+        if (Minecraft.getInstance().isSameThread())
+            task.run();
+        else
+            mainThreadTasks.offer(task);
+    }
+
+    //runs the tasks in the same order the script asked for them
+    public void runMainThreadTasks() {
+        Runnable task;
+        while ((task = mainThreadTasks.poll()) != null)
+            task.run();
+    }
+
     // -- script events -- //
 
     public void tickEvent() {
-        if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("TICK", tick);
+        if (loaded && luaRuntime != null && luaRuntime.getUser() != null) {
+            if (shared) run("TICK", tick, luaRuntime.entityAPI);
+            else run("TICK", tick);
+        }
     }
 
     public void renderEvent(float delta) {
-        if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("RENDER", render, delta, renderMode.name());
+        if (loaded && luaRuntime != null && luaRuntime.getUser() != null) {
+            if (shared) run("RENDER", render, delta, renderMode.name(), luaRuntime.entityAPI);
+            else run("RENDER", render, delta, renderMode.name());
+        }
     }
 
     public void postRenderEvent(float delta) {
-        if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("POST_RENDER", render.post(), delta, renderMode.name());
+        if (loaded && luaRuntime != null && luaRuntime.getUser() != null) {
+            if (shared) run("POST_RENDER", render.post(), delta, renderMode.name(), luaRuntime.entityAPI);
+            else run("POST_RENDER", render.post(), delta, renderMode.name());
+        }
         renderMode = EntityRenderMode.OTHER;
     }
 
@@ -370,19 +480,19 @@ public class Avatar {
         Varargs result = null;
         if (loaded && renderer != null && renderer.allowSkullRendering)
             result = run("SKULL_RENDER", render, delta, block, item, entity, mode);
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     public boolean useItemEvent(ItemStackAPI stack, String type, int particleCount) {
         Varargs result = loaded ? run("USE_ITEM", tick, stack, type, particleCount) : null;
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     // -- host only events -- //
 
     public String chatSendMessageEvent(String message) {
         Varargs val = loaded ? run("CHAT_SEND_MESSAGE", tick, message) : null;
-        return val == null || (!val.isnil(1) && !Config.CHAT_MESSAGES.asBool()) ? message : val.isnil(1) ? "" : val.arg(1).tojstring();
+        return AvatarEvents.chatMessage(message, val, Config.CHAT_MESSAGES.asBool());
     }
 
     public void chatReceivedMessageEvent(String message) {
@@ -392,29 +502,39 @@ public class Avatar {
 
     public boolean mouseScrollEvent(double delta) {
         Varargs result = loaded ? run("MOUSE_SCROLL", tick, delta) : null;
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     public boolean mouseMoveEvent(double x, double y) {
         Varargs result = loaded ? run("MOUSE_MOVE", tick, x, y) : null;
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     public boolean mousePressEvent(int button, int action, int modifiers) {
         Varargs result = loaded ? run("MOUSE_PRESS", tick, button, action, modifiers) : null;
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     public boolean keyPressEvent(int key, int action, int modifiers) {
         Varargs result = loaded ? run("KEY_PRESS", tick, key, action, modifiers) : null;
-        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+        return AvatarEvents.isTrue(result);
     }
 
     // -- rendering events -- //
 
     private void render() {
         if (renderMode == EntityRenderMode.RENDER || renderMode == EntityRenderMode.FIRST_PERSON) {
+            if (!shared) {
+                complexity.use(renderer.render());
+                return;
+            }
+
+            //shared avatars render many entities per frame, so each of them gets the whole complexity
+            //what they use still adds up, and the avatar is short on complexity when one of them was
+            int prev = complexity.remaining;
+            complexity.remaining = trust.get(Trust.COMPLEXITY);
             complexity.use(renderer.render());
+            complexity.remaining = Math.min(prev, complexity.remaining);
             return;
         }
 
@@ -639,7 +759,25 @@ public class Avatar {
         stack.scale(-1f, -1f, 1f);
         stack.mulPose(Axis.YP.rotationDegrees(yaw));
 
-        int comp = renderer.renderSpecialParts();
+        //without a skull event every skull looks the same, so the parts are baked once per frame and only moved per skull
+        int comp = -1;
+        if (renderer instanceof ImmediateAvatarRenderer immediate && !hasListeners("SKULL_RENDER")) {
+            if (bakedSkull == null) {
+                renderer.matrices = new PoseStack();
+                renderer.light = ImmediateAvatarRenderer.BAKED_LIGHT;
+                bakedSkull = immediate.bakeSpecialParts();
+                renderer.matrices = stack;
+                renderer.light = light;
+            }
+
+            if (bakedSkull.complexity <= complexity.remaining) {
+                immediate.drawBaked(bakedSkull, stack.last(), light);
+                comp = bakedSkull.complexity;
+            }
+        }
+
+        if (comp == -1)
+            comp = renderer.renderSpecialParts();
         complexity.use(comp);
 
         if (comp > 0) {
@@ -692,33 +830,68 @@ public class Avatar {
         return comp > 0 && luaRuntime != null && !luaRuntime.vanilla_model.HEAD.checkVisible();
     }
 
+    //portraits are rendered into a texture, which is drawn as a single quad until the portrait changes
     public boolean renderPortrait(PoseStack stack, int x, int y, int screenSize, float modelScale, boolean scissors) {
         if (!Config.AVATAR_PORTRAITS.asBool() || renderer == null || !loaded)
             return false;
 
-        //matrices
-        stack.pushPose();
-        stack.translate(x, y, 0d);
-        stack.scale(modelScale, -modelScale, modelScale);
-        stack.mulPose(Axis.XP.rotationDegrees(180f));
+        Window window = Minecraft.getInstance().getWindow();
+        int size = Math.max((int) Math.ceil(screenSize * window.getGuiScale()), 1);
+        AvatarRenderer.Portrait portrait = renderer.getPortrait(size, modelScale);
 
-        //scissors
-        FiguraVec4 oldScissors = UIHelper.scissors.copy();
-        FiguraVec3 pos = FiguraMat4.fromMatrix4f(stack.last().pose()).apply(0d, 0d, 0d);
+        int hash = getPortraitHash(portrait.hasParts ? PartFilterScheme.PORTRAIT : PartFilterScheme.HEAD);
+        if (portrait.hash == null || portrait.hash != hash) {
+            portrait.hash = hash;
+            renderPortrait(portrait, screenSize, modelScale);
 
-        int x1 = (int) pos.x;
-        int y1 = (int) pos.y;
-        int x2 = (int) pos.x + screenSize;
-        int y2 = (int) pos.y + screenSize;
-
-        if (scissors) {
-            x1 = (int) Math.round(Math.max(x1, oldScissors.x));
-            y1 = (int) Math.round(Math.max(y1, oldScissors.y));
-            x2 = (int) Math.round(Math.min(x2, oldScissors.x + oldScissors.z));
-            y2 = (int) Math.round(Math.min(y2, oldScissors.y + oldScissors.w));
+            //the texture render clears the scissors, so put back the ones from the screen
+            if (scissors)
+                UIHelper.setupScissor((int) UIHelper.scissors.x, (int) UIHelper.scissors.y, (int) UIHelper.scissors.z, (int) UIHelper.scissors.w);
         }
 
-        UIHelper.setupScissor(x1, y1, x2 - x1, y2 - y1);
+        if (!portrait.rendered)
+            return false;
+
+        //draw the texture, flipped as framebuffers start at the bottom
+        RenderSystem.enableBlend();
+        RenderSystem.defaultBlendFunc();
+        RenderSystem.setShaderTexture(0, portrait.target.getColorTextureId());
+        RenderSystem.setShader(GameRenderer::getPositionTexShader);
+        RenderSystem.setShaderColor(1f, 1f, 1f, 1f);
+
+        Matrix4f pose = stack.last().pose();
+        BufferBuilder bufferBuilder = Tesselator.getInstance().getBuilder();
+        bufferBuilder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_TEX);
+
+        bufferBuilder.vertex(pose, x, y + screenSize, 0f).uv(0f, 0f).endVertex();
+        bufferBuilder.vertex(pose, x + screenSize, y + screenSize, 0f).uv(1f, 0f).endVertex();
+        bufferBuilder.vertex(pose, x + screenSize, y, 0f).uv(1f, 1f).endVertex();
+        bufferBuilder.vertex(pose, x, y, 0f).uv(0f, 1f).endVertex();
+
+        BufferUploader.drawWithShader(bufferBuilder.end());
+        RenderSystem.disableBlend();
+        return true;
+    }
+
+    private static final MultiBufferSource.BufferSource PORTRAIT_BUFFER = MultiBufferSource.immediate(new BufferBuilder(256));
+
+    private void renderPortrait(AvatarRenderer.Portrait portrait, int screenSize, float modelScale) {
+        Window window = Minecraft.getInstance().getWindow();
+        int previousFBO = GL30.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        Matrix4f projection = RenderSystem.getProjectionMatrix();
+
+        //target setup, using gui units like the screen
+        //the texture bounds clip the portrait, so no scissors are needed
+        RenderSystem.disableScissor();
+        portrait.target.clear(Minecraft.ON_OSX);
+        portrait.target.bindWrite(true);
+        RenderSystem.setProjectionMatrix(new Matrix4f().setOrtho(0f, screenSize, screenSize, 0f, 1000f, 3000f));
+
+        //matrices
+        PoseStack stack = new PoseStack();
+        stack.scale(modelScale, -modelScale, modelScale);
+        stack.mulPose(Axis.XP.rotationDegrees(180f));
+
         UIHelper.paperdoll = true;
         UIHelper.dollScale = 16f;
 
@@ -733,7 +906,7 @@ public class Avatar {
         int light = renderer.light = LightTexture.FULL_BRIGHT;
         renderer.alpha = 1f;
         renderer.matrices = stack;
-        MultiBufferSource buffer = renderer.bufferSource = getBufferSource();
+        renderer.bufferSource = PORTRAIT_BUFFER;
         renderer.translucent = false;
         renderer.glowing = false;
 
@@ -742,19 +915,55 @@ public class Avatar {
         //render
         int comp = renderer.renderSpecialParts();
         complexity.use(comp);
-        boolean ret = comp > 0 || headRender(stack, buffer, light);
+        portrait.hasParts = comp > 0;
+        portrait.rendered = portrait.hasParts || headRender(stack, PORTRAIT_BUFFER, light);
+        PORTRAIT_BUFFER.endBatch();
 
-        //return
-        if (scissors)
-            UIHelper.setupScissor((int) oldScissors.x, (int) oldScissors.y, (int) oldScissors.z, (int) oldScissors.w);
-        else
-            RenderSystem.disableScissor();
+        //restore the screen
+        GlStateManager._glBindFramebuffer(GL30.GL_FRAMEBUFFER, previousFBO);
+        RenderSystem.viewport(0, 0, window.getWidth(), window.getHeight());
+        RenderSystem.setProjectionMatrix(projection);
 
         UIHelper.paperdoll = false;
         renderer.allowPivotParts = true;
         renderer.allowRenderTasks = true;
-        stack.popPose();
-        return ret;
+    }
+
+    //hash of everything the portrait render depends on
+    private int getPortraitHash(PartFilterScheme scheme) {
+        int hash = luaRuntime == null ? 0 : luaRuntime.renderer.portraitVersion;
+
+        for (FiguraTexture texture : renderer.textures.values())
+            hash = 31 * hash + texture.getVersion();
+        for (FiguraTexture texture : renderer.customTextures.values())
+            hash = 31 * hash + texture.getVersion();
+
+        Boolean initialValue = scheme.initialValue(renderer.root);
+        if (initialValue != null)
+            hash = getPortraitHash(renderer.root, scheme, initialValue, hash);
+
+        return hash;
+    }
+
+    //same walk as the renderer, parts that do not render still move their children
+    private int getPortraitHash(FiguraModelPart part, PartFilterScheme scheme, boolean prevPredicate, int hash) {
+        Boolean thisPassedPredicate = scheme.test(part.parentType, prevPredicate);
+        if (thisPassedPredicate == null)
+            return hash;
+
+        hash = 31 * hash + part.customization.stateHash();
+
+        VanillaModelData.PartData vanilla = renderer.vanillaModelData.partMap.get(part.parentType);
+        if (vanilla != null) {
+            hash = PartCustomization.hash(hash, vanilla.pos);
+            hash = PartCustomization.hash(hash, vanilla.rot);
+            hash = PartCustomization.hash(hash, vanilla.scale);
+        }
+
+        for (FiguraModelPart child : part.children)
+            hash = getPortraitHash(child, scheme, thisPassedPredicate, hash);
+
+        return hash;
     }
 
     private static final PartCustomization PIVOT_PART_RENDERING_CUSTOMIZATION = PartCustomization.of();
@@ -835,16 +1044,81 @@ public class Avatar {
      * also closes and stops this avatar sounds
      */
     public void clean() {
+        //sounds and particles belong to the client thread, and a cleaned avatar no longer ticks to run its queued tasks
+        //so off thread, like when failing to load, the cleanup itself is handed to the client
+        AvatarRenderer renderer = this.renderer;
+        Minecraft minecraft = Minecraft.getInstance();
+        if (minecraft.isSameThread())
+            clean(renderer);
+        else
+            minecraft.execute(() -> clean(renderer));
+    }
+
+    private void clean(AvatarRenderer renderer) {
         if (renderer != null)
             renderer.invalidate();
 
         SoundAPI.getSoundEngine().figura$stopSound(owner, null);
-        for (SoundBuffer value : customSounds.values())
-            value.releaseAlBuffer();
+        for (CustomSound value : customSounds.values())
+            value.release();
 
         ParticleAPI.getParticleEngine().figura$clearParticles(owner);
 
         events.clear();
+        mainThreadTasks.clear();
+    }
+
+    //rough per runtime cost of the lua globals and apis, as luaj has no heap accounting
+    private static final long LUA_RUNTIME_SIZE = 256 * 1024;
+
+    /**
+     * @return a rough estimate of the memory retained by this avatar, in bytes
+     * includes the avatar nbt, textures, vertex buffers, decoded sounds and the lua runtime
+     * assets shared with other avatars only count for this avatar share of them
+     */
+    public long getMemoryUsage() {
+        long size = getSoundMemory();
+        if (nbt != null)
+            size += getNbtSize(nbt);
+        if (renderer != null)
+            size += renderer.getMemoryUsage();
+        if (luaRuntime != null)
+            size += LUA_RUNTIME_SIZE;
+        return size;
+    }
+
+    /**
+     * @return the size, in bytes, of this avatar share of the currently decoded sounds
+     */
+    public long getSoundMemory() {
+        long size = 0;
+        for (CustomSound sound : customSounds.values())
+            size += sound.getDecodedSize();
+        return size;
+    }
+
+    private static long getNbtSize(Tag tag) {
+        if (tag instanceof CompoundTag compound) {
+            long size = 0;
+            for (String key : compound.getAllKeys())
+                size += key.length() * 2L + getNbtSize(compound.get(key));
+            return size;
+        }
+        if (tag instanceof ByteArrayTag bytes)
+            return bytes.size();
+        if (tag instanceof IntArrayTag ints)
+            return ints.size() * 4L;
+        if (tag instanceof LongArrayTag longs)
+            return longs.size() * 8L;
+        if (tag instanceof ListTag list) {
+            long size = 0;
+            for (Tag child : list)
+                size += getNbtSize(child);
+            return size;
+        }
+        if (tag instanceof StringTag)
+            return tag.getAsString().length() * 2L;
+        return 8;
     }
 
     public MultiBufferSource getBufferSource() {
@@ -865,7 +1139,7 @@ public class Avatar {
 
     // -- loading -- //
 
-    private void createLuaRuntime() {
+    private void createLuaRuntime(CompoundTag bytecode) {
         if (!nbt.contains("scripts"))
             return;
 
@@ -882,7 +1156,7 @@ public class Avatar {
         else
             autoScripts = null;
 
-        FiguraLuaRuntime runtime = new FiguraLuaRuntime(this, scripts);
+        FiguraLuaRuntime runtime = new FiguraLuaRuntime(this, scripts, LuaBytecode.load(bytecode, scriptsNbt));
         if (renderer != null && renderer.root != null)
             runtime.setGlobal("models", renderer.root);
 
@@ -958,11 +1232,11 @@ public class Avatar {
         }
     }
 
+    //sounds are only decoded when played
     public void loadSound(String name, byte[] data) throws Exception {
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data); OggAudioStream oggAudioStream = new OggAudioStream(inputStream)) {
-            SoundBuffer sound = new SoundBuffer(oggAudioStream.readAll(), oggAudioStream.getFormat());
-            this.customSounds.put(name, sound);
-        }
+        CustomSound old = this.customSounds.put(name, new CustomSound(owner, name, data));
+        if (old != null)
+            old.release();
     }
 
     public static class Instructions {
@@ -0,0 +1,45 @@
+package org.moon.figura.avatar;
+
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.Varargs;
+import org.moon.figura.lua.api.event.EventsAPI;
+import org.moon.figura.lua.api.event.LuaEvent;
+
+/**
+ * how the avatar events are called and how their results are read
+ * kept apart from the avatar, so they can be used without a game
+ */
+class AvatarEvents {
+
+    //if running this would call any lua function
+    static boolean hasListeners(EventsAPI events, Object toRun) {
+        if (toRun instanceof String event) {
+            LuaEvent luaEvent = events.__index(event);
+            return luaEvent != null && !luaEvent.isEmpty();
+        }
+        if (toRun instanceof LuaEvent event)
+            return !event.isEmpty();
+        return true;
+    }
+
+    //calls an event, by its instance or name, or a single function
+    static Varargs call(EventsAPI events, Object toRun, Varargs args) {
+        if (toRun instanceof LuaEvent event)
+            return event.call(args);
+        if (toRun instanceof String event)
+            return events.__index(event).call(args);
+        if (toRun instanceof LuaFunction func)
+            return func.invoke(args);
+        throw new IllegalArgumentException("Internal event error - Invalid type to run!");
+    }
+
+    //the cancellable events cancel when their first return is true
+    static boolean isTrue(Varargs result) {
+        return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
+    }
+
+    //the message to send, nil cancels it and anything else replaces it, if allowed
+    static String chatMessage(String message, Varargs result, boolean canModify) {
+        return result == null || (!result.isnil(1) && !canModify) ? message : result.isnil(1) ? "" : result.arg(1).tojstring();
+    }
+}
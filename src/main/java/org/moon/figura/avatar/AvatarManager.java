@@ -11,16 +11,23 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.player.Player;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.local.LocalAvatarLoader;
 import org.moon.figura.backend2.NetworkStuff;
+import org.moon.figura.config.Config;
 import org.moon.figura.gui.widgets.lists.AvatarList;
+import org.moon.figura.lua.FiguraLuaRuntime;
 import org.moon.figura.utils.EntityUtils;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages all the avatars that are currently loaded in memory, and also
@@ -33,10 +40,19 @@ public class AvatarManager {
     private static final Set<UUID> FETCHED_USERS = new HashSet<>();
 
     private static final Map<Entity, Avatar> LOADED_CEM = new ConcurrentHashMap<>();
+    //one avatar per entity type, also mapped to each of its entities in LOADED_CEM
+    private static final Map<EntityType<?>, Avatar> SHARED_CEM = new ConcurrentHashMap<>();
 
     public static boolean localUploaded = true; //init as true :3
     public static boolean panic = false;
 
+    //memory budget
+    private static final int MEMORY_CHECK_INTERVAL = 100;
+    private static final double UNLOAD_DISTANCE = 64d, RELOAD_DISTANCE = 32d;
+
+    //parallel ticking
+    private static ExecutorService tickPool;
+
     // -- avatar events -- //
 
     public static void tickLoadedAvatars() {
@@ -44,17 +60,24 @@ public class AvatarManager {
             return;
 
         //tick the avatars
-        for (UserData user : LOADED_USERS.values()) {
-            Avatar avatar = user.getMainAvatar();
-            if (avatar != null) {
-                FiguraMod.pushProfiler(avatar);
-                avatar.tick();
-                FiguraMod.popProfiler();
+        if (Config.PARALLEL_TICKING.asBool()) {
+            tickParallel();
+        } else {
+            for (UserData user : LOADED_USERS.values()) {
+                Avatar avatar = user.getMainAvatar();
+                if (avatar != null) {
+                    FiguraMod.pushProfiler(avatar);
+                    avatar.tick();
+                    FiguraMod.popProfiler();
+                }
             }
         }
 
+        if (FiguraMod.ticks % MEMORY_CHECK_INTERVAL == 0)
+            checkMemoryBudget();
+
         //CEM
-        if (LOADED_CEM.isEmpty())
+        if (LOADED_CEM.isEmpty() && SHARED_CEM.isEmpty())
             return;
 
         //unload entities
@@ -69,12 +92,107 @@ public class AvatarManager {
 
         //tick entities
         for (Avatar avatar : LOADED_CEM.values()) {
-            if (avatar != null) {
+            if (avatar != null && !avatar.shared) {
+                FiguraMod.pushProfiler(avatar);
+                avatar.tick();
+                FiguraMod.popProfiler();
+            }
+        }
+
+        if (!SHARED_CEM.isEmpty())
+            tickShared();
+    }
+
+    //shared avatars tick once for their whole type, running the tick event for each of their entities
+    //the ones without entities left are unloaded
+    private static void tickShared() {
+        Map<Avatar, List<Entity>> instances = new HashMap<>();
+        for (Map.Entry<Entity, Avatar> entry : LOADED_CEM.entrySet()) {
+            if (entry.getValue().shared)
+                instances.computeIfAbsent(entry.getValue(), avatar -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        Iterator<Avatar> iterator = SHARED_CEM.values().iterator();
+        while (iterator.hasNext()) {
+            Avatar avatar = iterator.next();
+            List<Entity> entities = instances.get(avatar);
+            if (entities == null) {
+                avatar.clean();
+                iterator.remove();
+                continue;
+            }
+
+            FiguraMod.pushProfiler(avatar);
+            avatar.tick(entities);
+            FiguraMod.popProfiler();
+        }
+    }
+
+    //every CEM avatar once, as shared avatars are mapped to all entities of their type
+    private static Collection<Avatar> getCEMAvatars() {
+        return SHARED_CEM.isEmpty() ? LOADED_CEM.values() : new HashSet<>(LOADED_CEM.values());
+    }
+
+    //the client level is only changed by the client thread, which waits here for the workers
+    //so the world is frozen for the scripts during the parallel tick, and they can read it without locking
+    private static void tickParallel() {
+        List<Avatar> avatars = new ArrayList<>();
+        for (UserData user : LOADED_USERS.values()) {
+            Avatar avatar = user.getMainAvatar();
+            if (avatar != null)
+                avatars.add(avatar);
+        }
+
+        //the host avatar can change the client state, so it ticks before anyone else is reading it
+        for (Avatar avatar : avatars) {
+            if (avatar.isHost) {
                 FiguraMod.pushProfiler(avatar);
                 avatar.tick();
                 FiguraMod.popProfiler();
             }
         }
+
+        //scripts read each other stored values, so they read a copy taken before anyone starts writing
+        for (Avatar avatar : avatars) {
+            FiguraLuaRuntime runtime = avatar.luaRuntime;
+            if (runtime != null)
+                runtime.avatar_meta.snapshotStoredVars();
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Avatar avatar : avatars) {
+            if (!avatar.isHost)
+                futures.add(CompletableFuture.runAsync(avatar::tick, getTickPool()));
+        }
+
+        FiguraMod.pushProfiler("parallelTick");
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        //back to the live values, as nothing else runs in parallel
+        for (Avatar avatar : avatars) {
+            FiguraLuaRuntime runtime = avatar.luaRuntime;
+            if (runtime != null)
+                runtime.avatar_meta.releaseStoredVars();
+        }
+
+        //then apply the side effects, in a stable order
+        FiguraMod.popPushProfiler("mainThreadTasks");
+        for (Avatar avatar : avatars)
+            avatar.runMainThreadTasks();
+
+        FiguraMod.popProfiler();
+    }
+
+    private static ExecutorService getTickPool() {
+        if (tickPool == null) {
+            AtomicInteger count = new AtomicInteger();
+            tickPool = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), runnable -> {
+                Thread thread = new Thread(runnable, "Figura Tick Worker " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return tickPool;
     }
 
     public static void onWorldRender(float tickDelta) {
@@ -93,7 +211,7 @@ public class AvatarManager {
             }
         }
 
-        for (Avatar avatar : LOADED_CEM.values()) {
+        for (Avatar avatar : getCEMAvatars()) {
             if (avatar != null) {
                 FiguraMod.pushProfiler(avatar);
                 avatar.render(tickDelta);
@@ -120,7 +238,7 @@ public class AvatarManager {
             }
         }
 
-        for (Avatar avatar : LOADED_CEM.values()) {
+        for (Avatar avatar : getCEMAvatars()) {
             if (avatar != null) {
                 FiguraMod.pushProfiler(avatar);
                 avatar.postWorldRenderEvent(tickDelta);
@@ -144,7 +262,7 @@ public class AvatarManager {
             }
         }
 
-        for (Avatar avatar : LOADED_CEM.values()) {
+        for (Avatar avatar : getCEMAvatars()) {
             if (avatar != null) {
                 FiguraMod.pushProfiler(avatar);
                 avatar.applyAnimations();
@@ -166,7 +284,7 @@ public class AvatarManager {
             }
         }
 
-        for (Avatar avatar : LOADED_CEM.values()) {
+        for (Avatar avatar : getCEMAvatars()) {
             if (avatar != null) {
                 FiguraMod.pushProfiler(avatar);
                 avatar.clearAnimations();
@@ -185,19 +303,32 @@ public class AvatarManager {
         fetchBackend(player);
 
         UserData user = LOADED_USERS.get(player);
-        return user == null ? null : user.getMainAvatar();
+        if (user == null)
+            return null;
+
+        if (user.isUnloaded()) {
+            reloadUnloaded(user);
+            return null;
+        }
+
+        return user.getMainAvatar();
     }
 
     public static Avatar getAvatarForEntity(Entity entity) {
         //get loaded
         Avatar loaded = LOADED_CEM.get(entity);
-        if (loaded != null)
+        if (loaded != null) {
+            loaded.setInstance(entity);
             return loaded;
+        }
 
         //new avatar
         ResourceLocation type = BuiltInRegistries.ENTITY_TYPE.getKey(entity.getType());
         CompoundTag nbt = LocalAvatarLoader.CEM_AVATARS.get(type);
-        return nbt == null ? null : loadEntityAvatar(entity, nbt);
+        if (nbt == null)
+            return null;
+
+        return Config.SHARED_CEM.asBool() ? loadSharedEntityAvatar(entity, nbt) : loadEntityAvatar(entity, nbt);
     }
 
     //tries to get data from an entity
@@ -225,6 +356,14 @@ public class AvatarManager {
     }
 
     //get all main loaded avatars
+    //get the loaded avatar of an entity without fetching, loading nor changing any avatar
+    //so it is safe to call from the scripts ticking in parallel
+    public static Avatar getLoadedAvatar(Entity entity) {
+        if (entity instanceof Player)
+            return getLoadedAvatar(entity.getUUID());
+        return panic ? null : LOADED_CEM.get(entity);
+    }
+
     public static List<Avatar> getLoadedAvatars() {
         List<Avatar> list = new ArrayList<>();
         for (UserData user : LOADED_USERS.values()) {
@@ -250,9 +389,15 @@ public class AvatarManager {
     }
 
     public static void clearCEMAvatars() {
-        for (Avatar avatar : LOADED_CEM.values())
+        for (Avatar avatar : LOADED_CEM.values()) {
+            if (!avatar.shared)
+                avatar.clean();
+        }
+        for (Avatar avatar : SHARED_CEM.values())
             avatar.clean();
+
         LOADED_CEM.clear();
+        SHARED_CEM.clear();
     }
 
     //clears ALL loaded avatars, including local
@@ -299,6 +444,20 @@ public class AvatarManager {
         return targetAvatar;
     }
 
+    //load or reuse the shared CEM avatar of the entity type
+    public static Avatar loadSharedEntityAvatar(Entity entity, CompoundTag nbt) {
+        Avatar targetAvatar = SHARED_CEM.get(entity.getType());
+        if (targetAvatar == null) {
+            targetAvatar = new Avatar(entity.getType());
+            targetAvatar.load(nbt);
+            SHARED_CEM.put(entity.getType(), targetAvatar);
+        }
+
+        LOADED_CEM.put(entity, targetAvatar);
+        targetAvatar.setInstance(entity);
+        return targetAvatar;
+    }
+
     //set an user's avatar
     public static void setAvatar(UUID id, CompoundTag nbt) {
         try {
@@ -323,6 +482,78 @@ public class AvatarManager {
         NetworkStuff.getUser(user);
     }
 
+    // -- memory budget -- //
+
+    public static long getMemoryUsage() {
+        long size = 0;
+        for (UserData user : LOADED_USERS.values())
+            size += user.getMemoryUsage();
+        for (Avatar avatar : getCEMAvatars())
+            size += avatar.getMemoryUsage();
+        return size;
+    }
+
+    //unloads avatars of unseen or distant players while over the budget, the longest unseen and farthest ones first
+    //the local player is never unloaded, and only avatars from the backend are, as they are reloaded from the cache
+    private static void checkMemoryBudget() {
+        long budget = Config.AVATAR_MEMORY_BUDGET.asInt() * 1024L * 1024L;
+        if (budget <= 0)
+            return;
+
+        long total = 0;
+        Map<UserData, Double> candidates = new HashMap<>();
+        for (UserData user : LOADED_USERS.values()) {
+            total += user.getMemoryUsage();
+
+            double distance = getDistance(user.id);
+            if (distance < Double.POSITIVE_INFINITY)
+                user.lastSeen = FiguraMod.ticks;
+
+            Avatar avatar = user.getMainAvatar();
+            if (avatar != null && !avatar.isHost && distance > UNLOAD_DISTANCE)
+                candidates.put(user, distance);
+        }
+
+        if (total <= budget)
+            return;
+
+        List<UserData> sorted = new ArrayList<>(candidates.keySet());
+        sorted.sort(Comparator.<UserData>comparingInt(user -> user.lastSeen).thenComparing(candidates::get, Comparator.reverseOrder()));
+
+        for (UserData user : sorted) {
+            if (total <= budget)
+                break;
+
+            long size = user.getMemoryUsage();
+            if (user.unload()) {
+                total -= size;
+                FiguraMod.debug("Unloaded avatars of {} to free {} bytes", user.id, size);
+            }
+        }
+    }
+
+    //reload the avatar once the player gets close again
+    private static void reloadUnloaded(UserData user) {
+        if (getDistance(user.id) > RELOAD_DISTANCE)
+            return;
+
+        if (user.reload()) {
+            FiguraMod.debug("Reloading unloaded avatars of {} from cache", user.id);
+        } else {
+            //not cached anymore, so fetch it again
+            clearAvatars(user.id);
+        }
+    }
+
+    //distance from the camera to the player, infinity when not in the world
+    private static double getDistance(UUID id) {
+        Minecraft minecraft = Minecraft.getInstance();
+        Player player = minecraft.level == null ? null : minecraft.level.getPlayerByUUID(id);
+        if (player == null)
+            return Double.POSITIVE_INFINITY;
+        return minecraft.gameRenderer.getMainCamera().getPosition().distanceTo(player.position());
+    }
+
     // -- badges -- //
 
     public static Pair<BitSet, BitSet> getBadges(UUID id) {
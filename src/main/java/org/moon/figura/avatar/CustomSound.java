@@ -0,0 +1,74 @@
+package org.moon.figura.avatar;
+
+import com.mojang.blaze3d.audio.OggAudioStream;
+import com.mojang.blaze3d.audio.SoundBuffer;
+import org.moon.figura.lua.api.sound.SoundAPI;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * custom avatar sound, kept as the compressed ogg file until it is played
+ * decoding runs on a background thread, and the decoded sound is shared by every avatar with the same file
+ * the decoded sounds of every avatar are capped by SharedAssets
+ */
+public class CustomSound {
+
+    public final UUID owner;
+    public final String name;
+    public final byte[] data;
+
+    //changed on every release, as the buffer handed out before may be deleted by then
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public CustomSound(UUID owner, String name, byte[] data) throws IOException {
+        this.owner = owner;
+        this.name = name;
+        this.data = data;
+
+        //only reads the headers, so broken files still fail when added
+        new OggAudioStream(new ByteArrayInputStream(data)).close();
+    }
+
+    /**
+     * starts decoding the sound if it is not decoded yet
+     * must be called from the client thread, as it may evict other sounds
+     * @return the decoded sound, completed once the data is ready
+     */
+    public CompletableFuture<SoundBuffer> getBuffer() {
+        CompletableFuture<SoundBuffer> future = SharedAssets.useSound(this);
+        SharedAssets.trimSounds();
+        return future;
+    }
+
+    /**
+     * lets go of the decoded data, the sound is decoded again on the next use
+     */
+    public void release() {
+        generation.incrementAndGet();
+        SharedAssets.releaseSound(this);
+    }
+
+    /**
+     * a buffer from getBuffer() is only safe to attach while the generation is the same as when it was requested
+     * checked on the sound thread, where the buffers are also deleted
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return the size, in bytes, of this sound share of its decoded data
+     */
+    public long getDecodedSize() {
+        return SharedAssets.getSoundShare(this);
+    }
+
+    //sounds attached to a channel cannot be released
+    public boolean isPlaying() {
+        return SoundAPI.getSoundEngine().figura$hasSound(owner, name);
+    }
+}
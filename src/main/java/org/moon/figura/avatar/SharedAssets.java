@@ -0,0 +1,240 @@
+package org.moon.figura.avatar;
+
+import com.google.common.collect.MapMaker;
+import com.mojang.blaze3d.audio.OggAudioStream;
+import com.mojang.blaze3d.audio.SoundBuffer;
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.Util;
+import net.minecraft.nbt.CompoundTag;
+import org.lwjgl.BufferUtils;
+import org.moon.figura.lua.api.sound.SoundAPI;
+import org.moon.figura.model.rendering.FiguraImmediateBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * immutable avatar assets, shared by content between every loaded avatar
+ * so many players wearing the same avatar only parse and keep one copy of them
+ * anything that scripts can modify is copied by its owner before the change
+ */
+public class SharedAssets {
+
+    // -- geometry -- //
+
+    //keyed by the avatar "models" tag, compared by content
+    //weak values, as the renderers using the geometry hold it
+    private static final Map<CompoundTag, SharedGeometry> GEOMETRY = new MapMaker().weakValues().makeMap();
+
+    //returns null when no avatar has built this geometry yet
+    public static synchronized SharedGeometry acquireGeometry(CompoundTag models) {
+        SharedGeometry geometry = GEOMETRY.get(models);
+        if (geometry != null)
+            geometry.references++;
+        return geometry;
+    }
+
+    //returns the geometry to be used, which is the already shared one if another avatar won the race
+    public static synchronized SharedGeometry shareGeometry(CompoundTag models, List<FiguraImmediateBuffer.Data> data) {
+        SharedGeometry geometry = GEOMETRY.computeIfAbsent(models, tag -> new SharedGeometry(data));
+        geometry.references++;
+        return geometry;
+    }
+
+    public static synchronized void releaseGeometry(SharedGeometry geometry) {
+        geometry.references--;
+    }
+
+    public static class SharedGeometry {
+        public final List<FiguraImmediateBuffer.Data> data;
+        private final long size;
+        private int references;
+
+        private SharedGeometry(List<FiguraImmediateBuffer.Data> data) {
+            this.data = data;
+            long size = 0;
+            for (FiguraImmediateBuffer.Data buffer : data)
+                size += 4L * (buffer.positions().capacity() + buffer.uvs().capacity() + buffer.normals().capacity());
+            this.size = size;
+        }
+
+        public long getShare() {
+            synchronized (SharedAssets.class) {
+                return share(size, references);
+            }
+        }
+    }
+
+    // -- textures -- //
+
+    //native images are not garbage collected, so they are reference counted instead
+    private static final Map<ByteBuffer, SharedImage> IMAGES = new HashMap<>();
+
+    public static synchronized SharedImage acquireImage(byte[] data) throws IOException {
+        ByteBuffer key = ByteBuffer.wrap(data);
+        SharedImage image = IMAGES.get(key);
+
+        if (image == null) {
+            ByteBuffer wrapper = BufferUtils.createByteBuffer(data.length);
+            wrapper.put(data);
+            wrapper.rewind();
+            image = new SharedImage(key, NativeImage.read(wrapper));
+            IMAGES.put(key, image);
+        }
+
+        image.references++;
+        return image;
+    }
+
+    public static synchronized void releaseImage(SharedImage image) {
+        if (--image.references > 0)
+            return;
+
+        IMAGES.remove(image.key);
+        image.image.close();
+    }
+
+    public static class SharedImage {
+        private final ByteBuffer key;
+        public final NativeImage image;
+        private int references;
+
+        private SharedImage(ByteBuffer key, NativeImage image) {
+            this.key = key;
+            this.image = image;
+        }
+
+        public long getShare() {
+            synchronized (SharedAssets.class) {
+                return share((long) image.getWidth() * image.getHeight() * image.format().components(), references);
+            }
+        }
+    }
+
+    // -- sounds -- //
+
+    //keyed by the ogg file, decoded and uploaded to openal only once for every avatar using it
+    //reference counted like the images, as openal buffers are not garbage collected either
+    private static final Map<ByteBuffer, SharedSound> SOUNDS = new HashMap<>();
+
+    //custom sounds holding a decoded sound, least recently played first
+    //once the decoded sounds are over the cap, the oldest holders that are not playing let go of theirs, to be decoded again when played
+    private static final long MAX_DECODED_SOUNDS = 64 * 1024 * 1024;
+    private static final LinkedHashMap<CustomSound, SharedSound> HOLDERS = new LinkedHashMap<>(16, 0.75f, true);
+    private static long decodedSize;
+
+    /**
+     * gets the decoded sound for the holder, starting its decoding if no one else did
+     * @return the decoded sound, completed once the data is ready
+     */
+    public static synchronized CompletableFuture<SoundBuffer> useSound(CustomSound holder) {
+        SharedSound sound = HOLDERS.get(holder);
+        if (sound != null)
+            return sound.buffer;
+
+        ByteBuffer key = ByteBuffer.wrap(holder.data);
+        sound = SOUNDS.get(key);
+        if (sound == null) {
+            sound = new SharedSound(key);
+            SOUNDS.put(key, sound);
+        }
+
+        sound.references++;
+        HOLDERS.put(holder, sound);
+        return sound.buffer;
+    }
+
+    private static SoundBuffer decode(SharedSound sound) {
+        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(sound.key.array()); OggAudioStream stream = new OggAudioStream(inputStream)) {
+            ByteBuffer pcm = stream.readAll();
+            synchronized (SharedAssets.class) {
+                //only counted while someone still holds it
+                if (sound.references > 0) {
+                    sound.size = pcm.remaining();
+                    decodedSize += sound.size;
+                }
+            }
+            return new SoundBuffer(pcm, stream.getFormat());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    public static void releaseSound(CustomSound holder) {
+        SharedSound sound;
+        synchronized (SharedAssets.class) {
+            sound = HOLDERS.remove(holder);
+            if (sound == null || --sound.references > 0)
+                return;
+
+            SOUNDS.remove(sound.key);
+            decodedSize -= sound.size;
+            sound.size = 0;
+        }
+
+        //openal buffers only exist on the sound thread, where they are also attached
+        sound.buffer.thenAcceptAsync(SoundBuffer::releaseAlBuffer, SoundAPI.getSoundEngine()::figura$execute);
+    }
+
+    //client thread only, as it checks the playing sounds
+    public static void trimSounds() {
+        List<CustomSound> toRelease = new ArrayList<>();
+        synchronized (SharedAssets.class) {
+            long size = decodedSize;
+            Map<SharedSound, Integer> released = new HashMap<>();
+            for (Map.Entry<CustomSound, SharedSound> entry : HOLDERS.entrySet()) {
+                if (size <= MAX_DECODED_SOUNDS)
+                    break;
+
+                if (entry.getKey().isPlaying())
+                    continue;
+
+                //the memory is only freed once every holder of the sound let it go
+                SharedSound sound = entry.getValue();
+                toRelease.add(entry.getKey());
+                if (released.merge(sound, 1, Integer::sum) == sound.references)
+                    size -= sound.size;
+            }
+        }
+
+        for (CustomSound sound : toRelease)
+            sound.release();
+    }
+
+    //this holder share of its decoded sound
+    public static synchronized long getSoundShare(CustomSound holder) {
+        SharedSound sound = HOLDERS.get(holder);
+        return sound == null ? 0 : share(sound.size, sound.references);
+    }
+
+    public static synchronized long getDecodedSoundsSize() {
+        return decodedSize;
+    }
+
+    private static class SharedSound {
+        private final ByteBuffer key;
+        private final CompletableFuture<SoundBuffer> buffer;
+        private long size;
+        private int references;
+
+        private SharedSound(ByteBuffer key) {
+            this.key = key;
+            this.buffer = CompletableFuture.supplyAsync(() -> decode(this), Util.backgroundExecutor());
+        }
+    }
+
+    // -- memory -- //
+
+    //shared assets are split between their users, so adding the memory of every avatar counts each of them once
+    private static long share(long size, int references) {
+        return references <= 1 ? size : size / references;
+    }
+}
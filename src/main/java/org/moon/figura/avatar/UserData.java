@@ -8,6 +8,7 @@ import org.moon.figura.backend2.NetworkStuff;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -18,6 +19,11 @@ public class UserData {
     private final Queue<Avatar> avatars = new ConcurrentLinkedQueue<>();
     private Pair<BitSet, BitSet> badges;
 
+    //hashes of the avatars from the backend, used to reload them from the cache after being unloaded
+    private final List<String> hashes = new ArrayList<>();
+    private boolean unloaded;
+    public int lastSeen;
+
     public UserData(UUID id) {
         this.id = id;
     }
@@ -26,6 +32,7 @@ public class UserData {
         loadBadges(badges);
         clear();
         for (Pair<String, Pair<String, UUID>> avatar : avatars) {
+            hashes.add(avatar.getFirst());
             if (!CacheAvatarLoader.checkAndLoad(avatar.getFirst(), this)) {
                 Pair<String, UUID> pair = avatar.getSecond();
                 NetworkStuff.getAvatar(this, pair.getSecond(), pair.getFirst(), avatar.getFirst());
@@ -34,9 +41,13 @@ public class UserData {
     }
 
     public void loadAvatar(CompoundTag nbt) {
+        loadAvatar(nbt, null);
+    }
+
+    public void loadAvatar(CompoundTag nbt, CompoundTag bytecode) {
         Avatar avatar = new Avatar(id);
         this.avatars.add(avatar);
-        avatar.load(nbt);
+        avatar.load(nbt, bytecode);
         FiguraMod.debug("Loaded avatar for " + id);
     }
 
@@ -56,9 +67,48 @@ public class UserData {
         return avatars.peek();
     }
 
+    public long getMemoryUsage() {
+        long size = 0;
+        for (Avatar avatar : avatars)
+            size += avatar.getMemoryUsage();
+        return size;
+    }
+
+    //unloads the avatars, keeping what is needed to reload them later
+    public boolean unload() {
+        if (hashes.isEmpty() || avatars.isEmpty())
+            return false;
+
+        for (Avatar avatar : avatars)
+            avatar.clean();
+        avatars.clear();
+
+        unloaded = true;
+        return true;
+    }
+
+    public boolean isUnloaded() {
+        return unloaded;
+    }
+
+    //reloads the unloaded avatars from the cache, returning false if any of them is no longer cached
+    public boolean reload() {
+        unloaded = false;
+        for (String hash : hashes) {
+            if (!CacheAvatarLoader.isCached(hash))
+                return false;
+        }
+
+        for (String hash : hashes)
+            CacheAvatarLoader.load(hash, this);
+        return true;
+    }
+
     public void clear() {
         for (Avatar avatar : avatars)
             avatar.clean();
         avatars.clear();
+        hashes.clear();
+        unloaded = false;
     }
 }
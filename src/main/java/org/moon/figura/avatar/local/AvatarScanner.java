@@ -0,0 +1,96 @@
+package org.moon.figura.avatar.local;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Walks an avatar directory into a tree of avatars and the folders containing them.
+ * Avatars are only created again when the modification time of their metadata changed since the last scan.
+ */
+class AvatarScanner<T> {
+
+    private final Function<Path, T> avatars;
+    private final BiFunction<Path, List<T>, T> folders;
+
+    private Map<Path, CachedAvatar<T>> cache = new HashMap<>();
+
+    /**
+     * @param avatars creates an avatar from its folder or .moon file, reading its metadata
+     * @param folders creates a folder from its avatars and sub folders
+     */
+    AvatarScanner(Function<Path, T> avatars, BiFunction<Path, List<T>, T> folders) {
+        this.avatars = avatars;
+        this.folders = folders;
+    }
+
+    /**
+     * @param moonFiles if .moon files count as avatars
+     * @return the avatars and the folders with avatars directly under the root, as an immutable list
+     */
+    public synchronized List<T> scan(Path root, boolean moonFiles) {
+        Map<Path, CachedAvatar<T>> scanned = new HashMap<>();
+        List<T> result = scanFolder(root, moonFiles, scanned);
+
+        //drop the avatars that are gone
+        cache = scanned;
+        return result;
+    }
+
+    //forgets every avatar, so the next scan creates them all again
+    public synchronized void clear() {
+        cache = new HashMap<>();
+    }
+
+    private List<T> scanFolder(Path folder, boolean moonFiles, Map<Path, CachedAvatar<T>> scanned) {
+        File[] files = folder.toFile().listFiles();
+        if (files == null)
+            return List.of();
+
+        List<T> children = new ArrayList<>();
+
+        //iterate over all files on this path
+        //but skip non-folders and non-moon
+        for (File file : files) {
+            Path path = file.toPath();
+            boolean moon = moonFiles && path.toString().toLowerCase().endsWith(".moon");
+
+            if (!Files.isDirectory(path) && !moon)
+                continue;
+
+            Path metadata = path.resolve("avatar.json");
+            if (moon || (Files.exists(metadata) && !Files.isDirectory(metadata))) {
+                children.add(getAvatar(path, moon ? path : metadata, scanned));
+            } else {
+                //only folders that have avatars somewhere inside are kept
+                List<T> folderChildren = scanFolder(path, moonFiles, scanned);
+                if (!folderChildren.isEmpty())
+                    children.add(folders.apply(path, folderChildren));
+            }
+        }
+
+        return Collections.unmodifiableList(children);
+    }
+
+    //reuses the avatar from the last scan when its metadata did not change
+    private T getAvatar(Path path, Path metadata, Map<Path, CachedAvatar<T>> scanned) {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(metadata).toMillis();
+        } catch (Exception ignored) {
+            modified = -1;
+        }
+
+        CachedAvatar<T> cached = cache.get(path);
+        if (cached == null || cached.modified != modified)
+            cached = new CachedAvatar<>(avatars.apply(path), modified);
+
+        scanned.put(path, cached);
+        return cached.avatar;
+    }
+
+    private record CachedAvatar<T>(T avatar, long modified) {}
+}
@@ -4,6 +4,7 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.UserData;
+import org.moon.figura.lua.LuaBytecode;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -46,10 +47,7 @@ public class CacheAvatarLoader {
     }
 
     public static boolean checkAndLoad(String hash, UserData target) {
-        Path p = getAvatarCacheDirectory();
-        p = p.resolve(hash + ".moon");
-
-        if (Files.exists(p)) {
+        if (isCached(hash)) {
             load(hash, target);
             return true;
         }
@@ -57,11 +55,15 @@ public class CacheAvatarLoader {
         return false;
     }
 
+    public static boolean isCached(String hash) {
+        return Files.exists(getAvatarCacheDirectory().resolve(hash + ".moon"));
+    }
+
     public static void load(String hash, UserData target) {
         LocalAvatarLoader.async(() -> {
             Path path = getAvatarCacheDirectory().resolve(hash + ".moon");
             try {
-                target.loadAvatar(NbtIo.readCompressed(new FileInputStream(path.toFile())));
+                target.loadAvatar(NbtIo.readCompressed(new FileInputStream(path.toFile())), loadBytecode(hash));
                 FiguraMod.debug("Loaded avatar \"{}\" from cache to \"{}\"", hash, target.id);
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to load cache avatar: " + hash, e);
@@ -75,12 +77,33 @@ public class CacheAvatarLoader {
             try {
                 NbtIo.writeCompressed(nbt, new FileOutputStream(file.toFile()));
                 FiguraMod.debug("Saved avatar \"{}\" on cache", hash);
+
+                //compile the scripts ourselves, so loading the avatar again from cache skips parsing them
+                //kept in its own file, as nothing in the downloaded avatar can be trusted as bytecode
+                if (nbt.contains("scripts")) {
+                    CompoundTag bytecode = LuaBytecode.compile(nbt.getCompound("scripts"));
+                    NbtIo.writeCompressed(bytecode, new FileOutputStream(getAvatarCacheDirectory().resolve(hash + ".luac").toFile()));
+                }
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to save avatar on cache: " + hash, e);
             }
         });
     }
 
+    //missing or broken bytecode just means the scripts are compiled from source
+    private static CompoundTag loadBytecode(String hash) {
+        Path path = getAvatarCacheDirectory().resolve(hash + ".luac");
+        if (!Files.exists(path))
+            return null;
+
+        try {
+            return NbtIo.readCompressed(new FileInputStream(path.toFile()));
+        } catch (Exception e) {
+            FiguraMod.debug("Failed to load cached bytecode for \"{}\": {}", hash, e.getMessage());
+            return null;
+        }
+    }
+
     public static void clearCache() {
         LocalAvatarLoader.async(() -> {
             File file = getAvatarCacheDirectory().toFile();
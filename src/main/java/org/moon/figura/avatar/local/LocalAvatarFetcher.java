@@ -9,14 +9,15 @@ import org.moon.figura.gui.cards.CardBackground;
 import org.moon.figura.parsers.AvatarMetadataParser;
 import org.moon.figura.utils.IOUtils;
 
-import java.io.File;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Navigates through the file system, finding all folders
@@ -25,26 +26,73 @@ import java.util.Map;
 public class LocalAvatarFetcher {
 
     /**
-     * After calling load(), this is an AvatarFolder that contains
+     * After calling load(), this is an immutable list that contains
      * the whole filesystem of avatars.
+     * Replaced as a whole by every scan, so it is safe to read from any thread.
      */
-    public static final List<AvatarPath> ALL_AVATARS = new ArrayList<>();
-    private static final Map<String, Boolean> FOLDER_DATA = new HashMap<>();
+    private static volatile List<AvatarPath> allAvatars = List.of();
+    private static volatile boolean loaded = false;
+    private static CompletableFuture<Void> scan;
+
+    //scans run on their own thread, so a slow drive does not hold up the shared pool
+    private static final ExecutorService SCAN_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Figura Avatar Scanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //folder expansion is changed by the gui while scans read it
+    private static final Map<String, Boolean> FOLDER_DATA = new ConcurrentHashMap<>();
+
+    //avatars from the last scan, only re-read when their avatar.json changed
+    private static final AvatarScanner<AvatarPath> SCANNER = new AvatarScanner<>(AvatarPath::new, FolderPath::new);
+    private static boolean fileNames;
 
     /**
-     * Clears out the root AvatarFolder, and regenerates it from the
-     * file system.
+     * Regenerates the avatar list from the file system.
+     * Unchanged avatars are reused from the previous scan.
      */
-    public static void load() {
-        //clear loaded avatars
-        ALL_AVATARS.clear();
+    public static synchronized void load() {
+        //the avatar names also depend on the config
+        boolean fileNames = Config.WARDROBE_FILE_NAMES.asBool();
+        if (fileNames != LocalAvatarFetcher.fileNames) {
+            LocalAvatarFetcher.fileNames = fileNames;
+            SCANNER.clear();
+        }
 
-        //load avatars
-        FolderPath root = new FolderPath(getLocalAvatarDirectory());
-        root.fetch();
+        //load and publish the new avatars
+        allAvatars = SCANNER.scan(getLocalAvatarDirectory(), FiguraMod.DEBUG_MODE);
+        loaded = true;
+    }
+
+    /**
+     * Schedules a load() on the scanner thread, unless one is still pending.
+     */
+    public static void loadAsync() {
+        if (scan != null && !scan.isDone())
+            return;
+
+        scan = CompletableFuture.runAsync(() -> {
+            try {
+                load();
+            } catch (Exception e) {
+                FiguraMod.LOGGER.error("Failed to scan the avatar directory", e);
+            }
+        }, SCAN_EXECUTOR);
+    }
 
-        //add new avatars
-        ALL_AVATARS.addAll(root.getChildren());
+    /**
+     * @return the avatars from the last finished scan
+     */
+    public static List<AvatarPath> getAvatars() {
+        return allAvatars;
+    }
+
+    /**
+     * @return if any scan has finished
+     */
+    public static boolean isLoaded() {
+        return loaded;
     }
 
     /**
@@ -158,56 +206,22 @@ public class LocalAvatarFetcher {
      */
     public static class FolderPath extends AvatarPath {
 
-        protected final List<AvatarPath> children = new ArrayList<>();
+        protected final List<AvatarPath> children;
         protected boolean expanded = true;
 
-        public FolderPath(Path path) {
+        /**
+         * Folders are only created by the scanner, and only when some avatar was found inside them.
+         * Either in this folder or in one of its sub folders.
+         */
+        public FolderPath(Path path, List<AvatarPath> children) {
             super(path);
+            this.children = children;
 
             Boolean expanded = FOLDER_DATA.get(this.path.toFile().getAbsolutePath());
             if (expanded != null)
                 this.expanded = expanded;
         }
 
-        /**
-         * Recursively traverses the filesystem looking for avatars under this folder.
-         * @return Whether we found an avatar in our recursive searching.
-         * Either in this folder or in one of its sub folders.
-         * If we didn't, then this folder can get ignored and not added as a child in another folder.
-         * We only want our FolderPath to contain sub-folders that actually have avatars.
-         */
-        public boolean fetch() {
-            File[] files = path.toFile().listFiles();
-            if (files == null)
-                return false;
-
-            boolean found = false;
-
-            //iterate over all files on this path
-            //but skip non-folders and non-moon
-            for (File file : files) {
-                Path path = file.toPath();
-                boolean moon = FiguraMod.DEBUG_MODE && path.toString().toLowerCase().endsWith(".moon");
-
-                if (!Files.isDirectory(path) && !moon)
-                    continue;
-
-                Path metadata = path.resolve("avatar.json");
-                if (moon || (Files.exists(metadata) && !Files.isDirectory(metadata))) {
-                    children.add(new AvatarPath(path));
-                    found = true;
-                } else {
-                    FolderPath folder = new FolderPath(file.toPath());
-                    if (folder.fetch()) {
-                        children.add(folder);
-                        found = true;
-                    }
-                }
-            }
-
-            return found;
-        }
-
         @Override
         public boolean search(String query) {
             boolean result = super.search(query);
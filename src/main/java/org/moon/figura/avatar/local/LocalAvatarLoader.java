@@ -10,10 +10,12 @@ import net.minecraft.server.packs.resources.Resource;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.AvatarManager;
 import org.moon.figura.avatar.UserData;
+import org.moon.figura.config.Config;
 import org.moon.figura.gui.FiguraToast;
 import org.moon.figura.parsers.AvatarMetadataParser;
 import org.moon.figura.parsers.BlockbenchModelParser;
 import org.moon.figura.parsers.LuaScriptParser;
+import org.moon.figura.parsers.PackedGeometryParser;
 import org.moon.figura.utils.FiguraResourceListener;
 import org.moon.figura.utils.FiguraText;
 import org.moon.figura.utils.IOUtils;
@@ -29,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
 
 /**
@@ -134,7 +137,7 @@ public class LocalAvatarLoader {
                 BlockbenchModelParser modelParser = new BlockbenchModelParser();
 
                 loadState++;
-                CompoundTag models = loadModels(path, modelParser, textures, animations, "");
+                CompoundTag models = loadModels(path, modelParser, textures, animations);
                 models.putString("name", "models");
 
                 //metadata
@@ -144,6 +147,9 @@ public class LocalAvatarLoader {
                 AvatarMetadataParser.injectToModels(metadata, models);
                 AvatarMetadataParser.injectToTextures(metadata, textures);
 
+                if (Config.PACK_GEOMETRY.asBool())
+                    PackedGeometryParser.pack(models);
+
                 //return :3
                 if (!models.isEmpty())
                     nbt.put("models", models);
@@ -194,22 +200,59 @@ public class LocalAvatarLoader {
         }
     }
 
-    private static CompoundTag loadModels(Path path, BlockbenchModelParser parser, CompoundTag textures, ListTag animations, String folders) throws Exception {
-        CompoundTag result = new CompoundTag();
+    //model files are read and their textures decoded concurrently
+    //but they are parsed one by one in the folder order, as their texture and animation ids depend on the models before them
+    private static CompoundTag loadModels(Path path, BlockbenchModelParser parser, CompoundTag textures, ListTag animations) throws Exception {
+        Map<Path, File[]> listings = new HashMap<>();
+        Map<File, CompletableFuture<BlockbenchModelParser.RawModel>> models = new HashMap<>();
+        readModels(path, "", listings, models);
+
+        try {
+            return loadModels(path, parser, listings, models, textures, animations, "");
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    //lists the folders only once, so both passes see the same files
+    private static void readModels(Path path, String folders, Map<Path, File[]> listings, Map<File, CompletableFuture<BlockbenchModelParser.RawModel>> models) {
         File[] subFiles = path.toFile().listFiles(f -> !f.isHidden() && !f.getName().startsWith("."));
+        listings.put(path, subFiles);
+        if (subFiles == null)
+            return;
+
+        for (File file : subFiles) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                readModels(file.toPath(), folders + name + ".", listings, models);
+            } else if (file.toString().toLowerCase().endsWith(".bbmodel")) {
+                models.put(file, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return BlockbenchModelParser.readModel(path, file, name.substring(0, name.length() - 8), folders);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }));
+            }
+        }
+    }
+
+    private static CompoundTag loadModels(Path path, BlockbenchModelParser parser, Map<Path, File[]> listings, Map<File, CompletableFuture<BlockbenchModelParser.RawModel>> models, CompoundTag textures, ListTag animations, String folders) {
+        CompoundTag result = new CompoundTag();
+        File[] subFiles = listings.get(path);
         ListTag children = new ListTag();
         if (subFiles != null)
             for (File file : subFiles) {
                 String name = file.getName();
                 if (file.isDirectory()) {
-                    CompoundTag subfolder = loadModels(file.toPath(), parser, textures, animations, folders + name + ".");
+                    CompoundTag subfolder = loadModels(file.toPath(), parser, listings, models, textures, animations, folders + name + ".");
                     if (!subfolder.isEmpty()) {
                         subfolder.putString("name", name);
                         BlockbenchModelParser.parseParent(name, subfolder);
                         children.add(subfolder);
                     }
                 } else if (file.toString().toLowerCase().endsWith(".bbmodel")) {
-                    BlockbenchModelParser.ModelData data = parser.parseModel(path, file, IOUtils.readFile(file), name.substring(0, name.length() - 8), folders);
+                    BlockbenchModelParser.ModelData data = parser.parseModel(models.get(file).join());
                     children.add(data.modelNbt());
                     animations.addAll(data.animationList());
 
@@ -17,18 +17,26 @@ public class HttpAPI {
 
     private final HttpClient client;
     private final String token;
+    private final String address;
 
     public HttpAPI(HttpClient client, String token) {
+        this(client, token, null);
+    }
+
+    //test only, for a stand-in backend on this machine
+    //the real backend is always reached over https, as every request carries the token
+    HttpAPI(HttpClient client, String token, String address) {
         this.client = client;
         this.token = token;
+        this.address = address;
     }
 
 
     // -- builders -- //
 
 
-    private static URI getUri(String url) {
-        return URI.create(getBackendAddress() + "/" + url);
+    private URI getUri(String url) {
+        return URI.create((address != null ? address : getBackendAddress()) + "/" + url);
     }
 
     private static String getBackendAddress() {
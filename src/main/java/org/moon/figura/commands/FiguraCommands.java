@@ -11,6 +11,12 @@ import org.moon.figura.lua.docs.FiguraDocsManager;
 public class FiguraCommands {
 
     public static void init() {
+        //the docs only add a thin node here, so the tree is built once and registered on every world join
+        LiteralArgumentBuilder<FabricClientCommandSource> root = getCommand();
+        ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> dispatcher.register(root));
+    }
+
+    private static LiteralArgumentBuilder<FabricClientCommandSource> getCommand() {
         //root
         LiteralArgumentBuilder<FabricClientCommandSource> root = LiteralArgumentBuilder.literal(FiguraMod.MOD_ID);
 
@@ -41,7 +47,6 @@ public class FiguraCommands {
             root.then(AvatarManager.getCommand());
         }
 
-        //register
-        ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> dispatcher.register(root));
+        return root;
     }
 }
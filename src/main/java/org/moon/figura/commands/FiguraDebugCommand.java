@@ -93,6 +93,7 @@ public class FiguraDebugCommand {
         meta.addProperty("backendDisconnectedReason", NetworkStuff.disconnectedReason);
         meta.addProperty("uploaded", AvatarManager.localUploaded);
         meta.addProperty("panicMode", AvatarManager.panic);
+        meta.addProperty("avatarsMemoryUsage", AvatarManager.getMemoryUsage());
 
         root.add("meta", meta);
 
@@ -135,7 +136,7 @@ public class FiguraDebugCommand {
 
         //avatars
         LocalAvatarFetcher.load();
-        root.add("avatars", getAvatarsPaths(LocalAvatarFetcher.ALL_AVATARS));
+        root.add("avatars", getAvatarsPaths(LocalAvatarFetcher.getAvatars()));
 
 
         // -- avatar -- //
@@ -180,6 +181,7 @@ public class FiguraDebugCommand {
         aMeta.addProperty("name", avatar.name);
         aMeta.addProperty("entityName", avatar.entityName);
         aMeta.addProperty("fileSize", avatar.fileSize);
+        aMeta.addProperty("memoryUsage", avatar.getMemoryUsage());
         aMeta.addProperty("isHost", avatar.isHost);
         aMeta.addProperty("loaded", avatar.loaded);
         aMeta.addProperty("owner", avatar.owner.toString());
@@ -209,6 +211,20 @@ public class FiguraDebugCommand {
 
         a.add("instructions", inst);
 
+        //performance
+        JsonObject perf = new JsonObject();
+
+        perf.addProperty("tickNanos", avatar.tickTime);
+        perf.addProperty("renderNanos", avatar.renderTime);
+        perf.addProperty("renderBatches", avatar.renderBatches);
+        perf.addProperty("soundMemory", avatar.getSoundMemory());
+        perf.addProperty("vertices", avatar.vertices);
+        perf.addProperty("verticesPerSecond", avatar.renderTime == 0 ? 0 : avatar.vertices * 1_000_000_000L / avatar.renderTime);
+        perf.addProperty("tickInstructions", avatar.tick.pre + avatar.worldTick.pre);
+        perf.addProperty("renderInstructions", avatar.render.pre + avatar.render.post + avatar.worldRender.pre + avatar.worldRender.post);
+
+        a.add("performance", perf);
+
         //sounds
         JsonArray sounds = new JsonArray();
 
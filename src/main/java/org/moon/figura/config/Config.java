@@ -85,6 +85,25 @@ public enum Config {
                 AvatarManager.reloadAvatar(FiguraMod.getLocalPlayerUUID());
         }
     },
+    PACK_GEOMETRY(false) {{
+        String tooltip = "config.pack_geometry.tooltip.";
+        this.tooltip = FiguraText.of(tooltip + "1")
+                .append("\n")
+                .append(FiguraText.of(tooltip + "2").withStyle(ChatFormatting.RED));
+    }
+        @Override
+        public void onChange() {
+            if (!AvatarManager.localUploaded)
+                AvatarManager.reloadAvatar(FiguraMod.getLocalPlayerUUID());
+        }
+    },
+    PARALLEL_TICKING(false),
+    SHARED_CEM(false) {
+        @Override
+        public void onChange() {
+            AvatarManager.clearCEMAvatars();
+        }
+    },
 
     ActionWheel,
     ACTION_WHEEL_BUTTON("key.keyboard.b"),
@@ -146,6 +165,7 @@ public enum Config {
     },
     CHAT_EMOJIS(false),
     EASTER_EGGS(true),
+    AVATAR_MEMORY_BUDGET(512, InputType.POSITIVE_INT),
 
     Dev {{this.name = this.name.copy().withStyle(ChatFormatting.RED);}},
     CONNECTION_TOASTS(true),
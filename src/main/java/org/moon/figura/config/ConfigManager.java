@@ -7,11 +7,12 @@ import com.google.gson.JsonParser;
 import com.mojang.blaze3d.platform.InputConstants;
 import net.fabricmc.loader.api.FabricLoader;
 import org.moon.figura.FiguraMod;
+import org.moon.figura.utils.SaveScheduler;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -73,34 +74,29 @@ public final class ConfigManager {
     }
 
     public static void saveConfig() {
-        if (initializing)
-            return;
-
-        try {
-            JsonObject configJson = new JsonObject();
-            configJson.addProperty("CONFIG_VERSION", Config.CONFIG_VERSION);
-
-            for (Config config : CONFIG_ENTRIES) {
-                String name = config.name().toLowerCase();
-                if (config.value instanceof Number n)
-                    configJson.addProperty(name, n);
-                else if (config.value instanceof Character c)
-                    configJson.addProperty(name, c);
-                else if (config.value instanceof Boolean b)
-                    configJson.addProperty(name, b);
-                else
-                    configJson.addProperty(name, String.valueOf(config.value));
-            }
-
-            String jsonString = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create().toJson(configJson);
-            FileWriter fileWriter = new FileWriter(FILE);
-            fileWriter.write(jsonString);
-            fileWriter.close();
+        if (!initializing)
+            SaveScheduler.INSTANCE.schedule(FILE.toPath(), ConfigManager::serialize);
+    }
 
-            FiguraMod.debug("Successfully saved config file");
-        } catch (Exception e) {
-            FiguraMod.LOGGER.error("Failed to save config file!", e);
+    private static byte[] serialize() {
+        JsonObject configJson = new JsonObject();
+        configJson.addProperty("CONFIG_VERSION", Config.CONFIG_VERSION);
+
+        for (Config config : CONFIG_ENTRIES) {
+            String name = config.name().toLowerCase();
+            if (config.value instanceof Number n)
+                configJson.addProperty(name, n);
+            else if (config.value instanceof Character c)
+                configJson.addProperty(name, c);
+            else if (config.value instanceof Boolean b)
+                configJson.addProperty(name, b);
+            else
+                configJson.addProperty(name, String.valueOf(config.value));
         }
+
+        //same charset as the FileReader used for loading
+        String jsonString = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create().toJson(configJson);
+        return jsonString.getBytes(Charset.defaultCharset());
     }
 
     public static void applyConfig() {
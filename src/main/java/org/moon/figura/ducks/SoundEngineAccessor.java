@@ -13,7 +13,10 @@ public interface SoundEngineAccessor {
     void figura$addSound(LuaSound sound);
     void figura$stopSound(UUID owner, String name);
     void figura$stopAllSounds();
+    int figura$getSoundCount(UUID owner);
+    boolean figura$hasSound(UUID owner, String name);
     ChannelAccess.ChannelHandle figura$createHandle(UUID owner, String name, Library.Pool pool);
     float figura$getVolume(SoundSource category);
     SoundBufferLibrary figura$getSoundBuffers();
+    void figura$execute(Runnable runnable);
 }
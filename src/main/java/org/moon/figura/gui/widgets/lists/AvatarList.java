@@ -85,8 +85,11 @@ public class AvatarList extends AbstractList {
         //scissors
         this.updateScissors(1, 49, -2, -50);
 
-        //initial load
-        LocalAvatarFetcher.load();
+        //initial load, only blocking if there is nothing to show yet
+        if (LocalAvatarFetcher.isLoaded())
+            LocalAvatarFetcher.loadAsync();
+        else
+            LocalAvatarFetcher.load();
         loadContents();
 
         scrollToSelected();
@@ -97,7 +100,7 @@ public class AvatarList extends AbstractList {
     public void tick() {
         //update list
         if (FiguraMod.ticks % 20 == 0)
-            LocalAvatarFetcher.load();
+            LocalAvatarFetcher.loadAsync();
         loadContents();
         super.tick();
     }
@@ -145,7 +148,7 @@ public class AvatarList extends AbstractList {
     private void loadContents() {
         // Load avatars //
         HashSet<Path> missingPaths = new HashSet<>(avatars.keySet());
-        for (LocalAvatarFetcher.AvatarPath avatar : LocalAvatarFetcher.ALL_AVATARS) {
+        for (LocalAvatarFetcher.AvatarPath avatar : LocalAvatarFetcher.getAvatars()) {
             Path path = avatar.getPath();
 
             //filter
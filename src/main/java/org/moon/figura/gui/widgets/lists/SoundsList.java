@@ -1,6 +1,5 @@
 package org.moon.figura.gui.widgets.lists;
 
-import com.mojang.blaze3d.audio.SoundBuffer;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.PoseStack;
 import net.minecraft.ChatFormatting;
@@ -10,6 +9,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.util.Mth;
 import net.minecraft.world.phys.Vec3;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.CustomSound;
 import org.moon.figura.gui.widgets.AbstractContainerElement;
 import org.moon.figura.gui.widgets.Label;
 import org.moon.figura.gui.widgets.ParentedButton;
@@ -86,7 +86,7 @@ public class SoundsList extends AbstractList {
         if (owner == null)
             return;
 
-        for (Map.Entry<String, SoundBuffer> entry : owner.customSounds.entrySet()) {
+        for (Map.Entry<String, CustomSound> entry : owner.customSounds.entrySet()) {
             SoundElement sound = new SoundElement(width - 22, entry.getKey(), entry.getValue(), this, owner);
             sounds.add(sound);
             children.add(sound);
@@ -103,7 +103,7 @@ public class SoundsList extends AbstractList {
 
         private final ParentedButton play, stop;
 
-        public SoundElement(int width, String name, SoundBuffer sound, SoundsList parent, Avatar owner) {
+        public SoundElement(int width, String name, CustomSound sound, SoundsList parent, Avatar owner) {
             super(0, 0, width, 20);
             this.name = name;
             this.parent = parent;
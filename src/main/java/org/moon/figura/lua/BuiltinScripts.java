@@ -0,0 +1,48 @@
+package org.moon.figura.lua;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.moon.figura.FiguraMod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the lua scripts bundled with the mod, loaded by every runtime
+ * they are the same for every avatar, so they are compiled only once
+ * prototypes are never modified by closures, so they are safe to share between runtimes
+ */
+class BuiltinScripts {
+
+    private static final Map<String, Prototype> PROTOTYPES = new ConcurrentHashMap<>();
+
+    /**
+     * @return a new closure of the builtin script, bound to the globals
+     */
+    static LuaValue load(String name, Globals globals) throws IOException {
+        return new LuaClosure(get(name), globals);
+    }
+
+    //the shared prototype, compiled on first use
+    static Prototype get(String name) throws IOException {
+        Prototype prototype = PROTOTYPES.get(name);
+        if (prototype == null) {
+            prototype = compile(name);
+            PROTOTYPES.put(name, prototype);
+        }
+        return prototype;
+    }
+
+    //always compiles the script again, skipping the cache
+    static Prototype compile(String name) throws IOException {
+        try (InputStream inputStream = FiguraMod.class.getResourceAsStream("/assets/" + FiguraMod.MOD_ID + "/scripts/" + name + ".lua")) {
+            if (inputStream == null) throw new IOException("Unable to get resource");
+            return LuaBytecode.compile(name, new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -116,7 +116,9 @@ public class FiguraLuaPrinter {
         if ((owner.entityType == EntityType.PLAYER && !Config.LOG_OTHERS.asBool() && !FiguraMod.isLocal(owner.owner)) || owner.trust.getGroup() == Trust.Group.BLOCKED)
             return;
 
-        chatQueue.offer(component); //bypass the char limit filter
+        synchronized (FiguraLuaPrinter.class) {
+            chatQueue.offer(component); //bypass the char limit filter
+        }
         FiguraMod.LOGGER.error("", error);
     }
 
@@ -355,6 +357,7 @@ public class FiguraLuaPrinter {
     //-- SLOW PRINTING OF LOG --//
 
     //Log safety
+    //avatars may print while ticking off thread, so the queue is only touched under the class lock
     private static final LinkedList<Component> chatQueue = new LinkedList<>();
     private static final int MAX_CHARS_QUEUED = 10_000_000;
     private static int charsQueued = 0;
@@ -365,7 +368,7 @@ public class FiguraLuaPrinter {
      * @param message to send
      * @throws org.luaj.vm2.LuaError if the message could not fit in the queue
      */
-    private static void sendLuaChatMessage(Component message) throws LuaError {
+    private static synchronized void sendLuaChatMessage(Component message) throws LuaError {
         charsQueued += message.getString().length();
         if (charsQueued > MAX_CHARS_QUEUED) {
             chatQueue.clear();
@@ -375,11 +378,11 @@ public class FiguraLuaPrinter {
         chatQueue.offer(message);
     }
 
-    public static void clearPrintQueue() {
+    public static synchronized void clearPrintQueue() {
         chatQueue.clear();
     }
 
-    public static void printChatFromQueue() {
+    public static synchronized void printChatFromQueue() {
         if (chatQueue.isEmpty())
             return;
 
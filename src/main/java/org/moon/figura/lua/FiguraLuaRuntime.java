@@ -24,8 +24,6 @@ import org.moon.figura.lua.api.ping.PingAPI;
 import org.moon.figura.lua.api.vanilla_model.VanillaModelAPI;
 import org.moon.figura.trust.Trust;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -56,13 +54,15 @@ public class FiguraLuaRuntime {
     private final Globals userGlobals = new Globals();
     private final LuaValue setHookFunction;
     protected final Map<String, String> scripts = new HashMap<>();
+    private final Map<String, Prototype> prototypes = new HashMap<>();
     private final Map<String, Varargs> loadedScripts = new HashMap<>();
     private final Stack<String> loadingScripts = new Stack<>();
     public final LuaTypeManager typeManager = new LuaTypeManager();
 
-    public FiguraLuaRuntime(Avatar avatar, Map<String, String> scripts) {
+    public FiguraLuaRuntime(Avatar avatar, Map<String, String> scripts, Map<String, Prototype> prototypes) {
         this.owner = avatar;
         this.scripts.putAll(scripts);
+        this.prototypes.putAll(prototypes);
 
         //Each user gets their own set of globals as well.
         userGlobals.load(new JseBaseLib());
@@ -121,9 +121,8 @@ public class FiguraLuaRuntime {
 
     private void setupFiguraSandbox() {
         //actual sandbox file
-        try (InputStream inputStream = FiguraMod.class.getResourceAsStream("/assets/" + FiguraMod.MOD_ID + "/scripts/sandbox.lua")) {
-            if (inputStream == null) throw new IOException("Unable to get resource");
-            userGlobals.load(new String(inputStream.readAllBytes()), "sandbox").call();
+        try {
+            BuiltinScripts.load("sandbox", userGlobals).call();
         } catch (Exception e) {
             error(new LuaError("Failed to load builtin sandbox script:\n" + e.getMessage()));
         }
@@ -180,9 +179,8 @@ public class FiguraLuaRuntime {
         this.setGlobal("listFiles", listFiles);
 
         //load math library
-        try (InputStream inputStream = FiguraMod.class.getResourceAsStream("/assets/" + FiguraMod.MOD_ID + "/scripts/math.lua")) {
-            if (inputStream == null) throw new IOException("Unable to get resource");
-            userGlobals.load(new String(inputStream.readAllBytes()), "math").call();
+        try {
+            BuiltinScripts.load("math", userGlobals).call();
         } catch (Exception e) {
             error(new LuaError("Failed to load builtin math script:\n" + e.getMessage()));
         }
@@ -254,7 +252,9 @@ public class FiguraLuaRuntime {
         int split = name.lastIndexOf('.');
         String path = split == -1 ? "" : name.substring(0, split);
         String fileName = split == -1 ? name : name.substring(split + 1);
-        Varargs value = userGlobals.load(src, name).invoke(LuaValue.varargsOf(LuaValue.valueOf(path), LuaValue.valueOf(fileName)));
+        Prototype prototype = prototypes.get(name);
+        LuaValue chunk = prototype != null ? new LuaClosure(prototype, userGlobals) : userGlobals.load(src, name);
+        Varargs value = chunk.invoke(LuaValue.varargsOf(LuaValue.valueOf(path), LuaValue.valueOf(fileName)));
         if (value == LuaValue.NIL)
             value = LuaValue.TRUE;
 
@@ -0,0 +1,131 @@
+package org.moon.figura.lua;
+
+import net.minecraft.nbt.CompoundTag;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.Lua;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.DumpState;
+import org.luaj.vm2.compiler.LuaC;
+import org.moon.figura.FiguraMod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * precompiled script prototypes, kept by the avatar cache next to the avatars this client downloaded
+ * LuaJ does not verify bytecode, so it is never read from an avatar, only from what this client compiled itself
+ * a chunk is only used when both the LuaJ build and the script source match the ones it was compiled from
+ * otherwise the script is compiled from source as usual
+ */
+public class LuaBytecode {
+
+    //compile only globals, no libraries needed
+    private static final Globals COMPILER = new Globals();
+    static {
+        LuaC.install(COMPILER);
+    }
+
+    //bytecode is only compatible with the LuaJ build that produced it
+    //so the version also carries the dump of a known chunk, which changes whenever the compiler output does
+    public static final String VERSION = Lua._VERSION + "/" + LuaC.class.getPackage().getImplementationVersion() + "/" + probe();
+
+    private static String probe() {
+        try {
+            String src = "local a, b = ..., {1, 2.5, 'c', x = true} for i = 1, #b do a = (a or 0) + i end return function(...) return a, b, ... end";
+            return Integer.toHexString(hash(dump(compile("probe", src))));
+        } catch (Exception e) {
+            FiguraMod.LOGGER.warn("Failed to fingerprint the Lua compiler", e);
+            return "unknown";
+        }
+    }
+
+    // -- packaging -- //
+
+    /**
+     * compiles every script from the avatar "scripts" tag
+     * scripts with syntax errors are skipped, as they will report their error when loaded from source
+     * @param scripts the avatar scripts, as in the nbt
+     * @return the bytecode tag
+     */
+    public static CompoundTag compile(CompoundTag scripts) {
+        CompoundTag chunks = new CompoundTag();
+        for (String name : scripts.getAllKeys()) {
+            byte[] src = scripts.getByteArray(name);
+            try {
+                CompoundTag chunk = new CompoundTag();
+                chunk.putInt("hash", hash(src));
+                chunk.putByteArray("code", dump(compile(name, new String(src, StandardCharsets.UTF_8))));
+                chunks.put(name, chunk);
+            } catch (Exception e) {
+                FiguraMod.debug("Skipped precompiling script \"{}\": {}", name, e.getMessage());
+            }
+        }
+
+        CompoundTag nbt = new CompoundTag();
+        nbt.putString("ver", VERSION);
+        nbt.put("chunks", chunks);
+        return nbt;
+    }
+
+    // -- loading -- //
+
+    /**
+     * reads the bytecode, verifying it against the current LuaJ build and the avatar scripts
+     * @param bytecode the bytecode compiled by this client, never the one from an avatar nbt
+     * @param scripts the avatar scripts, as in the nbt
+     * @return a map of script name -> prototype, only with the scripts that passed the verification
+     */
+    public static Map<String, Prototype> load(CompoundTag bytecode, CompoundTag scripts) {
+        Map<String, Prototype> map = new HashMap<>();
+        if (bytecode == null)
+            return map;
+
+        if (!bytecode.getString("ver").equals(VERSION)) {
+            FiguraMod.debug("Ignoring precompiled scripts from another Lua version ({})", bytecode.getString("ver"));
+            return map;
+        }
+
+        CompoundTag chunks = bytecode.getCompound("chunks");
+        for (String name : chunks.getAllKeys()) {
+            CompoundTag chunk = chunks.getCompound(name);
+            if (!scripts.contains(name) || chunk.getInt("hash") != hash(scripts.getByteArray(name)))
+                continue;
+
+            try (ByteArrayInputStream stream = new ByteArrayInputStream(chunk.getByteArray("code"))) {
+                Prototype prototype = LoadState.undump(stream, name);
+                if (prototype != null)
+                    map.put(name, prototype);
+            } catch (Exception e) {
+                FiguraMod.debug("Failed to load precompiled script \"{}\": {}", name, e.getMessage());
+            }
+        }
+
+        return map;
+    }
+
+    // -- helpers -- //
+
+    //same compiler path as Globals.load(String, String), so the prototypes are identical
+    public static Prototype compile(String name, String src) throws IOException {
+        return COMPILER.compilePrototype(new StringReader(src), name);
+    }
+
+    private static byte[] dump(Prototype prototype) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DumpState.dump(prototype, baos, false);
+        return baos.toByteArray();
+    }
+
+    private static int hash(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
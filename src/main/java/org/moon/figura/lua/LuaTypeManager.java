@@ -1,9 +1,11 @@
 package org.moon.figura.lua;
 
+import com.google.common.collect.MapMaker;
 import org.luaj.vm2.*;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.TwoArgFunction;
 import org.luaj.vm2.lib.VarArgFunction;
+import org.moon.figura.lua.api.entity.EntityAPI;
 import org.moon.figura.lua.docs.FiguraDocsManager;
 import org.moon.figura.lua.docs.LuaTypeDoc;
 
@@ -12,6 +14,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * One LuaTypeManager per LuaRuntime, so that people can be allowed to edit the metatables within.
@@ -20,6 +23,10 @@ public class LuaTypeManager {
 
     private final Map<Class<?>, LuaTable> metatables = new HashMap<>();
 
+    //one userdata per entity uuid, so the same entity is always the same object for the scripts of this runtime
+    //weak values, so they are dropped once the scripts no longer hold them
+    private final Map<UUID, LuaUserdata> entityUserdata = new MapMaker().weakValues().makeMap();
+
     public void generateMetatableFor(Class<?> clazz) {
         if (metatables.containsKey(clazz))
             return;
@@ -202,6 +209,15 @@ public class LuaTypeManager {
     }
 
     private LuaValue wrap(Object instance) {
+        if (instance instanceof EntityAPI<?> entity) {
+            //reuse the wrapper the scripts already have, pointing it to the current instance of the entity
+            LuaUserdata cached = entityUserdata.get(entity.getEntity().getUUID());
+            if (cached != null && cached.userdata().getClass() == entity.getClass()) {
+                ((EntityAPI<?>) cached.userdata()).update(entity.getEntity());
+                return cached;
+            }
+        }
+
         Class<?> clazz = instance.getClass();
         LuaTable metatable = metatables.get(clazz);
         while (metatable == null) {
@@ -213,6 +229,10 @@ public class LuaTypeManager {
 
         LuaUserdata result = new LuaUserdata(instance);
         result.setmetatable(metatable);
+
+        if (instance instanceof EntityAPI<?> entity)
+            entityUserdata.put(entity.getEntity().getUUID(), result);
+
         return result;
     }
 
@@ -5,6 +5,7 @@ import org.luaj.vm2.LuaValue;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
+import org.moon.figura.lua.ReadOnlyLuaTable;
 import org.moon.figura.lua.docs.LuaMethodDoc;
 import org.moon.figura.lua.docs.LuaMethodOverload;
 import org.moon.figura.lua.docs.LuaMethodShadow;
@@ -24,10 +25,27 @@ public class AvatarAPI {
     private final Avatar avatar;
     public final LuaTable storedStuff = new LuaTable();
 
+    //read only copy of the stored values, taken while no script is running, for the other avatars to read during parallel ticking
+    private LuaTable storedSnapshot;
+
     public AvatarAPI(Avatar avatar) {
         this.avatar = avatar;
     }
 
+    //the stored values as the other scripts can read them
+    public LuaTable getStoredVars() {
+        LuaTable snapshot = storedSnapshot;
+        return snapshot != null ? snapshot : new ReadOnlyLuaTable(storedStuff);
+    }
+
+    public void snapshotStoredVars() {
+        storedSnapshot = new ReadOnlyLuaTable(storedStuff);
+    }
+
+    public void releaseStoredVars() {
+        storedSnapshot = null;
+    }
+
     private boolean bool(Trust trust) {
         return trust.asBoolean(avatar.trust.get(trust));
     }
@@ -45,6 +45,7 @@ public class RendererAPI {
     public FiguraVec3 cameraOffsetRot;
     public ResourceLocation postShader;
     public FiguraVec2 crosshairOffset;
+    public int portraitVersion;
 
     public RendererAPI(Avatar owner) {
         this.owner = owner.owner;
@@ -395,6 +396,13 @@ public class RendererAPI {
         return this;
     }
 
+    @LuaWhitelist
+    @LuaMethodDoc("renderer.update_portrait")
+    public RendererAPI updatePortrait() {
+        this.portraitVersion++;
+        return this;
+    }
+
     @LuaWhitelist
     public Object __index(String arg) {
         if (arg == null) return null;
@@ -18,6 +18,7 @@ import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.avatar.AvatarManager;
+import org.moon.figura.lua.FiguraLuaRuntime;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.NbtToLua;
 import org.moon.figura.lua.ReadOnlyLuaTable;
@@ -66,6 +67,18 @@ public class EntityAPI<T extends Entity> {
         return new EntityAPI<>(e);
     }
 
+    /**
+     * points this wrapper to another instance of its entity, like after a respawn or dimension change
+     * used by the runtimes to keep handing the same wrapper to the scripts
+     */
+    @SuppressWarnings("unchecked")
+    public void update(Entity e) {
+        if (entity == e)
+            return;
+        entity = (T) e;
+        thingy = true;
+    }
+
     protected final void checkEntity() {
         if (entity.isRemoved() || entity.level != Minecraft.getInstance().level) {
             T newEntityInstance = (T) EntityUtils.getEntityByUUID(entityUUID);
@@ -476,9 +489,9 @@ public class EntityAPI<T extends Entity> {
     )
     public LuaValue getVariable(String key) {
         checkEntity();
-        Avatar a = AvatarManager.getAvatar(entity);
-        LuaTable table = a == null || a.luaRuntime == null ? new LuaTable() : a.luaRuntime.avatar_meta.storedStuff;
-        table = new ReadOnlyLuaTable(table);
+        Avatar a = AvatarManager.getLoadedAvatar(entity);
+        FiguraLuaRuntime runtime = a == null ? null : a.luaRuntime;
+        LuaTable table = runtime == null ? new ReadOnlyLuaTable(new LuaTable()) : runtime.avatar_meta.getStoredVars();
         return key == null ? table : table.get(key);
     }
 
@@ -134,6 +134,11 @@ public class LuaEvent {
         return functions.size() + queue.size();
     }
 
+    //cheaper than __len, as the deques size is not constant time
+    public boolean isEmpty() {
+        return functions.isEmpty() && queue.isEmpty();
+    }
+
     @Override
     public String toString() {
         return "Event";
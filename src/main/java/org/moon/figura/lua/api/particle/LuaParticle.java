@@ -3,7 +3,11 @@ package org.moon.figura.lua.api.particle;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.particle.Particle;
 import net.minecraft.client.particle.WakeParticle;
+import net.minecraft.core.particles.ParticleOptions;
+import org.luaj.vm2.LuaError;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.ducks.ParticleEngineAccessor;
+import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
 import org.moon.figura.lua.docs.LuaMethodOverload;
@@ -15,6 +19,8 @@ import org.moon.figura.mixin.particle.ParticleAccessor;
 import org.moon.figura.trust.Trust;
 import org.moon.figura.utils.LuaUtils;
 
+import java.util.function.Consumer;
+
 @LuaWhitelist
 @LuaTypeDoc(
         name = "Particle",
@@ -24,29 +30,62 @@ public class LuaParticle {
 
     private final String name;
     private final Avatar owner;
-    private final Particle particle;
+    //particle providers use the client level and its random, so the particle is only made on the client thread
+    //when ticking off thread it does not exist until the queued main thread tasks run, which also apply every change in order
+    private Particle particle;
+    private boolean failed;
 
     private FiguraVec3 pos = FiguraVec3.of();
     private FiguraVec3 vel = FiguraVec3.of();
     private FiguraVec4 color = FiguraVec4.of(1, 1, 1, 1);
     private float power, scale = 1f;
 
-    public LuaParticle(String name, Particle particle, Avatar owner) {
+    private Integer lifetime;
+    private Float gravity;
+    private Boolean physics;
+
+    public <T extends ParticleOptions> LuaParticle(String name, T options, double x, double y, double z, double velocityX, double velocityY, double velocityZ, Avatar owner) {
         this.name = name;
-        this.particle = particle;
         this.owner = owner;
+
+        //providers may still refuse to make the particle, which fails right away on the client thread
+        //off thread the script already moved on, so the failure is reported through the avatar instead
+        if (Minecraft.getInstance().isSameThread()) {
+            particle = ParticleAPI.getParticleEngine().figura$makeParticle(options, x, y, z, velocityX, velocityY, velocityZ);
+            if (particle == null)
+                throw new LuaError("Could not create particle \"" + name + "\"");
+        } else {
+            owner.runOnMainThread(() -> {
+                particle = ParticleAPI.getParticleEngine().figura$makeParticle(options, x, y, z, velocityX, velocityY, velocityZ);
+                if (particle == null) {
+                    failed = true;
+                    FiguraLuaPrinter.sendLuaError(new LuaError("Could not create particle \"" + name + "\""), owner);
+                }
+            });
+        }
+    }
+
+    //runs on the client thread, right away when already on it
+    private void apply(Consumer<Particle> action) {
+        owner.runOnMainThread(() -> {
+            if (particle != null)
+                action.accept(particle);
+        });
     }
 
     @LuaWhitelist
     @LuaMethodDoc("particle.spawn")
     public LuaParticle spawn() {
         if (!Minecraft.getInstance().isPaused()) {
-            if (owner.particlesRemaining.use()) {
-                ParticleAPI.getParticleEngine().figura$spawnParticle(particle, owner.owner);
-                owner.trustIssues.remove(Trust.PARTICLES);
-            } else {
-                owner.trustIssues.add(Trust.PARTICLES);
-            }
+            apply(particle -> {
+                ParticleEngineAccessor engine = ParticleAPI.getParticleEngine();
+                if (engine.figura$getParticleCount(owner.owner) < owner.trust.get(Trust.PARTICLES) && owner.particlesRemaining.use()) {
+                    engine.figura$spawnParticle(particle, owner.owner);
+                    owner.trustIssues.remove(Trust.PARTICLES);
+                } else {
+                    owner.trustIssues.add(Trust.PARTICLES);
+                }
+            });
         }
         return this;
     }
@@ -54,14 +93,14 @@ public class LuaParticle {
     @LuaWhitelist
     @LuaMethodDoc("particle.remove")
     public LuaParticle remove() {
-        particle.remove();
+        apply(Particle::remove);
         return this;
     }
 
     @LuaWhitelist
     @LuaMethodDoc("particle.is_alive")
     public boolean isAlive() {
-        return particle.isAlive();
+        return particle != null ? particle.isAlive() : !failed;
     }
 
     @LuaWhitelist
@@ -85,12 +124,14 @@ public class LuaParticle {
             value = "particle.set_pos")
     public void setPos(Object x, Double y, Double z) {
         FiguraVec3 vec = LuaUtils.parseVec3("setPos", x, y, z);
-        particle.setPos(vec.x, vec.y, vec.z);
-
-        ParticleAccessor p = (ParticleAccessor) particle;
-        p.setXo(vec.x);
-        p.setYo(vec.y);
-        p.setZo(vec.z);
+        apply(particle -> {
+            particle.setPos(vec.x, vec.y, vec.z);
+
+            ParticleAccessor p = (ParticleAccessor) particle;
+            p.setXo(vec.x);
+            p.setYo(vec.y);
+            p.setZo(vec.z);
+        });
         this.pos = vec;
     }
 
@@ -122,7 +163,7 @@ public class LuaParticle {
             value = "particle.set_velocity")
     public void setVelocity(Object x, Double y, Double z) {
         FiguraVec3 vec = LuaUtils.parseVec3("setVelocity", x, y, z);
-        particle.setParticleSpeed(vec.x, vec.y, vec.z);
+        apply(particle -> particle.setParticleSpeed(vec.x, vec.y, vec.z));
         this.vel = vec;
     }
 
@@ -158,8 +199,10 @@ public class LuaParticle {
             value = "particle.set_color")
     public void setColor(Object r, Double g, Double b, Double a) {
         FiguraVec4 vec = LuaUtils.parseVec4("setColor", r, g, b, a, 1, 1, 1, 1);
-        particle.setColor((float) vec.x, (float) vec.y, (float) vec.z);
-        ((ParticleAccessor) particle).setParticleAlpha((float) vec.w);
+        apply(particle -> {
+            particle.setColor((float) vec.x, (float) vec.y, (float) vec.z);
+            ((ParticleAccessor) particle).setParticleAlpha((float) vec.w);
+        });
         this.color = vec;
     }
 
@@ -173,7 +216,7 @@ public class LuaParticle {
     @LuaWhitelist
     @LuaMethodDoc("particle.get_lifetime")
     public int getLifetime() {
-        return particle.getLifetime();
+        return particle != null ? particle.getLifetime() : lifetime != null ? lifetime : 0;
     }
 
     @LuaWhitelist
@@ -184,7 +227,8 @@ public class LuaParticle {
             ),
             value = "particle.set_lifetime")
     public void setLifetime(int age) {
-        particle.setLifetime(Math.max(particle instanceof WakeParticle ? Math.min(age, 60) : age, 0));
+        lifetime = Math.max(age, 0);
+        apply(particle -> particle.setLifetime(Math.max(particle instanceof WakeParticle ? Math.min(age, 60) : age, 0)));
     }
 
     @LuaWhitelist
@@ -208,7 +252,7 @@ public class LuaParticle {
             ),
             value = "particle.set_power")
     public void setPower(float power) {
-        particle.setPower(power);
+        apply(particle -> particle.setPower(power));
         this.power = power;
     }
 
@@ -233,7 +277,7 @@ public class LuaParticle {
             ),
             value = "particle.set_scale")
     public void setScale(float scale) {
-        particle.scale(scale);
+        apply(particle -> particle.scale(scale));
         this.scale = scale;
     }
 
@@ -247,7 +291,7 @@ public class LuaParticle {
     @LuaWhitelist
     @LuaMethodDoc("particle.get_gravity")
     public float getGravity() {
-        return ((ParticleAccessor) particle).getGravity();
+        return particle != null ? ((ParticleAccessor) particle).getGravity() : gravity != null ? gravity : 0f;
     }
 
     @LuaWhitelist
@@ -258,7 +302,8 @@ public class LuaParticle {
             ),
             value = "particle.set_gravity")
     public void setGravity(float gravity) {
-        ((ParticleAccessor) particle).setGravity(gravity);
+        this.gravity = gravity;
+        apply(particle -> ((ParticleAccessor) particle).setGravity(gravity));
     }
 
     @LuaWhitelist
@@ -271,7 +316,7 @@ public class LuaParticle {
     @LuaWhitelist
     @LuaMethodDoc("particle.has_physics")
     public boolean hasPhysics() {
-        return ((ParticleAccessor) particle).getHasPhysics();
+        return particle != null ? ((ParticleAccessor) particle).getHasPhysics() : physics != null ? physics : true;
     }
 
     @LuaWhitelist
@@ -282,7 +327,8 @@ public class LuaParticle {
             ),
             value = "particle.set_physics")
     public void setPhysics(boolean physics) {
-        ((ParticleAccessor) particle).setHasPhysics(physics);
+        this.physics = physics;
+        apply(particle -> ((ParticleAccessor) particle).setHasPhysics(physics));
     }
 
     @LuaWhitelist
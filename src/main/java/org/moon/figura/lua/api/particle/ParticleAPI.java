@@ -3,7 +3,6 @@ package org.moon.figura.lua.api.particle;
 import com.mojang.brigadier.StringReader;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.particle.Particle;
 import net.minecraft.commands.arguments.ParticleArgument;
 import net.minecraft.core.particles.ParticleOptions;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -39,9 +38,8 @@ public class ParticleAPI {
     private LuaParticle generate(String id, double x, double y, double z, double w, double t, double h) {
         try {
             ParticleOptions options = ParticleArgument.readParticle(new StringReader(id), BuiltInRegistries.PARTICLE_TYPE.asLookup());
-            Particle p = getParticleEngine().figura$makeParticle(options, x, y, z, w, t, h);
-            if (p == null) throw new LuaError("Could not parse particle \"" + id + "\"");
-            return new LuaParticle(id, p, owner);
+            if (!getParticleEngine().figura$hasProvider(options.getType())) throw new LuaError("Could not parse particle \"" + id + "\"");
+            return new LuaParticle(id, options, x, y, z, w, t, h, owner);
         } catch (Exception e) {
             throw new LuaError(e.getMessage());
         }
@@ -101,7 +99,7 @@ public class ParticleAPI {
     @LuaWhitelist
     @LuaMethodDoc("particles.remove_particles")
     public void removeParticles() {
-        getParticleEngine().figura$clearParticles(owner.owner);
+        owner.runOnMainThread(() -> getParticleEngine().figura$clearParticles(owner.owner));
     }
 
     @LuaWhitelist
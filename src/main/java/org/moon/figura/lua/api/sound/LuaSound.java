@@ -2,12 +2,12 @@ package org.moon.figura.lua.api.sound;
 
 import com.mojang.blaze3d.audio.Channel;
 import com.mojang.blaze3d.audio.Library;
-import com.mojang.blaze3d.audio.SoundBuffer;
 import net.minecraft.client.resources.sounds.Sound;
 import net.minecraft.client.sounds.ChannelAccess;
 import net.minecraft.client.sounds.SoundBufferLibrary;
 import net.minecraft.sounds.SoundSource;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.CustomSound;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
 import org.moon.figura.lua.docs.LuaMethodOverload;
@@ -26,7 +26,7 @@ public class LuaSound {
 
     private final Avatar owner;
     private final String id;
-    private final SoundBuffer buffer;
+    private final CustomSound buffer;
     private final Sound sound;
 
     private ChannelAccess.ChannelHandle handle;
@@ -38,7 +38,7 @@ public class LuaSound {
     private float attenuation = 1f;
     private boolean loop = false;
 
-    public LuaSound(SoundBuffer buffer, String id, Avatar owner) {
+    public LuaSound(CustomSound buffer, String id, Avatar owner) {
         this.owner = owner;
         this.id = id;
         this.buffer = buffer;
@@ -63,12 +63,19 @@ public class LuaSound {
     @LuaWhitelist
     @LuaMethodDoc("sound.play")
     public LuaSound play() {
+        owner.runOnMainThread(this::playSound);
+        return this;
+    }
+
+    //sound engine is not thread safe
+    private void playSound() {
         if (this.playing)
-            return this;
+            return;
 
-        if (!owner.soundsRemaining.use()) {
+        //new channels are limited by the avatar live sounds, so one avatar cannot take all of them
+        if ((handle == null && SoundAPI.getSoundEngine().figura$getSoundCount(owner.owner) >= Math.min(owner.trust.get(Trust.SOUNDS), SoundAPI.MAX_CHANNELS)) || !owner.soundsRemaining.use()) {
             owner.trustIssues.add(Trust.SOUNDS);
-            return this;
+            return;
         }
 
         owner.trustIssues.remove(Trust.SOUNDS);
@@ -79,7 +86,7 @@ public class LuaSound {
         } else if (buffer != null) {
             this.handle = SoundAPI.getSoundEngine().figura$createHandle(owner.owner, id, Library.Pool.STATIC);
             if (handle == null)
-                return this;
+                return;
 
             SoundAPI.getSoundEngine().figura$addSound(this);
 
@@ -90,16 +97,27 @@ public class LuaSound {
                 channel.setLooping(loop);
                 channel.setSelfPosition(pos.asVec3());
                 channel.setRelative(false);
-                channel.attachStaticBuffer(buffer);
-                channel.play();
             });
 
+            //custom sounds are decoded on their first use, so they start once the data is ready
+            //unless the sound was released meanwhile, as its buffer might be deleted before this runs
+            ChannelAccess.ChannelHandle handle = this.handle;
+            int generation = buffer.getGeneration();
+            buffer.getBuffer().whenComplete((sound, error) -> handle.execute(channel -> {
+                if (sound != null && buffer.getGeneration() == generation) {
+                    channel.attachStaticBuffer(sound);
+                    channel.play();
+                } else {
+                    channel.stop();
+                }
+            }));
+
             this.playing = true;
         } else if (sound != null) {
             boolean shouldStream = sound.shouldStream();
             this.handle = SoundAPI.getSoundEngine().figura$createHandle(owner.owner, id, shouldStream ? Library.Pool.STREAMING : Library.Pool.STATIC);
             if (handle == null)
-                return this;
+                return;
 
             SoundAPI.getSoundEngine().figura$addSound(this);
 
@@ -127,8 +145,6 @@ public class LuaSound {
 
             this.playing = true;
         }
-
-        return this;
     }
 
     @LuaWhitelist
@@ -142,19 +158,23 @@ public class LuaSound {
     @LuaWhitelist
     @LuaMethodDoc("sound.pause") //TODO - no worky
     public LuaSound pause() {
-        this.playing = false;
-        if (handle != null)
-            handle.execute(Channel::pause);
+        owner.runOnMainThread(() -> {
+            this.playing = false;
+            if (handle != null)
+                handle.execute(Channel::pause);
+        });
         return this;
     }
 
     @LuaWhitelist
     @LuaMethodDoc("sound.stop")
     public LuaSound stop() {
-        this.playing = false;
-        if (handle != null)
-            handle.execute(Channel::stop);
-        handle = null;
+        owner.runOnMainThread(() -> {
+            this.playing = false;
+            if (handle != null)
+                handle.execute(Channel::stop);
+            handle = null;
+        });
         return this;
     }
 
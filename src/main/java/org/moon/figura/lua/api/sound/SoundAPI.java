@@ -1,6 +1,5 @@
 package org.moon.figura.lua.api.sound;
 
-import com.mojang.blaze3d.audio.SoundBuffer;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.resources.sounds.Sound;
 import net.minecraft.client.sounds.SoundManager;
@@ -10,6 +9,7 @@ import net.minecraft.util.RandomSource;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.CustomSound;
 import org.moon.figura.ducks.SoundEngineAccessor;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
@@ -31,6 +31,9 @@ import java.util.Base64;
 )
 public class SoundAPI {
 
+    //max sound channels a single avatar can hold at the same time
+    public static final int MAX_CHANNELS = 32;
+
     private final Avatar owner;
 
     public SoundAPI(Avatar owner) {
@@ -111,7 +114,7 @@ public class SoundAPI {
             value = "sounds.stop_sound"
     )
     public void stopSound(String id) {
-        getSoundEngine().figura$stopSound(owner.owner, id);
+        owner.runOnMainThread(() -> getSoundEngine().figura$stopSound(owner.owner, id));
     }
 
     @LuaWhitelist
@@ -149,7 +152,7 @@ public class SoundAPI {
 
     @LuaWhitelist
     public LuaSound __index(String id) {
-        SoundBuffer buffer = owner.customSounds.get(id);
+        CustomSound buffer = owner.customSounds.get(id);
         if (buffer != null) {
             if (owner.trust.get(Trust.CUSTOM_SOUNDS) == 1) {
                 return new LuaSound(buffer, id, owner);
@@ -7,6 +7,10 @@ import net.minecraft.commands.CommandBuildContext;
 import net.minecraft.commands.arguments.blocks.BlockStateArgument;
 import net.minecraft.commands.arguments.item.ItemArgument;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.util.Mth;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.Marker;
 import net.minecraft.world.entity.player.Player;
@@ -15,16 +19,25 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.ClipContext;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeManager;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.lighting.LevelLightEngine;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.EntityHitResult;
 import net.minecraft.world.phys.HitResult;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.avatar.AvatarManager;
+import org.moon.figura.lua.FiguraLuaRuntime;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.ReadOnlyLuaTable;
@@ -37,7 +50,10 @@ import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.utils.EntityUtils;
 import org.moon.figura.utils.LuaUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -303,6 +319,235 @@ public class WorldAPI {
         return world.canSeeSky(blockPos);
     }
 
+    // -- region queries -- //
+
+    //results are flat tables ordered by x, then z, then y, so the index of a block is 1 + dx + dz * sizeX + dy * sizeX * sizeZ
+    //chunks are fetched once per section, and the whole query is a single lua call
+    private static final int MAX_REGION_VOLUME = 32768;
+
+    private static BoundingBox parseRegion(String methodName, Object x, Object y, Double z, Object w, Double t, Double h) {
+        Pair<FiguraVec3, FiguraVec3> pair = LuaUtils.parse2Vec3(methodName, x, y, z, w, t, h);
+        FiguraVec3 min = pair.getFirst();
+        FiguraVec3 max = pair.getSecond();
+        BoundingBox box = BoundingBox.fromCorners(clampToLevel(min.asBlockPos()), clampToLevel(max.asBlockPos()));
+        min.free();
+        max.free();
+
+        if (span(box.minX(), box.maxX()) * span(box.minY(), box.maxY()) * span(box.minZ(), box.maxZ()) > MAX_REGION_VOLUME)
+            throw new LuaError("Region too big for " + methodName + "(), max volume is " + MAX_REGION_VOLUME + " blocks");
+
+        return box;
+    }
+
+    //nothing exists past the level size, and keeping coordinates within it means the loops below cannot overflow
+    private static BlockPos clampToLevel(BlockPos pos) {
+        return new BlockPos(clampToLevel(pos.getX()), clampToLevel(pos.getY()), clampToLevel(pos.getZ()));
+    }
+
+    private static int clampToLevel(int coordinate) {
+        return Mth.clamp(coordinate, -Level.MAX_LEVEL_SIZE, Level.MAX_LEVEL_SIZE);
+    }
+
+    private static long span(int min, int max) {
+        return (long) max - min + 1;
+    }
+
+    private static void forEachBlock(BoundingBox box, BlockVisitor visitor) {
+        Level world = getCurrentWorld();
+        int sizeX = box.getXSpan(), sizeZ = box.getZSpan();
+
+        for (int cx = SectionPos.blockToSectionCoord(box.minX()); cx <= SectionPos.blockToSectionCoord(box.maxX()); cx++) {
+            for (int cz = SectionPos.blockToSectionCoord(box.minZ()); cz <= SectionPos.blockToSectionCoord(box.maxZ()); cz++) {
+                LevelChunk chunk = world.getChunk(cx, cz);
+                int x0 = Math.max(box.minX(), SectionPos.sectionToBlockCoord(cx)), x1 = Math.min(box.maxX(), SectionPos.sectionToBlockCoord(cx, 15));
+                int z0 = Math.max(box.minZ(), SectionPos.sectionToBlockCoord(cz)), z1 = Math.min(box.maxZ(), SectionPos.sectionToBlockCoord(cz, 15));
+
+                for (int sy = SectionPos.blockToSectionCoord(box.minY()); sy <= SectionPos.blockToSectionCoord(box.maxY()); sy++) {
+                    int sectionIndex = chunk.getSectionIndexFromSectionY(sy);
+                    LevelChunkSection section = sectionIndex >= 0 && sectionIndex < chunk.getSectionsCount() ? chunk.getSection(sectionIndex) : null;
+                    int y0 = Math.max(box.minY(), SectionPos.sectionToBlockCoord(sy)), y1 = Math.min(box.maxY(), SectionPos.sectionToBlockCoord(sy, 15));
+
+                    for (int y = y0; y <= y1; y++) {
+                        for (int z = z0; z <= z1; z++) {
+                            int index = 1 + (x0 - box.minX()) + (z - box.minZ()) * sizeX + (y - box.minY()) * sizeX * sizeZ;
+                            for (int x = x0; x <= x1; x++, index++)
+                                visitor.visit(section, x, y, z, index);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockVisitor {
+        //section is null outside of the world height
+        void visit(LevelChunkSection section, int x, int y, int z, int index);
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = {
+                    @LuaMethodOverload(
+                            argumentTypes = {FiguraVec3.class, FiguraVec3.class},
+                            argumentNames = {"min", "max"}
+                    ),
+                    @LuaMethodOverload(
+                            argumentTypes = {Double.class, Double.class, Double.class, Double.class, Double.class, Double.class},
+                            argumentNames = {"minX", "minY", "minZ", "maxX", "maxY", "maxZ"}
+                    )
+            },
+            value = "world.get_blocks"
+    )
+    public static Object[] getBlocks(Object x, Object y, Double z, Object w, Double t, Double h) {
+        BoundingBox box = parseRegion("getBlocks", x, y, z, w, t, h);
+
+        List<BlockStateAPI> palette = new ArrayList<>();
+        Map<BlockState, LuaValue> paletteIndex = new IdentityHashMap<>();
+        LuaTable blocks = new LuaTable(box.getXSpan() * box.getYSpan() * box.getZSpan(), 0);
+
+        forEachBlock(box, (section, bx, by, bz, index) -> {
+            BlockState state = section == null || section.hasOnlyAir() ? Blocks.AIR.defaultBlockState() : section.getBlockState(bx & 15, by & 15, bz & 15);
+            LuaValue id = paletteIndex.get(state);
+            if (id == null) {
+                palette.add(new BlockStateAPI(state, new BlockPos(bx, by, bz)));
+                paletteIndex.put(state, id = LuaValue.valueOf(palette.size()));
+            }
+            blocks.set(index, id);
+        });
+
+        return new Object[]{palette, blocks};
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = {
+                    @LuaMethodOverload(
+                            argumentTypes = {FiguraVec3.class, FiguraVec3.class},
+                            argumentNames = {"min", "max"}
+                    ),
+                    @LuaMethodOverload(
+                            argumentTypes = {Double.class, Double.class, Double.class, Double.class, Double.class, Double.class},
+                            argumentNames = {"minX", "minY", "minZ", "maxX", "maxY", "maxZ"}
+                    )
+            },
+            value = "world.get_light_levels"
+    )
+    public static LuaTable getLightLevels(Object x, Object y, Double z, Object w, Double t, Double h) {
+        BoundingBox box = parseRegion("getLightLevels", x, y, z, w, t, h);
+
+        Level world = getCurrentWorld();
+        world.updateSkyBrightness();
+        int skyDarken = world.getSkyDarken();
+        LevelLightEngine engine = world.getLightEngine();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        LuaTable light = new LuaTable(box.getXSpan() * box.getYSpan() * box.getZSpan(), 0);
+
+        forEachBlock(box, (section, bx, by, bz, index) -> light.set(index, engine.getRawBrightness(pos.set(bx, by, bz), skyDarken)));
+
+        return light;
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = {
+                    @LuaMethodOverload(
+                            argumentTypes = {FiguraVec3.class, FiguraVec3.class},
+                            argumentNames = {"min", "max"}
+                    ),
+                    @LuaMethodOverload(
+                            argumentTypes = {Double.class, Double.class, Double.class, Double.class, Double.class, Double.class},
+                            argumentNames = {"minX", "minY", "minZ", "maxX", "maxY", "maxZ"}
+                    )
+            },
+            value = "world.get_biomes"
+    )
+    public static Object[] getBiomes(Object x, Object y, Double z, Object w, Double t, Double h) {
+        BoundingBox box = parseRegion("getBiomes", x, y, z, w, t, h);
+
+        //same sampling as Level.getBiome, but only looking up the chunk again when leaving it
+        Level world = getCurrentWorld();
+        BiomeManager biomeManager = world.getBiomeManager().withDifferentSource(new BiomeManager.NoiseBiomeSource() {
+            private LevelChunk chunk;
+
+            @Override
+            public Holder<Biome> getNoiseBiome(int qx, int qy, int qz) {
+                int cx = QuartPos.toSection(qx), cz = QuartPos.toSection(qz);
+                if (chunk == null || chunk.getPos().x != cx || chunk.getPos().z != cz)
+                    chunk = world.getChunk(cx, cz);
+                return chunk.getNoiseBiome(qx, qy, qz);
+            }
+        });
+
+        List<BiomeAPI> palette = new ArrayList<>();
+        Map<Biome, LuaValue> paletteIndex = new IdentityHashMap<>();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        LuaTable biomes = new LuaTable(box.getXSpan() * box.getYSpan() * box.getZSpan(), 0);
+
+        forEachBlock(box, (section, bx, by, bz, index) -> {
+            Biome biome = biomeManager.getBiome(pos.set(bx, by, bz)).value();
+            LuaValue id = paletteIndex.get(biome);
+            if (id == null) {
+                palette.add(new BiomeAPI(biome, pos.immutable()));
+                paletteIndex.put(biome, id = LuaValue.valueOf(palette.size()));
+            }
+            biomes.set(index, id);
+        });
+
+        return new Object[]{palette, biomes};
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = {
+                    @LuaMethodOverload(
+                            argumentTypes = {Integer.class, Integer.class, Integer.class, Integer.class},
+                            argumentNames = {"minX", "minZ", "maxX", "maxZ"}
+                    ),
+                    @LuaMethodOverload(
+                            argumentTypes = {Integer.class, Integer.class, Integer.class, Integer.class, String.class},
+                            argumentNames = {"minX", "minZ", "maxX", "maxZ", "heightmap"}
+                    )
+            },
+            value = "world.get_heights"
+    )
+    public static LuaTable getHeights(@LuaNotNil Integer x1, @LuaNotNil Integer z1, @LuaNotNil Integer x2, @LuaNotNil Integer z2, String heightmap) {
+        Heightmap.Types type;
+        try {
+            type = heightmap == null ? Heightmap.Types.MOTION_BLOCKING : Heightmap.Types.valueOf(heightmap.toUpperCase());
+        } catch (Exception ignored) {
+            throw new LuaError("Invalid heightmap type: " + heightmap);
+        }
+
+        //the client only has the heightmaps sent by the server
+        if (!type.sendToClient())
+            throw new LuaError("Heightmap type not available on the client: " + heightmap);
+
+        int minX = clampToLevel(Math.min(x1, x2)), maxX = clampToLevel(Math.max(x1, x2));
+        int minZ = clampToLevel(Math.min(z1, z2)), maxZ = clampToLevel(Math.max(z1, z2));
+        if (span(minX, maxX) * span(minZ, maxZ) > MAX_REGION_VOLUME)
+            throw new LuaError("Region too big for getHeights(), max area is " + MAX_REGION_VOLUME + " blocks");
+
+        int sizeX = maxX - minX + 1;
+
+        //same as Level.getHeight
+        Level world = getCurrentWorld();
+        LuaTable heights = new LuaTable(sizeX * (maxZ - minZ + 1), 0);
+        for (int cx = SectionPos.blockToSectionCoord(minX); cx <= SectionPos.blockToSectionCoord(maxX); cx++) {
+            for (int cz = SectionPos.blockToSectionCoord(minZ); cz <= SectionPos.blockToSectionCoord(maxZ); cz++) {
+                LevelChunk chunk = world.getChunk(cx, cz);
+                int xEnd = Math.min(maxX, SectionPos.sectionToBlockCoord(cx, 15));
+                int zEnd = Math.min(maxZ, SectionPos.sectionToBlockCoord(cz, 15));
+                for (int z = Math.max(minZ, SectionPos.sectionToBlockCoord(cz)); z <= zEnd; z++) {
+                    for (int x = Math.max(minX, SectionPos.sectionToBlockCoord(cx)); x <= xEnd; x++)
+                        heights.set(1 + (x - minX) + (z - minZ) * sizeX, chunk.getHeight(type, x & 15, z & 15) + 1);
+                }
+            }
+        }
+
+        return heights;
+    }
+
     @LuaWhitelist
     @LuaMethodDoc("world.get_dimension")
     public static String getDimension() {
@@ -385,8 +630,8 @@ public class WorldAPI {
     public static Map<String, LuaTable> avatarVars() {
         HashMap<String, LuaTable> varList = new HashMap<>();
         for (Avatar avatar : AvatarManager.getLoadedAvatars()) {
-            LuaTable tbl = avatar.luaRuntime == null ? new LuaTable() : avatar.luaRuntime.avatar_meta.storedStuff;
-            varList.put(avatar.owner.toString(), new ReadOnlyLuaTable(tbl));
+            FiguraLuaRuntime runtime = avatar.luaRuntime;
+            varList.put(avatar.owner.toString(), runtime == null ? new ReadOnlyLuaTable(new LuaTable()) : runtime.avatar_meta.getStoredVars());
         }
         return varList;
     }
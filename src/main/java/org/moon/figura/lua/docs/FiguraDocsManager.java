@@ -2,10 +2,17 @@ package org.moon.figura.lua.docs;
 
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
 import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.builder.RequiredArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.context.StringRange;
+import com.mojang.brigadier.suggestion.Suggestion;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.*;
@@ -62,6 +69,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class FiguraDocsManager {
 
@@ -230,7 +238,16 @@ public class FiguraDocsManager {
     );
     private static final List<FiguraDoc> GENERATED_LIB_OVERRIDES = new ArrayList<>();
 
-    public static void init() {
+    private static boolean initialized;
+
+    //the docs are only needed by the commands, so they are generated on their first use instead of on startup
+    private static synchronized void init() {
+        if (initialized)
+            return;
+        initialized = true;
+
+        long time = System.currentTimeMillis();
+
         //generate children override
         for (Map.Entry<String, List<Class<?>>> packageEntry : GLOBAL_CHILDREN.entrySet()) {
             for (Class<?> documentedClass : packageEntry.getValue()) {
@@ -250,6 +267,8 @@ public class FiguraDocsManager {
         //generate globals
         Class<?> globalClass = FiguraGlobalsDocs.class;
         global = new FiguraDoc.ClassDoc(globalClass, globalClass.getAnnotation(LuaTypeDoc.class), GENERATED_CHILDREN);
+
+        FiguraMod.debug("Generated lua docs in {}ms", System.currentTimeMillis() - time);
     }
 
     private static FiguraDoc.ClassDoc generateDocFor(Class<?> documentedClass, String pack) {
@@ -290,7 +309,50 @@ public class FiguraDocsManager {
 
     // -- commands -- //
 
+    private static final String DOCS_PREFIX = "docs ";
+    private static CommandDispatcher<FabricClientCommandSource> docsDispatcher;
+
+    //only a thin node is registered, so joining a world does not build the docs
+    //the docs paths are then run and suggested from their own tree, built on first use
     public static LiteralArgumentBuilder<FabricClientCommandSource> getCommand() {
+        LiteralArgumentBuilder<FabricClientCommandSource> root = LiteralArgumentBuilder.literal("docs");
+        root.executes(context -> FiguraDoc.printRoot());
+
+        RequiredArgumentBuilder<FabricClientCommandSource, String> path = RequiredArgumentBuilder.argument("path", StringArgumentType.greedyString());
+        path.suggests(FiguraDocsManager::suggestDocs);
+        path.executes(context -> getDocsDispatcher().execute(DOCS_PREFIX + StringArgumentType.getString(context, "path"), context.getSource()));
+        root.then(path);
+
+        return root;
+    }
+
+    private static synchronized CommandDispatcher<FabricClientCommandSource> getDocsDispatcher() {
+        if (docsDispatcher == null) {
+            docsDispatcher = new CommandDispatcher<>();
+            docsDispatcher.register(buildDocsCommand());
+        }
+        return docsDispatcher;
+    }
+
+    private static CompletableFuture<Suggestions> suggestDocs(CommandContext<FabricClientCommandSource> context, SuggestionsBuilder builder) {
+        CommandDispatcher<FabricClientCommandSource> dispatcher = getDocsDispatcher();
+        ParseResults<FabricClientCommandSource> parse = dispatcher.parse(DOCS_PREFIX + builder.getRemaining(), context.getSource());
+
+        //move the suggestions from the docs tree input back to the typed command
+        int offset = builder.getStart() - DOCS_PREFIX.length();
+        return dispatcher.getCompletionSuggestions(parse).thenApply(suggestions -> {
+            List<Suggestion> list = new ArrayList<>();
+            for (Suggestion suggestion : suggestions.getList()) {
+                StringRange range = suggestion.getRange();
+                list.add(new Suggestion(StringRange.between(range.getStart() + offset, range.getEnd() + offset), suggestion.getText(), suggestion.getTooltip()));
+            }
+            return Suggestions.create(builder.getInput(), list);
+        });
+    }
+
+    private static LiteralArgumentBuilder<FabricClientCommandSource> buildDocsCommand() {
+        init();
+
         //root
         LiteralArgumentBuilder<FabricClientCommandSource> root = LiteralArgumentBuilder.literal("docs");
         root.executes(context -> FiguraDoc.printRoot());
@@ -353,6 +415,8 @@ public class FiguraDocsManager {
     }
 
     public static String exportAsJsonString(boolean translate) {
+        init();
+
         //root
         JsonObject root = new JsonObject();
 
@@ -1,10 +1,19 @@
 package org.moon.figura.mixin.particle;
 
+import com.google.common.collect.EvictingQueue;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.particle.Particle;
 import net.minecraft.client.particle.ParticleEngine;
+import net.minecraft.client.particle.ParticleProvider;
+import net.minecraft.client.particle.ParticleRenderType;
 import net.minecraft.core.particles.ParticleOptions;
+import net.minecraft.core.particles.ParticleType;
+import net.minecraft.core.registries.BuiltInRegistries;
 import org.jetbrains.annotations.Nullable;
 import org.moon.figura.ducks.ParticleEngineAccessor;
+import org.moon.figura.utils.OwnerIndex;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Intrinsic;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
@@ -23,11 +32,28 @@ public abstract class ParticleEngineMixin implements ParticleEngineAccessor {
 
     @Shadow public abstract void add(Particle particle);
 
-    @Unique private final HashMap<Particle, UUID> particleMap = new HashMap<>();
+    @Shadow @Final private Map<ParticleRenderType, Queue<Particle>> particles;
+
+    @Shadow @Final private Int2ObjectMap<ParticleProvider<?>> providers;
+
+    @Unique private final OwnerIndex<Particle> particleIndex = new OwnerIndex<>();
 
     @Inject(at = @At(value = "INVOKE", target = "Ljava/util/Iterator;remove()V"), method = "tickParticleList", locals = LocalCapture.CAPTURE_FAILSOFT)
     private void tickParticleList(Collection<Particle> particles, CallbackInfo ci, Iterator<Particle> iterator, Particle particle) {
-        particleMap.remove(particle);
+        particleIndex.remove(particle);
+    }
+
+    //the particle queues are capped, and silently drop their oldest particle when a new one is added to a full queue
+    @Inject(at = @At(value = "INVOKE", target = "Ljava/util/Queue;add(Ljava/lang/Object;)Z"), method = "tick", locals = LocalCapture.CAPTURE_FAILSOFT)
+    private void tick(CallbackInfo ci, Particle particle) {
+        if (particles.get(particle.getRenderType()) instanceof EvictingQueue<Particle> queue && queue.remainingCapacity() == 0)
+            particleIndex.remove(queue.peek());
+    }
+
+    //vanilla drops every particle when changing levels
+    @Inject(at = @At("HEAD"), method = "setLevel")
+    private void setLevel(ClientLevel level, CallbackInfo ci) {
+        particleIndex.clear();
     }
 
     @Override @Intrinsic
@@ -35,23 +61,26 @@ public abstract class ParticleEngineMixin implements ParticleEngineAccessor {
         return this.makeParticle(parameters, x, y, z, velocityX, velocityY, velocityZ);
     }
 
+    @Override @Intrinsic
+    public boolean figura$hasProvider(ParticleType<?> type) {
+        return this.providers.containsKey(BuiltInRegistries.PARTICLE_TYPE.getId(type));
+    }
+
     @Override @Intrinsic
     public void figura$spawnParticle(Particle particle, UUID owner) {
-        particleMap.put(particle, owner);
+        particleIndex.add(owner, particle);
         this.add(particle);
     }
 
     @Override @Intrinsic
     public void figura$clearParticles(UUID owner) {
-        Iterator<Map.Entry<Particle, UUID>> iterator = particleMap.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Particle, UUID> entry = iterator.next();
-
-            if ((owner == null || entry.getValue().equals(owner))) {
-                if (entry.getKey() != null)
-                    entry.getKey().remove();
-                iterator.remove();
-            }
-        }
+        Set<Particle> removed = owner == null ? particleIndex.clear() : particleIndex.removeOwner(owner);
+        for (Particle particle : removed)
+            particle.remove();
+    }
+
+    @Override @Intrinsic
+    public int figura$getParticleCount(UUID owner) {
+        return particleIndex.count(owner);
     }
 }
@@ -0,0 +1,14 @@
+package org.moon.figura.mixin.render;
+
+import net.minecraft.client.renderer.RenderType;
+import org.spongepowered.asm.mixin.Intrinsic;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(RenderType.class)
+public interface RenderTypeAccessor {
+
+    @Intrinsic
+    @Accessor("sortOnUpload")
+    boolean isSortOnUpload();
+}
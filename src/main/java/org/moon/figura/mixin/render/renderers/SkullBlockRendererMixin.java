@@ -62,16 +62,18 @@ public abstract class SkullBlockRendererMixin implements BlockEntityRenderer<Sku
         FiguraMod.pushProfiler(localAvatar);
         FiguraMod.pushProfiler("skullRender");
 
-        //event
-        BlockStateAPI b = localBlock == null ? null : new BlockStateAPI(localBlock.getBlockState(), localBlock.getBlockPos());
-        ItemStackAPI i = localItem != null ? ItemStackAPI.verify(localItem) : null;
-        EntityAPI<?> e = localEntity != null ? EntityAPI.wrap(localEntity) : null;
-        String m = localMode.name();
-
-        FiguraMod.pushProfiler(localBlock != null ? localBlock.getBlockPos().toString() : String.valueOf(i));
+        FiguraMod.pushProfiler(localBlock != null ? localBlock.getBlockPos().toString() : String.valueOf(localItem));
 
+        //event, the arguments are only made when someone is listening
         FiguraMod.pushProfiler("event");
-        boolean bool = localAvatar.skullRenderEvent(Minecraft.getInstance().getFrameTime(), b, i, e, m);
+        boolean bool = false;
+        if (localAvatar.hasListeners("SKULL_RENDER")) {
+            BlockStateAPI b = localBlock == null ? null : new BlockStateAPI(localBlock.getBlockState(), localBlock.getBlockPos());
+            ItemStackAPI i = localItem != null ? ItemStackAPI.verify(localItem) : null;
+            EntityAPI<?> e = localEntity != null ? EntityAPI.wrap(localEntity) : null;
+            String m = localMode.name();
+            bool = localAvatar.skullRenderEvent(Minecraft.getInstance().getFrameTime(), b, i, e, m);
+        }
 
         //render skull :3
         FiguraMod.popPushProfiler("render");
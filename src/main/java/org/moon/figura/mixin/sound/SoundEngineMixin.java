@@ -16,9 +16,7 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.UUID;
+import java.util.*;
 
 @Mixin(SoundEngine.class)
 public abstract class SoundEngineMixin implements SoundEngineAccessor {
@@ -33,7 +31,7 @@ public abstract class SoundEngineMixin implements SoundEngineAccessor {
     @Unique
     private ChannelAccess figuraChannel;
     @Unique
-    private final ArrayList<LuaSound> figuraHandlers = new ArrayList<>();
+    private final HashMap<UUID, HashMap<String, Set<LuaSound>>> figuraHandlers = new HashMap<>();
 
     @Inject(at = @At("RETURN"), method = "<init>")
     private void soundEngineInit(SoundManager soundManager, Options options, ResourceProvider resourceProvider, CallbackInfo ci) {
@@ -65,8 +63,12 @@ public abstract class SoundEngineMixin implements SoundEngineAccessor {
         if (!this.loaded || category != SoundSource.PLAYERS)
             return;
 
-        for (LuaSound sound : figuraHandlers)
-            sound.volume(sound.getVolume());
+        for (HashMap<String, Set<LuaSound>> owned : figuraHandlers.values()) {
+            for (Set<LuaSound> sounds : owned.values()) {
+                for (LuaSound sound : sounds)
+                    sound.volume(sound.getVolume());
+            }
+        }
     }
 
     @Inject(at = @At("RETURN"), method = "stop(Lnet/minecraft/resources/ResourceLocation;Lnet/minecraft/sounds/SoundSource;)V")
@@ -77,7 +79,14 @@ public abstract class SoundEngineMixin implements SoundEngineAccessor {
 
     @Override @Intrinsic
     public void figura$addSound(LuaSound sound) {
-        figuraHandlers.add(sound);
+        ChannelHandleAccessor accessor = (ChannelHandleAccessor) sound.getHandle();
+        if (accessor == null)
+            return;
+
+        figuraHandlers
+                .computeIfAbsent(accessor.getOwner(), uuid -> new HashMap<>())
+                .computeIfAbsent(accessor.getName(), id -> new LinkedHashSet<>())
+                .add(sound);
     }
 
     @Override @Intrinsic
@@ -85,27 +94,90 @@ public abstract class SoundEngineMixin implements SoundEngineAccessor {
         if (!this.loaded)
             return;
 
-        Iterator<LuaSound> iterator = figuraHandlers.iterator();
-        while (iterator.hasNext()) {
-            LuaSound sound = iterator.next();
-            ChannelHandleAccessor accessor = (ChannelHandleAccessor) sound.getHandle();
-            if (accessor != null && (owner == null || (accessor.getOwner().equals(owner) && (name == null || accessor.getName().equals(name))))) {
+        //everyone
+        if (owner == null) {
+            for (HashMap<String, Set<LuaSound>> owned : figuraHandlers.values())
+                figura$stopSounds(owned.values());
+            figuraHandlers.clear();
+            return;
+        }
+
+        HashMap<String, Set<LuaSound>> owned = figuraHandlers.get(owner);
+        if (owned == null)
+            return;
+
+        //all owner sounds
+        if (name == null) {
+            figura$stopSounds(owned.values());
+            figuraHandlers.remove(owner);
+            return;
+        }
+
+        //only the sounds with the id
+        Set<LuaSound> sounds = owned.remove(name);
+        if (sounds != null)
+            figura$stopSounds(List.of(sounds));
+        if (owned.isEmpty())
+            figuraHandlers.remove(owner);
+    }
+
+    @Unique
+    private void figura$stopSounds(Collection<Set<LuaSound>> sounds) {
+        for (Set<LuaSound> set : sounds) {
+            for (LuaSound sound : set)
                 sound.stop();
-                iterator.remove();
-            }
         }
     }
 
     @Override @Intrinsic
     public void figura$stopAllSounds() {
         if (this.loaded) {
-            for (LuaSound sound : figuraHandlers)
-                sound.stop();
+            for (HashMap<String, Set<LuaSound>> owned : figuraHandlers.values())
+                figura$stopSounds(owned.values());
             figuraHandlers.clear();
             figuraChannel.clear();
         }
     }
 
+    @Override @Intrinsic
+    public int figura$getSoundCount(UUID owner) {
+        HashMap<String, Set<LuaSound>> owned = figuraHandlers.get(owner);
+        if (owned == null)
+            return 0;
+
+        //drop the sounds which channel is already gone
+        int count = 0;
+        Iterator<Set<LuaSound>> iterator = owned.values().iterator();
+        while (iterator.hasNext()) {
+            Set<LuaSound> sounds = iterator.next();
+            sounds.removeIf(sound -> sound.getHandle() == null || sound.getHandle().isStopped());
+            if (sounds.isEmpty())
+                iterator.remove();
+            else
+                count += sounds.size();
+        }
+
+        if (owned.isEmpty())
+            figuraHandlers.remove(owner);
+
+        return count;
+    }
+
+    @Override @Intrinsic
+    public boolean figura$hasSound(UUID owner, String name) {
+        HashMap<String, Set<LuaSound>> owned = figuraHandlers.get(owner);
+        Set<LuaSound> sounds = owned == null ? null : owned.get(name);
+        if (sounds == null)
+            return false;
+
+        for (LuaSound sound : sounds) {
+            if (sound.getHandle() != null && !sound.getHandle().isStopped())
+                return true;
+        }
+
+        return false;
+    }
+
     @Override @Intrinsic
     public ChannelAccess.ChannelHandle figura$createHandle(UUID owner, String name, Library.Pool pool) {
         return figuraChannel.createHandle(pool).thenApply(channelHandle -> {
@@ -126,4 +198,10 @@ public abstract class SoundEngineMixin implements SoundEngineAccessor {
     public SoundBufferLibrary figura$getSoundBuffers() {
         return this.soundBuffers;
     }
+
+    //openal calls must run on the sound thread
+    @Override @Intrinsic
+    public void figura$execute(Runnable runnable) {
+        this.executor.execute(runnable);
+    }
 }
@@ -48,6 +48,8 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     public final List<FiguraModelPart> children;
 
     public List<Integer> facesByTexture;
+    public int[] subtreeFaces; //faces of this part and all its children, by texture
+    private Boolean hasVisibleChild; //lazy, cleared when some child visibility changes
 
     public Map<String, RenderTask> renderTasks = new HashMap<>();
 
@@ -79,11 +81,29 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     }
 
     public void advanceVerticesImmediate(ImmediateAvatarRenderer avatarRenderer) {
-        for (int i = 0; i < facesByTexture.size(); i++)
-            avatarRenderer.advanceFaces(i, facesByTexture.get(i));
+        for (int i = 0; i < subtreeFaces.length; i++)
+            avatarRenderer.advanceFaces(i, subtreeFaces[i]);
+    }
 
-        for (FiguraModelPart child : this.children)
-            child.advanceVerticesImmediate(avatarRenderer);
+    public void advanceChildrenImmediate(ImmediateAvatarRenderer avatarRenderer) {
+        for (int i = 0; i < subtreeFaces.length; i++)
+            avatarRenderer.advanceFaces(i, subtreeFaces[i] - facesByTexture.get(i));
+    }
+
+    //if any child, at any depth, is forced to be visible
+    //otherwise children of a hidden part are hidden as well, and can be skipped when rendering
+    public boolean hasVisibleChild() {
+        if (hasVisibleChild == null) {
+            boolean visible = false;
+            for (FiguraModelPart child : children) {
+                if (Boolean.TRUE.equals(child.customization.visible) || child.hasVisibleChild()) {
+                    visible = true;
+                    break;
+                }
+            }
+            hasVisibleChild = visible;
+        }
+        return hasVisibleChild;
     }
 
     public void applyVanillaTransforms(VanillaModelData vanillaModelData) {
@@ -523,6 +543,8 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     )
     public void setVisible(Boolean bool) {
         this.customization.visible = bool;
+        for (FiguraModelPart part = parent; part != null; part = part.parent)
+            part.hasVisibleChild = null;
     }
 
     @LuaWhitelist
@@ -7,6 +7,7 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.util.Mth;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.animation.Animation;
 import org.moon.figura.animation.Interpolation;
 import org.moon.figura.animation.Keyframe;
@@ -18,7 +19,10 @@ import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.model.rendering.FiguraImmediateBuffer;
 import org.moon.figura.model.rendering.texture.FiguraTextureSet;
 import org.moon.figura.model.rendering.texture.RenderTypes;
+import org.moon.figura.parsers.PackedGeometryParser;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -64,14 +68,7 @@ public class FiguraModelPartReader {
             bufferBuilders.add(FiguraImmediateBuffer.builder());
 
         //Read vertex data
-        if (hasCubeData(partCompound)) {
-            readCuboid(facesByTexture, bufferBuilders, partCompound);
-            customization.partType = PartCustomization.PartType.CUBE;
-        } else if (hasMeshData(partCompound)) {
-            //TODO: smooth normals
-            readMesh(facesByTexture, bufferBuilders, partCompound);
-            customization.partType = PartCustomization.PartType.MESH;
-        }
+        customization.partType = readGeometry(partCompound, facesByTexture, bufferBuilders);
 
         //Read children
         ArrayList<FiguraModelPart> children = new ArrayList<>(0);
@@ -83,6 +80,10 @@ public class FiguraModelPartReader {
 
         FiguraModelPart result = new FiguraModelPart(name, customization, children);
         result.facesByTexture = facesByTexture;
+        result.subtreeFaces = facesByTexture.stream().mapToInt(i -> i).toArray();
+        for (FiguraModelPart child : children)
+            for (int i = 0; i < result.subtreeFaces.length; i++)
+                result.subtreeFaces[i] += child.subtreeFaces[i];
         storeTextures(result, textureSets);
         if (partCompound.contains("pt"))
             result.parentType = ParentType.valueOf(partCompound.getString("pt"));
@@ -244,6 +245,28 @@ public class FiguraModelPartReader {
         }
     }
 
+    /**
+     * reads the vertices of the part alone, without its children
+     * @return the part type, GROUP when the part has no geometry
+     */
+    static PartCustomization.PartType readGeometry(CompoundTag partCompound, List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> bufferBuilders) {
+        if (partCompound.contains("geo", Tag.TAG_BYTE_ARRAY))
+            return readPacked(facesByTexture, bufferBuilders, partCompound.getByteArray("geo"));
+
+        if (hasCubeData(partCompound)) {
+            readCuboid(facesByTexture, bufferBuilders, partCompound);
+            return PartCustomization.PartType.CUBE;
+        }
+
+        if (hasMeshData(partCompound)) {
+            //TODO: smooth normals
+            readMesh(facesByTexture, bufferBuilders, partCompound);
+            return PartCustomization.PartType.MESH;
+        }
+
+        return PartCustomization.PartType.GROUP;
+    }
+
     private static boolean hasCubeData(CompoundTag partCompound) {
         if (partCompound.contains("cube_data", Tag.TAG_COMPOUND))
             return !partCompound.getCompound("cube_data").isEmpty();
@@ -320,16 +343,20 @@ public class FiguraModelPartReader {
         double inflate = 0;
         if (data.contains("inf"))
             inflate = data.getFloat("inf");
+        inflateCuboid(inflate);
+
+        //Iterate over faces, add them
+        for (String direction : faceData.keySet())
+            readFace(data.getCompound("cube_data"), facesByTexture, builders, direction);
+    }
+
+    private static void inflateCuboid(double inflate) {
         from.add(-inflate, -inflate, -inflate);
         to.add(inflate, inflate, inflate);
 
         //Cache difference between from and to
         ftDiff.set(to);
         ftDiff.subtract(from);
-
-        //Iterate over faces, add them
-        for (String direction : faceData.keySet())
-            readFace(data.getCompound("cube_data"), facesByTexture, builders, direction);
     }
 
     private static final FiguraVec3 tempPos = FiguraVec3.of();
@@ -338,26 +365,29 @@ public class FiguraModelPartReader {
     private static void readFace(CompoundTag faces, List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, String direction) {
         if (faces.contains(direction)) {
             CompoundTag face = faces.getCompound(direction);
-            short texId = face.getShort("tex");
-            facesByTexture.set(texId, facesByTexture.get(texId) + 1);
-
-            FiguraVec3 normal = faceData.get(direction)[4];
-            int rotation = (int) (face.getFloat("rot") / 90f);
             readVec4(uv, face, "uv");
-            for (int i = 0; i < 4; i++) {
-                tempPos.set(ftDiff);
-                tempPos.multiply(faceData.get(direction)[i]);
-                tempPos.add(from);
-
-                FiguraVec2 normalizedUv = uvValues[(i + rotation)%4];
-
-                builders.get(texId).vertex(
-                        (float) tempPos.x, (float) tempPos.y, (float) tempPos.z,
-                        (float) Mth.lerp(normalizedUv.x, uv.x, uv.z),
-                        (float) Mth.lerp(normalizedUv.y, uv.y, uv.w),
-                        (float) normal.x, (float) normal.y, (float) normal.z
-                );
-            }
+            addFace(facesByTexture, builders, direction, face.getShort("tex"), (int) (face.getFloat("rot") / 90f));
+        }
+    }
+
+    //adds a cube face from the current cuboid and uv
+    private static void addFace(List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, String direction, short texId, int rotation) {
+        facesByTexture.set(texId, facesByTexture.get(texId) + 1);
+
+        FiguraVec3 normal = faceData.get(direction)[4];
+        for (int i = 0; i < 4; i++) {
+            tempPos.set(ftDiff);
+            tempPos.multiply(faceData.get(direction)[i]);
+            tempPos.add(from);
+
+            FiguraVec2 normalizedUv = uvValues[(i + rotation)%4];
+
+            builders.get(texId).vertex(
+                    (float) tempPos.x, (float) tempPos.y, (float) tempPos.z,
+                    (float) Mth.lerp(normalizedUv.x, uv.x, uv.z),
+                    (float) Mth.lerp(normalizedUv.y, uv.y, uv.w),
+                    (float) normal.x, (float) normal.y, (float) normal.z
+            );
         }
     }
 
@@ -430,32 +460,7 @@ public class FiguraModelPartReader {
                 uvArr[2*j+1] = uvs.getFloat(uvi + 2*j + 1);
             }
 
-            // Calculate the normal vector for the current texture
-            p1.set(posArr[0], posArr[1], posArr[2]);
-            p2.set(posArr[3], posArr[4], posArr[5]);
-            p3.set(posArr[6], posArr[7], posArr[8]);
-            p3.subtract(p2);
-            p1.subtract(p2);
-            p3.cross(p1);
-            p3.normalize();
-            //p3 now contains the normal vector
-
-            // Add the vertex data to the appropriate builder
-            for (int j = 0; j < numVerts; j++) {
-                builders.get(texId).vertex(
-                        posArr[3*j], posArr[3*j+1], posArr[3*j+2],
-                        uvArr[2*j], uvArr[2*j+1],
-                        (float) p3.x, (float) p3.y, (float) p3.z
-                );
-            }
-            // Add a vertex if necessary
-            if (numVerts == 3) {
-                builders.get(texId).vertex(
-                        posArr[6], posArr[7], posArr[8],
-                        uvArr[4], uvArr[5],
-                        (float) p3.x, (float) p3.y, (float) p3.z
-                );
-            }
+            addMeshFace(builders.get(texId), numVerts, posArr, uvArr);
 
             // Increment the counters for the vertex and UV lists
             vi += numVerts;
@@ -463,7 +468,160 @@ public class FiguraModelPartReader {
         }
     }
 
+    private static void addMeshFace(FiguraImmediateBuffer.Builder builder, int numVerts, float[] posArr, float[] uvArr) {
+        // Calculate the normal vector for the current texture
+        p1.set(posArr[0], posArr[1], posArr[2]);
+        p2.set(posArr[3], posArr[4], posArr[5]);
+        p3.set(posArr[6], posArr[7], posArr[8]);
+        p3.subtract(p2);
+        p1.subtract(p2);
+        p3.cross(p1);
+        p3.normalize();
+        //p3 now contains the normal vector
+
+        // Add the vertex data to the appropriate builder
+        for (int j = 0; j < numVerts; j++) {
+            builder.vertex(
+                    posArr[3*j], posArr[3*j+1], posArr[3*j+2],
+                    uvArr[2*j], uvArr[2*j+1],
+                    (float) p3.x, (float) p3.y, (float) p3.z
+            );
+        }
+        // Add a vertex if necessary
+        if (numVerts == 3) {
+            builder.vertex(
+                    posArr[6], posArr[7], posArr[8],
+                    uvArr[4], uvArr[5],
+                    (float) p3.x, (float) p3.y, (float) p3.z
+            );
+        }
+    }
+
     private static void readMeshSmooth(List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, CompoundTag meshData) {
 
     }
+
+    // -- packed geometry -- //
+
+    //see PackedGeometryParser for the layout
+    private static PartCustomization.PartType readPacked(List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        //cut off data fails like any other invalid geometry
+        try {
+            byte version = buffer.get();
+            if (version > PackedGeometryParser.VERSION) {
+                FiguraMod.LOGGER.warn("Skipped model geometry packed by a newer version ({})", version);
+                return PartCustomization.PartType.GROUP;
+            }
+
+            return switch (buffer.get()) {
+                case PackedGeometryParser.CUBE -> {
+                    readPackedCuboid(facesByTexture, builders, buffer);
+                    yield PartCustomization.PartType.CUBE;
+                }
+                case PackedGeometryParser.MESH -> {
+                    readPackedMesh(facesByTexture, builders, buffer);
+                    yield PartCustomization.PartType.MESH;
+                }
+                default -> PartCustomization.PartType.GROUP;
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid packed geometry: truncated after " + data.length + " bytes");
+        }
+    }
+
+    private static void readPackedCuboid(List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, ByteBuffer buffer) {
+        from.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        to.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        inflateCuboid(buffer.getFloat());
+
+        int mask = buffer.get();
+        for (int i = 0; i < PackedGeometryParser.FACES.length; i++) {
+            if ((mask & (1 << i)) == 0)
+                continue;
+
+            short texId = buffer.getShort();
+            checkTexture(texId, facesByTexture, builders);
+            int rotation = buffer.get();
+            uv.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+            addFace(facesByTexture, builders, PackedGeometryParser.FACES[i], texId, rotation);
+        }
+    }
+
+    //avatars come from other players, so every count is checked against the bytes left before anything is allocated
+    private static void readPackedMesh(List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, ByteBuffer buffer) {
+        int vertexCount = checkCount(buffer.getInt(), 12, buffer, "vertex");
+        float[] verts = new float[vertexCount * 3];
+        for (int i = 0; i < verts.length; i++)
+            verts[i] = buffer.getFloat();
+
+        short[] tex = new short[checkCount(buffer.getInt(), 2, buffer, "face")];
+        int indices = 0;
+        for (int i = 0; i < tex.length; i++) {
+            tex[i] = buffer.getShort();
+            checkTexture(tex[i] >> 4, facesByTexture, builders);
+
+            int numVerts = tex[i] & 0xf;
+            if (numVerts != 3 && numVerts != 4)
+                throw new IllegalArgumentException("Invalid packed mesh: face with " + numVerts + " vertices");
+            indices += numVerts;
+        }
+
+        int size = buffer.get();
+        if (size != 1 && size != 2 && size != 4)
+            throw new IllegalArgumentException("Invalid packed mesh: index size " + size);
+
+        //each index is followed by its uv later on
+        checkCount(indices, size + 8, buffer, "index");
+        int[] fac = new int[indices];
+        for (int i = 0; i < indices; i++) {
+            fac[i] = switch (size) {
+                case 1 -> buffer.get() & 0xff;
+                case 2 -> buffer.getShort() & 0xffff;
+                default -> buffer.getInt();
+            };
+            if (fac[i] < 0 || fac[i] >= vertexCount)
+                throw new IllegalArgumentException("Invalid packed mesh: vertex index " + fac[i] + " out of " + vertexCount);
+        }
+
+        float[] posArr = new float[12];
+        float[] uvArr = new float[8];
+
+        int vi = 0;
+        for (short packed : tex) {
+            int texId = packed >> 4;
+            int numVerts = packed & 0xf;
+            facesByTexture.set(texId, facesByTexture.get(texId) + 1);
+
+            //uvs are stored after the indices, in the same order
+            for (int j = 0; j < numVerts; j++) {
+                int vid = fac[vi + j];
+                posArr[3*j] = verts[3*vid];
+                posArr[3*j+1] = verts[3*vid+1];
+                posArr[3*j+2] = verts[3*vid+2];
+
+                uvArr[2*j] = buffer.getFloat();
+                uvArr[2*j+1] = buffer.getFloat();
+            }
+
+            addMeshFace(builders.get(texId), numVerts, posArr, uvArr);
+            vi += numVerts;
+        }
+    }
+
+    /**
+     * @param elementSize the bytes each element takes
+     * @return the count, if that many elements fit in the bytes left
+     */
+    private static int checkCount(int count, int elementSize, ByteBuffer buffer, String element) {
+        if (count < 0 || count > buffer.remaining() / elementSize)
+            throw new IllegalArgumentException("Invalid packed geometry: " + count + " " + element + " entries, with " + buffer.remaining() + " bytes left");
+        return count;
+    }
+
+    private static void checkTexture(int texId, List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders) {
+        if (texId < 0 || texId >= facesByTexture.size() || texId >= builders.size())
+            throw new IllegalArgumentException("Invalid packed geometry: texture " + texId + " out of " + Math.min(facesByTexture.size(), builders.size()));
+    }
 }
@@ -11,6 +11,8 @@ import org.moon.figura.utils.caching.CacheStack;
 import org.moon.figura.utils.caching.CacheUtils;
 import org.moon.figura.utils.caching.CachedType;
 
+import java.util.Objects;
+
 public class PartCustomization implements CachedType<PartCustomization> {
 
     //-- Matrix thingies --//
@@ -270,6 +272,37 @@ public class PartCustomization implements CachedType<PartCustomization> {
     }
 
 
+    //-- Render caches --//
+
+    //hash of the values set by scripts and animations, so cached renders know when this part changed
+    public int stateHash() {
+        int hash = Objects.hash(partType, visible, alpha, light, overlay, primaryRenderType, secondaryRenderType, primaryTexture, secondaryTexture);
+        hash = hash(hash, position);
+        hash = hash(hash, rotation);
+        hash = hash(hash, scale);
+        hash = hash(hash, pivot);
+        hash = hash(hash, offsetPivot);
+        hash = hash(hash, offsetPos);
+        hash = hash(hash, offsetRot);
+        hash = hash(hash, animPos);
+        hash = hash(hash, animRot);
+        hash = hash(hash, animScale);
+        hash = hash(hash, color);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v11);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v12);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v13);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v21);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v22);
+        hash = 31 * hash + Double.hashCode(uvMatrix.v23);
+        return hash;
+    }
+
+    public static int hash(int hash, FiguraVec3 vec) {
+        hash = 31 * hash + Double.hashCode(vec.x);
+        hash = 31 * hash + Double.hashCode(vec.y);
+        return 31 * hash + Double.hashCode(vec.z);
+    }
+
     //-- Caching thingies --//
 
     private static final CacheUtils.Cache<PartCustomization> CACHE = CacheUtils.getCache(PartCustomization::new);
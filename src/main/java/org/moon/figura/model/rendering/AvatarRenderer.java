@@ -1,5 +1,7 @@
 package org.moon.figura.model.rendering;
 
+import com.mojang.blaze3d.pipeline.TextureTarget;
+import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Camera;
@@ -58,6 +60,7 @@ public abstract class AvatarRenderer {
     protected final List<FiguraTextureSet> textureSets = new ArrayList<>();
     public final HashMap<String, FiguraTexture> textures = new HashMap<>();
     public final HashMap<String, FiguraTexture> customTextures = new HashMap<>();
+    protected final HashMap<Long, Portrait> portraits = new HashMap<>();
     protected static int shouldRenderPivots;
     public boolean allowMatrixUpdate = false;
     public boolean allowHiddenTransforms = true;
@@ -104,6 +107,65 @@ public abstract class AvatarRenderer {
         root.clean();
         for (FiguraTexture texture : customTextures.values())
             texture.close();
+        clearPortraits();
+    }
+
+    // -- portraits -- //
+
+    private static final int MAX_PORTRAITS = 4;
+
+    //cached portrait render, by texture size and model scale
+    public Portrait getPortrait(int size, float modelScale) {
+        long key = ((long) size << 32) | (Float.floatToIntBits(modelScale) & 0xFFFFFFFFL);
+        Portrait portrait = portraits.get(key);
+        if (portrait == null) {
+            //sizes only pile up when the gui scale changes, so the old ones can go
+            if (portraits.size() >= MAX_PORTRAITS)
+                clearPortraits();
+
+            portrait = new Portrait(size);
+            portraits.put(key, portrait);
+        }
+        return portrait;
+    }
+
+    private void clearPortraits() {
+        if (portraits.isEmpty())
+            return;
+
+        List<Portrait> list = new ArrayList<>(portraits.values());
+        portraits.clear();
+
+        if (RenderSystem.isOnRenderThread()) {
+            for (Portrait portrait : list)
+                portrait.target.destroyBuffers();
+        } else {
+            RenderSystem.recordRenderCall(() -> {
+                for (Portrait portrait : list)
+                    portrait.target.destroyBuffers();
+            });
+        }
+    }
+
+    public static class Portrait {
+        public final TextureTarget target;
+        public Integer hash;
+        public boolean rendered, hasParts;
+
+        private Portrait(int size) {
+            target = new TextureTarget(size, size, true, Minecraft.ON_OSX);
+            target.setClearColor(0f, 0f, 0f, 0f);
+        }
+    }
+
+    //rough estimate of the memory held by this renderer, in bytes
+    public long getMemoryUsage() {
+        long size = 0;
+        for (FiguraTexture texture : textures.values())
+            size += texture.getMemoryUsage();
+        for (FiguraTexture texture : customTextures.values())
+            size += texture.getMemoryUsage();
+        return size;
     }
 
     public void invalidate() {
@@ -0,0 +1,100 @@
+package org.moon.figura.model.rendering;
+
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import org.moon.figura.avatar.Avatar;
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.mixin.render.RenderTypeAccessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * faces queued during the part traversal, drawn grouped by render type afterwards
+ * so switching textures between parts does not end the vertex batch every time
+ * sorted render types, like the translucent and emissive ones, blend with what was drawn before them
+ * so those are not grouped, but drawn after the others in the order they were queued
+ */
+class FaceBatches {
+
+    private final Map<RenderType, List<FiguraImmediateBuffer.Faces>> grouped = new LinkedHashMap<>();
+    private final List<FiguraImmediateBuffer.Faces> ordered = new ArrayList<>();
+    private final List<FiguraImmediateBuffer.Transform> transforms = new ArrayList<>();
+
+    public void add(FiguraImmediateBuffer.Faces faces) {
+        if (((RenderTypeAccessor) faces.renderType()).isSortOnUpload())
+            ordered.add(faces);
+        else
+            grouped.computeIfAbsent(faces.renderType(), type -> new ArrayList<>()).add(faces);
+
+        //faces of the same part share their transform
+        if (transforms.isEmpty() || transforms.get(transforms.size() - 1) != faces.transform())
+            transforms.add(faces.transform());
+    }
+
+    //moves every queued face to the other batches, keeping their order
+    public void moveTo(FaceBatches other) {
+        for (Map.Entry<RenderType, List<FiguraImmediateBuffer.Faces>> entry : grouped.entrySet())
+            other.grouped.computeIfAbsent(entry.getKey(), type -> new ArrayList<>()).addAll(entry.getValue());
+        other.ordered.addAll(ordered);
+        other.transforms.addAll(transforms);
+
+        grouped.clear();
+        ordered.clear();
+        transforms.clear();
+    }
+
+    /**
+     * pushes the queued faces to the buffers, without freeing them
+     * @param pose the pose to move the faces by, or null to draw them as they were queued
+     */
+    public void draw(Avatar avatar, MultiBufferSource bufferSource, FiguraMat4 pose, FiguraMat3 normalPose, int light) {
+        RenderType current = null;
+        VertexConsumer consumer = null;
+
+        for (Map.Entry<RenderType, List<FiguraImmediateBuffer.Faces>> entry : grouped.entrySet()) {
+            current = entry.getKey();
+            consumer = bufferSource.getBuffer(current);
+            avatar.frameRenderBatches++;
+            for (FiguraImmediateBuffer.Faces faces : entry.getValue())
+                push(avatar, consumer, faces, pose, normalPose, light);
+        }
+
+        //a new batch only starts when the render type changes
+        for (FiguraImmediateBuffer.Faces faces : ordered) {
+            if (faces.renderType() != current) {
+                current = faces.renderType();
+                consumer = bufferSource.getBuffer(current);
+                avatar.frameRenderBatches++;
+            }
+            push(avatar, consumer, faces, pose, normalPose, light);
+        }
+    }
+
+    private static void push(Avatar avatar, VertexConsumer consumer, FiguraImmediateBuffer.Faces faces, FiguraMat4 pose, FiguraMat3 normalPose, int light) {
+        if (pose == null)
+            faces.push(consumer);
+        else
+            faces.push(consumer, pose, normalPose, light);
+        avatar.frameVertices += faces.count() * 4L;
+    }
+
+    //returns the queued faces and transforms to their caches
+    public void free() {
+        for (List<FiguraImmediateBuffer.Faces> list : grouped.values())
+            for (FiguraImmediateBuffer.Faces faces : list)
+                faces.free();
+        for (FiguraImmediateBuffer.Faces faces : ordered)
+            faces.free();
+        for (FiguraImmediateBuffer.Transform transform : transforms)
+            transform.free();
+
+        grouped.clear();
+        ordered.clear();
+        transforms.clear();
+    }
+}
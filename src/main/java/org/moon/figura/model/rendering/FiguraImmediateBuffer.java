@@ -6,12 +6,16 @@ import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import net.minecraft.client.renderer.RenderType;
 import net.minecraft.resources.ResourceLocation;
 import org.lwjgl.BufferUtils;
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.math.matrix.FiguraMat4;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.model.PartCustomization;
 import org.moon.figura.model.rendering.texture.FiguraTextureSet;
 import org.moon.figura.model.rendering.texture.RenderTypes;
 import org.moon.figura.utils.caching.CacheStack;
+import org.moon.figura.utils.caching.CacheUtils;
+import org.moon.figura.utils.caching.CachedType;
 
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -27,13 +31,11 @@ public class FiguraImmediateBuffer {
     private static final FiguraVec3 normal = FiguraVec3.of();
     private static final FiguraVec3 uv = FiguraVec3.of(0, 0, 1);
 
-    private FiguraImmediateBuffer(FloatArrayList posList, FloatArrayList uvList, FloatArrayList normalList, FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
-        positions = BufferUtils.createFloatBuffer(posList.size());
-        positions.put(posList.toArray(new float[0]));
-        uvs = BufferUtils.createFloatBuffer(uvList.size());
-        uvs.put(uvList.toArray(new float[0]));
-        normals = BufferUtils.createFloatBuffer(normalList.size());
-        normals.put(normalList.toArray(new float[0]));
+    //the vertex data can be shared between avatars, so each buffer reads it through its own views
+    public FiguraImmediateBuffer(Data data, FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
+        positions = data.positions.duplicate();
+        uvs = data.uvs.duplicate();
+        normals = data.normals.duplicate();
         this.textureSet = textureSet;
         this.customizationStack = customizationStack;
     }
@@ -46,18 +48,6 @@ public class FiguraImmediateBuffer {
         textureSet.uploadIfNeeded();
     }
 
-    public void markBuffers() {
-        positions.mark();
-        uvs.mark();
-        normals.mark();
-    }
-
-    public void resetBuffers() {
-        positions.reset();
-        uvs.reset();
-        normals.reset();
-    }
-
     public void clearBuffers() {
         positions.clear();
         uvs.clear();
@@ -74,7 +64,8 @@ public class FiguraImmediateBuffer {
         normals.position(normals.position() + faceCount * 12);
     }
 
-    public void pushVertices(AvatarRenderer renderer, int faceCount, int[] remainingComplexity) {
+    //the faces are not drawn right away, but queued in the renderer, grouped by render type
+    public void pushVertices(ImmediateAvatarRenderer renderer, int faceCount, int[] remainingComplexity) {
         //Handle cases that we can quickly
         if (faceCount == 0)
             return;
@@ -96,16 +87,15 @@ public class FiguraImmediateBuffer {
             return;
         }
 
-        if (primary != null) {
-            if (secondary != null)
-                markBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(primary), faceCount);
-        }
-        if (secondary != null) {
-            if (primary != null)
-                resetBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(secondary), faceCount);
-        }
+        //both render types share the same transform
+        Transform transform = Transform.of(customization);
+        int start = positions.position() / 12;
+        advanceBuffers(faceCount);
+
+        if (primary != null)
+            renderer.queueFaces(Faces.of(this, primary, transform, start, faceCount));
+        if (secondary != null)
+            renderer.queueFaces(Faces.of(this, secondary, transform, start, faceCount));
     }
 
     private RenderType getTexture(AvatarRenderer renderer, RenderTypes types, Pair<FiguraTextureSet.OverrideType, Object> texture, FiguraTextureSet textureSet) {
@@ -126,37 +116,52 @@ public class FiguraImmediateBuffer {
         return types == null ? null : types.get(id);
     }
 
-    private void pushToConsumer(VertexConsumer consumer, int faceCount) {
-        PartCustomization customization = customizationStack.peek();
+    private void pushToConsumer(VertexConsumer consumer, Faces faces, FiguraMat4 pose, FiguraMat3 normalPose, int baseLight) {
+        Transform transform = faces.transform;
+
+        //baked faces are moved by the pose they are drawn with
+        FiguraMat4 positionMatrix = transform.positionMatrix;
+        FiguraMat3 normalMatrix = transform.normalMatrix;
+        if (pose != null) {
+            positionMatrix = positionMatrix.copy();
+            positionMatrix.multiply(pose);
+            normalMatrix = normalMatrix.copy();
+            normalMatrix.multiply(normalPose);
+        }
+        int light = transform.light == ImmediateAvatarRenderer.BAKED_LIGHT ? baseLight : transform.light;
+
+        positions.position(faces.start * 12);
+        uvs.position(faces.start * 8);
+        normals.position(faces.start * 12);
 
         FiguraVec3 uvFixer = FiguraVec3.of();
         uvFixer.set(textureSet.getWidth(), textureSet.getHeight(), 1); //Dividing by this makes uv 0 to 1
 
-        for (int i = 0; i < faceCount*4; i++) {
+        for (int i = 0; i < faces.count * 4; i++) {
 
             pos.set(positions.get(), positions.get(), positions.get(), 1);
-            pos.transform(customization.positionMatrix);
+            pos.transform(positionMatrix);
             normal.set(normals.get(), normals.get(), normals.get());
-            normal.transform(customization.normalMatrix);
+            normal.transform(normalMatrix);
             uv.set(uvs.get(), uvs.get(), 1);
             uv.divide(uvFixer);
-            uv.transform(customization.uvMatrix);
+            uv.transform(transform.uvMatrix);
 
             consumer.vertex(
                     (float) pos.x,
                     (float) pos.y,
                     (float) pos.z,
 
-                    (float) customization.color.x,
-                    (float) customization.color.y,
-                    (float) customization.color.z,
-                    customization.alpha,
+                    (float) transform.color.x,
+                    (float) transform.color.y,
+                    (float) transform.color.z,
+                    transform.alpha,
 
                     (float) uv.x,
                     (float) uv.y,
 
-                    customization.overlay,
-                    customization.light,
+                    transform.overlay,
+                    light,
 
                     (float) normal.x,
                     (float) normal.y,
@@ -165,14 +170,123 @@ public class FiguraImmediateBuffer {
         }
 
         uvFixer.free();
+        if (pose != null) {
+            positionMatrix.free();
+            normalMatrix.free();
+        }
+    }
+
+    //copy of the customization values a part was rendered with, as the customization stack changes before the faces are drawn
+    //cached, as every visible part needs one each frame
+    public static class Transform implements CachedType<Transform> {
+        private static final CacheUtils.Cache<Transform> CACHE = CacheUtils.getCache(Transform::new);
+
+        private final FiguraMat4 positionMatrix = FiguraMat4.of();
+        private final FiguraMat3 normalMatrix = FiguraMat3.of(), uvMatrix = FiguraMat3.of();
+        private final FiguraVec3 color = FiguraVec3.of();
+        private float alpha;
+        private int overlay, light;
+
+        private Transform() {}
+
+        private static Transform of(PartCustomization customization) {
+            Transform transform = CACHE.getFresh();
+            transform.positionMatrix.set(customization.positionMatrix);
+            transform.normalMatrix.set(customization.normalMatrix);
+            transform.uvMatrix.set(customization.uvMatrix);
+            transform.color.set(customization.color);
+            transform.alpha = customization.alpha;
+            transform.overlay = customization.overlay;
+            transform.light = customization.light;
+            return transform;
+        }
+
+        @Override
+        public Transform reset() {
+            return this;
+        }
+
+        @Override
+        public void free() {
+            CACHE.offerOld(this);
+        }
+    }
+
+    //a range of faces of a buffer, waiting to be drawn with a render type
+    public static class Faces implements CachedType<Faces> {
+        private static final CacheUtils.Cache<Faces> CACHE = CacheUtils.getCache(Faces::new);
+
+        private FiguraImmediateBuffer buffer;
+        private RenderType renderType;
+        private Transform transform;
+        private int start, count;
+
+        private Faces() {}
+
+        private static Faces of(FiguraImmediateBuffer buffer, RenderType renderType, Transform transform, int start, int count) {
+            Faces faces = CACHE.getFresh();
+            faces.buffer = buffer;
+            faces.renderType = renderType;
+            faces.transform = transform;
+            faces.start = start;
+            faces.count = count;
+            return faces;
+        }
+
+        public RenderType renderType() {
+            return renderType;
+        }
+
+        public Transform transform() {
+            return transform;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public void push(VertexConsumer consumer) {
+            buffer.pushToConsumer(consumer, this, null, null, transform.light);
+        }
+
+        public void push(VertexConsumer consumer, FiguraMat4 pose, FiguraMat3 normalPose, int light) {
+            buffer.pushToConsumer(consumer, this, pose, normalPose, light);
+        }
+
+        //the transform is freed separately, as it is shared
+        @Override
+        public Faces reset() {
+            buffer = null;
+            renderType = null;
+            transform = null;
+            return this;
+        }
+
+        @Override
+        public void free() {
+            CACHE.offerOld(this);
+        }
     }
 
     public static Builder builder() {
-        return new Builder();
+        return new Builder(false);
     }
 
+    //a builder that ignores its vertices, for when the vertex data is already known
+    public static Builder discardingBuilder() {
+        return new Builder(true);
+    }
+
+    //immutable vertex data, read only through duplicated buffers
+    public record Data(FloatBuffer positions, FloatBuffer uvs, FloatBuffer normals) {}
+
     public static class Builder {
         private final List<Vertex> vertices = new ArrayList<>();
+        private final boolean discard;
+
+        private Builder(boolean discard) {
+            this.discard = discard;
+        }
 
         public static class Vertex {
             public float x, y, z;
@@ -181,6 +295,9 @@ public class FiguraImmediateBuffer {
         }
 
         public void vertex(float x, float y, float z, float u, float v, float nx, float ny, float nz) {
+            if (discard)
+                return;
+
             Vertex vx = new Vertex();
             vx.x = x; vx.y = y; vx.z = z;
             vx.u = u; vx.v = v;
@@ -188,7 +305,7 @@ public class FiguraImmediateBuffer {
             vertices.add(vx);
         }
 
-        public FiguraImmediateBuffer build(FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
+        public Data build() {
             int size = vertices.size();
             FloatArrayList positions = new FloatArrayList(size * 3);
             FloatArrayList uvs = new FloatArrayList(size * 2);
@@ -203,7 +320,13 @@ public class FiguraImmediateBuffer {
                 normals.add(vertex.ny);
                 normals.add(vertex.nz);
             }
-            return new FiguraImmediateBuffer(positions, uvs, normals, textureSet, customizationStack);
+            return new Data(toBuffer(positions), toBuffer(uvs), toBuffer(normals));
+        }
+
+        private static FloatBuffer toBuffer(FloatArrayList list) {
+            FloatBuffer buffer = BufferUtils.createFloatBuffer(list.size());
+            buffer.put(list.elements(), 0, list.size());
+            return buffer;
         }
     }
 }
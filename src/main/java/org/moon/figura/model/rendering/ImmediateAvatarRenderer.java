@@ -6,10 +6,12 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.LightLayer;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.SharedAssets;
 import org.moon.figura.config.Config;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
@@ -31,8 +33,17 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class ImmediateAvatarRenderer extends AvatarRenderer {
 
     protected final List<FiguraImmediateBuffer> buffers = new ArrayList<>(0);
+    private final SharedAssets.SharedGeometry geometry; //held here to keep it shared
+    private boolean released;
     protected final PartCustomization.Stack customizationStack = new PartCustomization.Stack();
 
+    //faces queued during the part traversal, drawn by render type afterwards
+    private final FaceBatches batches = new FaceBatches();
+    private Baked baking;
+
+    //light placeholder for baked renders, replaced by the real light when drawn
+    public static final int BAKED_LIGHT = -1;
+
     public static final FiguraMat4 VIEW_TO_WORLD_MATRIX = FiguraMat4.of();
     private static final PartCustomization pivotOffsetter = PartCustomization.of();
 
@@ -40,11 +51,28 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         super(avatar);
 
         //Vertex data, read model parts
+        //avatars with the same models share their vertex data, so it is only built once
+        CompoundTag models = avatar.nbt.getCompound("models");
+        SharedAssets.SharedGeometry shared = SharedAssets.acquireGeometry(models);
+
         List<FiguraImmediateBuffer.Builder> builders = new ArrayList<>();
-        root = FiguraModelPartReader.read(avatar, avatar.nbt.getCompound("models"), builders, textureSets);
+        if (shared != null) {
+            for (int i = 0; i < textureSets.size(); i++)
+                builders.add(FiguraImmediateBuffer.discardingBuilder());
+        }
+
+        root = FiguraModelPartReader.read(avatar, models, builders, textureSets);
 
-        for (int i = 0; i < textureSets.size() && i < builders.size(); i++)
-            buffers.add(builders.get(i).build(textureSets.get(i), customizationStack));
+        if (shared == null) {
+            List<FiguraImmediateBuffer.Data> data = new ArrayList<>();
+            for (FiguraImmediateBuffer.Builder builder : builders)
+                data.add(builder.build());
+            shared = SharedAssets.shareGeometry(models, data);
+        }
+
+        geometry = shared;
+        for (int i = 0; i < textureSets.size() && i < geometry.data.size(); i++)
+            buffers.add(new FiguraImmediateBuffer(geometry.data.get(i), textureSets.get(i), customizationStack));
     }
 
     @Override
@@ -53,6 +81,16 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         customizationStack.fullClear();
         for (FiguraImmediateBuffer buffer : buffers)
             buffer.clean();
+
+        if (!released) {
+            released = true;
+            SharedAssets.releaseGeometry(geometry);
+        }
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return super.getMemoryUsage() + geometry.getShare();
     }
 
     public void checkEmpty() {
@@ -98,6 +136,8 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
     }
 
     protected int commonRender(double vertOffset) {
+        long start = System.nanoTime();
+
         //flag rendering state
         this.isRendering = true;
 
@@ -142,11 +182,13 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         //finish rendering
         customizationStack.pop();
         checkEmpty();
+        drawBatches();
 
         this.isRendering = false;
         if (this.dirty)
             clean();
 
+        avatar.frameRenderTime += System.nanoTime() - start;
         return prev - Math.max(remainingComplexity[0], 0);
     }
 
@@ -300,6 +342,16 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
             customizationStack.pop();
         }
 
+        //children of hidden parts are hidden too, so they are skipped at once
+        //unless one of them is forced visible, the pivots of hidden parts are being drawn, or their world matrices are being updated
+        if (!allowMatrixUpdate && shouldRenderPivots <= 1 && !part.getVisible() && !part.hasVisibleChild()) {
+            part.advanceChildrenImmediate(this);
+            part.resetVanillaTransforms();
+            customizationStack.pop();
+            FiguraMod.popProfiler();
+            return true;
+        }
+
         //render children
         for (FiguraModelPart child : part.children)
             if (!renderPart(child, remainingComplexity, thisPassedPredicate)) {
@@ -396,6 +448,55 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         FiguraMod.popProfiler();
     }
 
+    public void queueFaces(FiguraImmediateBuffer.Faces faces) {
+        batches.add(faces);
+    }
+
+    protected void drawBatches() {
+        //keep the queued faces instead of drawing them
+        if (baking != null) {
+            batches.moveTo(baking.batches);
+            return;
+        }
+
+        batches.draw(avatar, bufferSource, null, null, 0);
+        batches.free();
+    }
+
+    /**
+     * renders the special parts without drawing them, so they can be drawn many times with different matrices
+     * use {@link #BAKED_LIGHT} as the render light, so the parts without a custom light use the light of each draw
+     * @return the baked faces, which must be freed after use
+     */
+    public Baked bakeSpecialParts() {
+        baking = new Baked();
+        try {
+            baking.complexity = renderSpecialParts();
+            return baking;
+        } finally {
+            baking = null;
+        }
+    }
+
+    public void drawBaked(Baked baked, PoseStack.Pose pose, int light) {
+        FiguraMat4 positionMatrix = FiguraMat4.fromMatrix4f(pose.pose());
+        FiguraMat3 normalMatrix = FiguraMat3.fromMatrix3f(pose.normal());
+
+        baked.batches.draw(avatar, bufferSource, positionMatrix, normalMatrix, light);
+
+        positionMatrix.free();
+        normalMatrix.free();
+    }
+
+    public static class Baked {
+        private final FaceBatches batches = new FaceBatches();
+        public int complexity;
+
+        public void free() {
+            batches.free();
+        }
+    }
+
     public void pushFaces(int texIndex, int faceCount, int[] remainingComplexity) {
         buffers.get(texIndex).pushVertices(this, faceCount, remainingComplexity);
     }
@@ -11,9 +11,9 @@ import net.minecraft.server.packs.resources.ResourceManager;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaFunction;
 import org.luaj.vm2.LuaValue;
-import org.lwjgl.BufferUtils;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.SharedAssets;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
@@ -28,7 +28,6 @@ import org.moon.figura.utils.FiguraIdentifier;
 import org.moon.figura.utils.LuaUtils;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.UUID;
@@ -46,26 +45,28 @@ public class FiguraTexture extends SimpleTexture {
     private boolean registered = false;
     private boolean dirty = true;
     private boolean modified = false;
+    private int version = 0; //bumped on every update, for render caches
     private final String name;
     private final Avatar owner;
 
     /**
      * Native image holding the texture data for this texture.
      */
-    private final NativeImage texture;
+    private NativeImage texture;
     private NativeImage backup;
     private boolean isClosed = false;
 
+    //the original image, shared with every texture of the same file until modified
+    private SharedAssets.SharedImage shared;
+
     public FiguraTexture(Avatar owner, String name, byte[] data) {
         super(new FiguraIdentifier("avatar_tex/" + owner.owner + "/" + UUID.randomUUID()));
 
-        //Read image from wrapper
+        //Read image from the shared ones
         NativeImage image;
         try {
-            ByteBuffer wrapper = BufferUtils.createByteBuffer(data.length);
-            wrapper.put(data);
-            wrapper.rewind();
-            image = NativeImage.read(wrapper);
+            shared = SharedAssets.acquireImage(data);
+            image = shared.image;
         } catch (IOException e) {
             FiguraMod.LOGGER.error("", e);
             image = new NativeImage(1, 1, true);
@@ -94,13 +95,24 @@ public class FiguraTexture extends SimpleTexture {
         isClosed = true;
 
         //Close native images
-        texture.close();
-        if (backup != null)
-            backup.close();
+        if (shared != null) {
+            //the shared image is either the texture or its backup
+            if (texture != shared.image)
+                texture.close();
+            SharedAssets.releaseImage(shared);
+        } else {
+            texture.close();
+            if (backup != null)
+                backup.close();
+        }
 
         this.releaseId();
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public void uploadIfDirty() {
         if (!registered) {
             Minecraft.getInstance().getTextureManager().register(this.location, this);
@@ -132,11 +144,28 @@ public class FiguraTexture extends SimpleTexture {
     private void backupImage() {
         this.modified = true;
         if (this.backup == null) {
-            backup = new NativeImage(texture.format(), texture.getWidth(), texture.getHeight(), true);
-            backup.copyFrom(texture);
+            NativeImage copy = new NativeImage(texture.format(), texture.getWidth(), texture.getHeight(), true);
+            copy.copyFrom(texture);
+
+            //a shared image is never modified, so it becomes the backup and the copy is modified instead
+            if (shared != null) {
+                backup = texture;
+                texture = copy;
+            } else {
+                backup = copy;
+            }
         }
     }
 
+    //pixel data held by this texture, including the restore backup
+    //the shared original only counts for this texture share of it
+    public long getMemoryUsage() {
+        long size = (long) texture.getWidth() * texture.getHeight() * texture.format().components();
+        if (shared != null)
+            return backup == null ? shared.getShare() : size + shared.getShare();
+        return backup == null ? size : size * 2;
+    }
+
     public int getWidth() {
         return texture.getWidth();
     }
@@ -248,6 +277,7 @@ public class FiguraTexture extends SimpleTexture {
     @LuaMethodDoc("texture.update")
     public FiguraTexture update() {
         this.dirty = true;
+        this.version++;
         return this;
     }
 
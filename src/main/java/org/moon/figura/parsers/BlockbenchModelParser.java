@@ -7,7 +7,8 @@ import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.model.ParentType;
 import org.moon.figura.utils.IOUtils;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -29,10 +30,17 @@ public class BlockbenchModelParser {
     private final HashMap<String, TextureData> textureMap = new HashMap<>();
     private final HashMap<Integer, String> textureIdMap = new HashMap<>();
 
-    //parser
-    public ModelData parseModel(Path avatarFolder, File sourceFile, String json, String modelName, String folders) throws Exception {
-        //parse json -> object
-        BlockbenchModel model = GSON.fromJson(json, BlockbenchModel.class);
+    //reader
+    //reads the model file and decodes its textures
+    //it does not touch the parser state, so many models can be read at once, while parseModel() must be called in order
+    public static RawModel readModel(Path avatarFolder, File sourceFile, String modelName, String folders) throws Exception {
+        //parse json -> object, streamed from the file instead of a whole file string
+        //the embedded textures are decoded while reading, so gson never holds their base64 text
+        BlockbenchModel model;
+        EmbeddedSourceReader reader = new EmbeddedSourceReader(new InputStreamReader(new FileInputStream(sourceFile), StandardCharsets.UTF_8));
+        try (reader) {
+            model = GSON.fromJson(reader, BlockbenchModel.class);
+        }
 
         //meta check
         if (!model.meta.model_format.equals("free"))
@@ -40,6 +48,22 @@ public class BlockbenchModelParser {
         if (Integer.parseInt(model.meta.format_version.split("\\.")[0]) < 4)
             throw new Exception("Model \"" + modelName + "\" is too old (version " + model.meta.format_version + "), minimum compatible version is 4.0");
 
+        //textures
+        LoadedTexture[] textures = model.textures == null ? null : new LoadedTexture[model.textures.length];
+        if (textures != null) {
+            for (int i = 0; i < textures.length; i++)
+                textures[i] = loadTexture(avatarFolder, sourceFile, folders, modelName, model.textures[i], reader);
+        }
+
+        return new RawModel(model, textures, modelName, folders);
+    }
+
+    //parser
+    public ModelData parseModel(RawModel raw) {
+        BlockbenchModel model = raw.model();
+        String modelName = raw.modelName();
+        String folders = raw.folders();
+
         //return lists
         CompoundTag textures = new CompoundTag();
         List<CompoundTag> animationList = new ArrayList<>();
@@ -53,7 +77,7 @@ public class BlockbenchModelParser {
         //we want to save the textures in a separated list
         //we also want to fix the UV mismatch from the resolution and the texture
         //emissive textures are not put into the texture map, so we need to fix parts texture ids
-        parseTextures(avatarFolder, sourceFile, folders, modelName, textures, model.textures, model.resolution);
+        parseTextures(folders, textures, model.textures, raw.textures(), model.resolution);
 
         //parse elements into a map of UUID (String) -> NbtCompound (the element)
         //later when parsing the outliner, we fetch the elements from this map
@@ -85,12 +109,49 @@ public class BlockbenchModelParser {
 
     // -- internal functions -- //
 
-    private void parseTextures(Path avatar, File sourceFile, String folders, String modelName, CompoundTag texturesNbt, BlockbenchModel.Texture[] textures, BlockbenchModel.Resolution resolution) {
+    //loads the texture file, falling back to the source stored in the model
+    private static LoadedTexture loadTexture(Path avatar, File sourceFile, String folders, String modelName, BlockbenchModel.Texture texture, EmbeddedSourceReader embedded) {
+        //name
+        String name = folders + texture.name;
+        if (name.endsWith(".png"))
+            name = name.substring(0, name.length() - 4);
+
+        String type = name.endsWith("_e") ? "E" : name.endsWith("_n") ? "N" : name.endsWith("_s") ? "S" : "D";
+
+        String path;
+        byte[] source;
+        try {
+            //check the file to load
+            Path p = sourceFile.toPath().resolve(texture.relative_path);
+            File f = p.toFile();
+            if (!f.exists()) throw new Exception("File do not exists!");
+            if (!p.normalize().startsWith(avatar)) throw new Exception("File from outside the avatar folder!");
+
+            //load texture
+            source = IOUtils.readFileBytes(f);
+            path = f.getCanonicalPath()
+                    .replaceFirst(Pattern.quote(avatar + File.separator), "")
+                    .replaceAll("[/\\\\]", ".");
+            path = path.substring(0, path.length() - 4);
+
+            //feedback
+            FiguraMod.debug("Loaded " + type + " Texture \"{}\" from {}", name, f);
+        } catch (Exception ignored) {
+            //otherwise, load from the source stored in the model
+            source = embedded.source(texture.source);
+            path = folders + modelName + "." + name;
+            FiguraMod.debug("Loaded " + type + " Texture \"{}\" from {}", name, path);
+        }
+
+        //the source is not needed anymore
+        texture.source = null;
+        return new LoadedTexture(path, source, source.length >= 24 ? getTextureSize(source) : null);
+    }
+
+    private void parseTextures(String folders, CompoundTag texturesNbt, BlockbenchModel.Texture[] textures, LoadedTexture[] loaded, BlockbenchModel.Resolution resolution) {
         if (textures == null)
             return;
 
-        String pathRegex = Pattern.quote(avatar + File.separator);
-
         //temp lists
 
         //used for retrieving texture data by name, so we can expand the same data
@@ -125,34 +186,11 @@ public class BlockbenchModelParser {
                 textureType = "d";
             }
 
-            //parse the texture data
-            String path;
-            byte[] source;
-            try {
-                //check the file to load
-                Path p = sourceFile.toPath().resolve(texture.relative_path);
-                File f = p.toFile();
-                if (!f.exists()) throw new Exception("File do not exists!");
-                if (!p.normalize().startsWith(avatar)) throw new Exception("File from outside the avatar folder!");
-
-                //load texture
-                source = IOUtils.readFileBytes(f);
-                path = f.getCanonicalPath()
-                        .replaceFirst(pathRegex, "")
-                        .replaceAll("[/\\\\]", ".");
-                path = path.substring(0, path.length() - 4);
-
-                //feedback
-                FiguraMod.debug("Loaded " + textureType.toUpperCase() + " Texture \"{}\" from {}", name, f);
-            } catch (Exception ignored) {
-                //otherwise, load from the source stored in the model
-                source = Base64.getDecoder().decode(texture.source.substring("data:image/png;base64,".length()));
-                path = folders + modelName + "." + name;
-                FiguraMod.debug("Loaded " + textureType.toUpperCase() + " Texture \"{}\" from {}", name, path);
-            }
+            //the texture data, already loaded by the reader
+            String path = loaded[i].path();
 
             //add source nbt
-            src.putByteArray(path, source);
+            src.putByteArray(path, loaded[i].source());
 
             //fix texture name
             if (!textureType.equals("d"))
@@ -180,7 +218,7 @@ public class BlockbenchModelParser {
                 int id = textureIndex.indexOf(name) + textureOffset;
 
                 //fix texture size for more speed
-                int[] imageSize = getTextureSize(source);
+                int[] imageSize = loaded[i].size() != null ? loaded[i].size() : getTextureSize(loaded[i].source());
                 float[] fixedSize = new float[]{(float) imageSize[0] / resolution.width, (float) imageSize[1] / resolution.height};
 
                 //add the texture on the map
@@ -694,6 +732,12 @@ public class BlockbenchModelParser {
     //dummy texture data
     private record TextureData(int id, float[] fixedSize) {}
 
+    //texture loaded by the reader
+    public record LoadedTexture(String path, byte[] source, int[] size) {}
+
+    //model read from the file, waiting to be parsed
+    public record RawModel(BlockbenchModel model, LoadedTexture[] textures, String modelName, String folders) {}
+
     //dummy class containing the return object of the parser
     public record ModelData(CompoundTag textures, List<CompoundTag> animationList, CompoundTag modelNbt) {}
 }
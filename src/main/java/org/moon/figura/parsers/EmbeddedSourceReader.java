@@ -0,0 +1,194 @@
+package org.moon.figura.parsers;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * reads a blockbench model json, decoding the embedded png sources on the way
+ * the base64 text is decoded in chunks as it is read, and gson only gets a short placeholder in its place,
+ * so a texture source never exists as a whole string
+ */
+class EmbeddedSourceReader extends Reader {
+
+    static final String PREFIX = "data:image/png;base64,";
+    private static final String PLACEHOLDER = "figura:embedded:";
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos, limit;
+
+    //json state, to only look at the start of strings
+    private boolean inString, escaped;
+
+    //the placeholder still being handed out
+    private String pending;
+    private int pendingPos;
+
+    //decoded sources, null when the base64 was invalid
+    private final List<byte[]> sources = new ArrayList<>();
+
+    EmbeddedSourceReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @param source the source string gson read
+     * @return the decoded texture, for placeholders and plain embedded sources alike
+     */
+    byte[] source(String source) {
+        if (!source.startsWith(PLACEHOLDER))
+            return Base64.getDecoder().decode(source.substring(PREFIX.length()));
+
+        byte[] decoded = sources.get(Integer.parseInt(source.substring(PLACEHOLDER.length())));
+        if (decoded == null)
+            throw new IllegalArgumentException("Invalid base64 in embedded texture");
+        return decoded;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            //finish the last placeholder first
+            if (pending != null) {
+                int count = Math.min(len - n, pending.length() - pendingPos);
+                pending.getChars(pendingPos, pendingPos + count, cbuf, off + n);
+                n += count;
+                pendingPos += count;
+                if (pendingPos == pending.length())
+                    pending = null;
+                continue;
+            }
+
+            if (pos == limit && !fill(1))
+                break;
+
+            char c = buffer[pos];
+            if (inString) {
+                if (escaped)
+                    escaped = false;
+                else if (c == '\\')
+                    escaped = true;
+                else if (c == '"')
+                    inString = false;
+            } else if (c == '"') {
+                if (isEmbeddedSource()) {
+                    //hand out what was read first, so errors while decoding are not taken as an empty json
+                    if (n > 0)
+                        break;
+
+                    pos += 1 + PREFIX.length();
+                    pending = "\"" + PLACEHOLDER + sources.size() + "\"";
+                    pendingPos = 0;
+                    sources.add(decode());
+                    continue;
+                }
+                inString = true;
+            }
+
+            cbuf[off + n++] = c;
+            pos++;
+        }
+
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    //whether the string starting at the current quote is an embedded png
+    private boolean isEmbeddedSource() throws IOException {
+        if (!fill(1 + PREFIX.length()))
+            return false;
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (buffer[pos + 1 + i] != PREFIX.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    //decodes the rest of the string, up to and including its closing quote
+    private byte[] decode() throws IOException {
+        SourceStream source = new SourceStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] decoded;
+        try (InputStream base64 = Base64.getDecoder().wrap(source)) {
+            base64.transferTo(out);
+            decoded = out.toByteArray();
+        } catch (EOFException e) {
+            throw e;
+        } catch (IOException e) {
+            //invalid base64 only fails once the texture is needed, as it did when gson kept the text
+            decoded = null;
+        }
+
+        //skip whatever the decoder left, like text after the padding
+        source.transferTo(OutputStream.nullOutputStream());
+        return decoded;
+    }
+
+    /**
+     * makes sure there are at least this many chars left in the buffer
+     * @return false when the input ended first
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - pos >= count)
+            return true;
+
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < count) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                return false;
+            limit += read;
+        }
+        return true;
+    }
+
+    //the chars of the current string as bytes, for the base64 decoder
+    private class SourceStream extends InputStream {
+
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done)
+                return -1;
+
+            int n = 0;
+            while (n < len) {
+                if (pos == limit && !fill(1))
+                    throw new EOFException("Unterminated embedded texture");
+
+                char c = buffer[pos++];
+                if (c == '"') {
+                    done = true;
+                    break;
+                }
+
+                //only an escaped slash is valid base64, anything else is left for the decoder to reject
+                if (c == '\\') {
+                    if (pos == limit && !fill(1))
+                        throw new EOFException("Unterminated embedded texture");
+                    c = buffer[pos++] == '/' ? '/' : '?';
+                }
+
+                b[off + n++] = (byte) (c < 128 ? c : '?');
+            }
+
+            return n == 0 && done ? -1 : n;
+        }
+    }
+}
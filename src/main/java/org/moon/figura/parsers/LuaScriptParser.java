@@ -5,154 +5,315 @@ import org.moon.figura.FiguraMod;
 import org.moon.figura.config.Config;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.HashMap;
 
+//single pass script minifier
+//the output matches the old regex minifier char by char, including its quirks, as avatars are hashed from it
+//no state is shared between calls, so scripts can be minified concurrently
 public class LuaScriptParser {
 
-    // regex minify constants
-
-    private static final Pattern string = Pattern.compile("\"(\\\\|\\\"|[^\"\n\r])*?\"|'(\\\\|\\'|[^'\n\r])*?'".stripIndent(), Pattern.MULTILINE);
-    private static final Pattern multilineString = Pattern.compile("\\[(?<s>=*)\\[.*?](\\k<s>)]", Pattern.MULTILINE | Pattern.DOTALL);
-    private static final Pattern comments = Pattern.compile("--[^\n]*$", Pattern.MULTILINE);
-    private static final Pattern multilineComment = Pattern.compile("--\\[(?<s>=*)\\[.*?](\\k<s>)]", Pattern.MULTILINE | Pattern.DOTALL);
-    private static final Pattern newlines = Pattern.compile("^[\t ]*((\n|\n\r|\r\n|\r)[\t ]*)?");
-    private static final Pattern words = Pattern.compile("[a-zA-Z_]\\w*");
-    private static final Pattern trailingNewlines = Pattern.compile("\n*$");
-    private static final Pattern sheBangs = Pattern.compile("^#![^\n]*");
-
-    // aggressive minify constants
-
-    private static final Pattern allStrings = Pattern.compile(string.pattern() + "|" + multilineString.pattern());
-    private static final Pattern whitespacePlus = Pattern.compile("[ \n]+");
-    private static final Pattern nameOops = Pattern.compile("\\w{2}");
-
-    //parsing data
-    private static boolean error;
-
     public static ByteArrayTag parseScript(String name, String script) {
-        error = true;
-        String minified = switch (Config.FORMAT_SCRIPT.asInt()) {
-            case 0 -> noMinifier(script);
-            case 1 -> regexMinify(name, script);
-            case 2 -> aggressiveMinify(name, script);
-            default -> throw new IllegalStateException("Format_SCRIPT should not be %d, expecting 0 to %d".formatted(Config.FORMAT_SCRIPT.asInt(), Config.FORMAT_SCRIPT.enumList.size() - 1));
+        int mode = Config.FORMAT_SCRIPT.asInt();
+        String minified = switch (mode) {
+            case 0 -> script;
+            case 1 -> lightMinify(script);
+            case 2 -> heavyMinify(script);
+            default -> throw new IllegalStateException("Format_SCRIPT should not be %d, expecting 0 to %d".formatted(mode, Config.FORMAT_SCRIPT.enumList.size() - 1));
         };
-        ByteArrayTag out;
-        if (error) {
+
+        //null means the minifier gave up
+        if (minified == null) {
             FiguraMod.LOGGER.warn("Failed to minify the script, likely to be syntax error");
-            out = new ByteArrayTag(script.getBytes(StandardCharsets.UTF_8));
-        } else {
-            out = new ByteArrayTag(minified.getBytes(StandardCharsets.UTF_8));
+            minified = script;
+        } else if (mode > 0) {
+            FiguraMod.debug("Script \"{}\" minified from {} chars to {} chars using {} mode", name, script.length(), minified.length(), mode == 1 ? "LIGHT" : "HEAVY");
         }
-        return out;
-    }
 
-    private static String noMinifier(String script) {
-        error = false;
-        return script;
+        return new ByteArrayTag(minified.getBytes(StandardCharsets.UTF_8));
     }
 
-    private static String regexMinify(String name, String script) {
-        StringBuilder builder = new StringBuilder(script);
-        int ogLen = script.length();
+    // -- light minify -- //
 
-        for (int i = 0; i < builder.length(); i++) {
-            if (builder.length() > ogLen)
-                throw new RuntimeException("Script minifier stopped due to a possible infinite loop when parsing \"" + name + "\"");
+    //removes comments, shebangs and collapses whitespaces, keeping the line count
+    //returns null for unfinished strings or a dangling "-" at the end of the script
+    static String lightMinify(String script) {
+        int len = script.length();
+        StringBuilder builder = new StringBuilder(len);
+        LongBrackets brackets = new LongBrackets(script, true);
 
-            switch (builder.charAt(i)) {
+        int i = 0;
+        while (i < len) {
+            char c = script.charAt(i);
+            switch (c) {
                 case '#' -> {
-                    if (i > 0)
-                        continue;
-
-                    Matcher matcher = sheBangs.matcher(builder);
-                    if (matcher.find())
-                        builder.delete(0, matcher.end());
+                    if (builder.length() == 0 && script.startsWith("#!", i)) {
+                        i = lineEnd(script, i);
+                        //the char right after the shebang is kept as is
+                        if (i < len)
+                            builder.append(script.charAt(i++));
+                    } else {
+                        builder.append(c);
+                        i++;
+                    }
                 }
                 case '\'', '"' -> {
-                    Matcher matcher = string.matcher(builder);
-                    if (!matcher.find(i) || !(matcher.start() == i))
-                        return builder.toString();
+                    int end = stringEnd(script, i);
+                    if (end == -1)
+                        return null;
 
-                    i = matcher.end() - 1;
+                    builder.append(script, i, end);
+                    i = end;
                 }
                 case '[' -> {
-                    Matcher matcher = multilineString.matcher(builder);
-                    if (matcher.find(i) && matcher.start() == i)
-                        i = matcher.end() - 1;
+                    int end = brackets.close(i);
+                    if (end == -1)
+                        end = i + 1;
+
+                    builder.append(script, i, end);
+                    i = end;
                 }
                 case '-' -> {
-                    if (i == builder.length() - 1)
-                        return builder.toString();
-
-                    Matcher multiline = multilineComment.matcher(builder);
-                    if (multiline.find(i) && multiline.start() == i) {
-                        int breaks = builder.substring(i, multiline.end()).split("\n").length - 1;
-                        builder.delete(i, multiline.end()).insert(i, "\n".repeat(breaks));
-                        i--;
+                    if (i == len - 1)
+                        return null;
+
+                    if (script.charAt(i + 1) != '-') {
+                        builder.append(c);
+                        i++;
                         continue;
                     }
 
-                    Matcher comment = comments.matcher(builder);
-                    if (comment.find(i) && comment.start() == i) {
-                        builder.delete(comment.start(), comment.end());
-                        i--;
+                    //multiline comments are replaced by their line breaks
+                    int end = brackets.close(i + 2);
+                    if (end != -1) {
+                        int breaks = 0;
+                        for (int j = i; j < end; j++) {
+                            if (script.charAt(j) == '\n')
+                                breaks++;
+                        }
+
+                        i = end;
+                        if (breaks > 0) {
+                            builder.append("\n".repeat(breaks));
+                            i = skipBlanks(script, i);
+                        }
+                        continue;
                     }
+
+                    //single line comment, stops before the line break
+                    end = lineEnd(script, i);
+                    if (end < len && script.charAt(end - 1) == '\r')
+                        end--;
+                    i = end;
                 }
                 case ' ', '\t', '\n', '\r' -> {
-                    Matcher newline = newlines.matcher(builder.substring(i));
-                    if (newline.find())
-                        if (newline.start() == 0)
-                            builder.delete(i, i + newline.end()).insert(i, Optional.ofNullable(newline.group(1)).map(t -> "\n").orElse(" "));
-                        else
-                            FiguraMod.LOGGER.warn("script TODO appears to have invalid new line configuration");
+                    //blanks, then at most one line break followed by more blanks
+                    int j = skipBlanks(script, i);
+                    boolean newline = false;
+                    if (j < len) {
+                        char next = script.charAt(j);
+                        if (next == '\n') {
+                            newline = true;
+                            j++;
+                        } else if (next == '\r') {
+                            newline = true;
+                            j++;
+                            if (j < len && script.charAt(j) == '\n')
+                                j++;
+                        }
+                        if (newline)
+                            j = skipBlanks(script, j);
+                    }
+
+                    builder.append(newline ? '\n' : ' ');
+                    i = j;
                 }
                 default -> {
-                    Matcher word = words.matcher(builder);
-                    if (word.find(i) && word.start() == i)
-                        i = word.end() - 1;
+                    builder.append(c);
+                    i++;
                 }
             }
         }
 
-        Matcher trailingNewline = trailingNewlines.matcher(builder);
-        if (trailingNewline.find())
-            builder.replace(trailingNewline.start(), trailingNewline.end(), "\n");
+        fixTrailingNewlines(builder);
+        return builder.toString();
+    }
 
-        FiguraMod.debug("Script \"{}\" minified from {} chars to {} chars using LIGHT mode", name, script.length(), builder.length());
+    //replaces the first match of "\n*$" with a single line break
+    private static void fixTrailingNewlines(StringBuilder builder) {
+        int len = builder.length();
+        int start = -1, end = -1;
 
-        error = false;
-        return builder.toString();
+        //"$" can only match at the last 3 positions, the match starts at the line breaks before it
+        for (int q = len; q >= Math.max(len - 2, 0); q--) {
+            if (!dollar(builder, q))
+                continue;
+
+            int p = q;
+            while (p > 0 && builder.charAt(p - 1) == '\n')
+                p--;
+
+            if (start == -1 || p < start) {
+                start = p;
+                end = q;
+            }
+        }
+
+        builder.replace(start, end, "\n");
+    }
+
+    //non multiline "$" anchor
+    private static boolean dollar(CharSequence s, int i) {
+        int len = s.length();
+        if (i == len)
+            return true;
+        if (i == len - 2)
+            return s.charAt(i) == '\r' && s.charAt(i + 1) == '\n';
+        if (i == len - 1) {
+            char c = s.charAt(i);
+            if (c == '\n')
+                return i == 0 || s.charAt(i - 1) != '\r';
+            return c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+        }
+        return false;
     }
 
-    private static String aggressiveMinify(String name, String script) {
-        String start = regexMinify(name, script);
-        if (error) return start;
-        StringBuilder builder = new StringBuilder(start);
+    // -- heavy minify -- //
 
-        for (int i = 0; i < builder.length(); i++) {
-            switch (builder.charAt(i)) {
+    //light minify, then removes every whitespace that is not between two word chars
+    static String heavyMinify(String script) {
+        String start = lightMinify(script);
+        if (start == null)
+            return null;
+
+        int len = start.length();
+        StringBuilder builder = new StringBuilder(len);
+        LongBrackets brackets = new LongBrackets(start, false);
+
+        int i = 0;
+        while (i < len) {
+            char c = start.charAt(i);
+            switch (c) {
                 case '\'', '"', '[' -> {
-                    Matcher matcher = allStrings.matcher(builder);
-                    if (matcher.find(i) && matcher.start() == i)
-                        i = matcher.end() - 1;
+                    int end = c == '[' ? brackets.close(i) : stringEnd(start, i);
+                    if (end == -1)
+                        end = i + 1;
+
+                    builder.append(start, i, end);
+                    i = end;
                 }
                 case ' ', '\n' -> {
-                    Matcher matcher = whitespacePlus.matcher(builder);
-                    if (matcher.find(i) && matcher.start() == i)
-                        builder.delete(i, matcher.end()).insert(i, matcher.start() > 0 && matcher.start() + 1 < builder.length() && nameOops.matcher(builder.substring(matcher.start() - 1, matcher.start() + 1)).matches() ? " " : "");
+                    int j = i;
+                    while (j < len && (start.charAt(j) == ' ' || start.charAt(j) == '\n'))
+                        j++;
+
+                    i = j;
+                    if (builder.length() > 0 && j + 1 < len && isWordChar(builder.charAt(builder.length() - 1)) && isWordChar(start.charAt(j))) {
+                        builder.append(' ');
+                    } else if (i < len) {
+                        //the char right after a removed whitespace is kept as is
+                        builder.append(start.charAt(i++));
+                    }
                 }
                 default -> {
-                    Matcher word = words.matcher(builder);
-                    if (word.find(i) && word.start() == i)
-                        i = word.end() - 1;
+                    builder.append(c);
+                    i++;
                 }
             }
         }
 
-        FiguraMod.debug("Script \"{}\" minified from {} chars to {} chars using HEAVY mode", name, script.length(), builder.length());
         return builder.toString();
     }
+
+    // -- helpers -- //
+
+    //returns the index after the closing quote, or -1 if the string does not end on the same line
+    //escapes are not taken into account
+    private static int stringEnd(String s, int i) {
+        char quote = s.charAt(i);
+        for (int j = i + 1; j < s.length(); j++) {
+            char c = s.charAt(j);
+            if (c == quote)
+                return j + 1;
+            if (c == '\n')
+                return -1;
+        }
+        return -1;
+    }
+
+    private static int lineEnd(String s, int i) {
+        int end = s.indexOf('\n', i);
+        return end == -1 ? s.length() : end;
+    }
+
+    private static int skipBlanks(String s, int i) {
+        while (i < s.length() && (s.charAt(i) == ' ' || s.charAt(i) == '\t'))
+            i++;
+        return i;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+    }
+
+    //long brackets ([[ ]], [==[ ]==]) lookup
+    //failed searches are remembered per level, so unclosed brackets do not rescan the whole script
+    private static class LongBrackets {
+
+        private final String s;
+        private final boolean multiline;
+        private final HashMap<Integer, int[]> misses = new HashMap<>();
+
+        private LongBrackets(String s, boolean multiline) {
+            this.s = s;
+            this.multiline = multiline;
+        }
+
+        //returns the index after the closing bracket, or -1 when there is no closed long bracket at the index
+        private int close(int i) {
+            int len = s.length();
+            if (i >= len || s.charAt(i) != '[')
+                return -1;
+
+            int j = i + 1;
+            while (j < len && s.charAt(j) == '=')
+                j++;
+            if (j >= len || s.charAt(j) != '[')
+                return -1;
+
+            int level = j - i - 1;
+            int from = j + 1;
+
+            int[] miss = misses.get(level);
+            if (miss != null && from >= miss[0] && from <= miss[1])
+                return -1;
+
+            for (int k = from; k < len; k++) {
+                char c = s.charAt(k);
+                if (c == ']' && closes(k, level))
+                    return k + level + 2;
+                if (!multiline && isLineTerminator(c)) {
+                    misses.put(level, new int[]{from, k});
+                    return -1;
+                }
+            }
+
+            misses.put(level, new int[]{from, len});
+            return -1;
+        }
+
+        private boolean closes(int k, int level) {
+            int end = k + level + 1;
+            if (end >= s.length() || s.charAt(end) != ']')
+                return false;
+            for (int j = k + 1; j < end; j++) {
+                if (s.charAt(j) != '=')
+                    return false;
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package org.moon.figura.parsers;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NumericTag;
+import net.minecraft.nbt.Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * packs the geometry of every model part into a single byte array, stored under "geo"
+ * replacing the "cube_data" and "mesh_data" compounds, which need a tag for every number
+ * values are kept as floats, so packed parts render exactly like the unpacked ones
+ */
+public class PackedGeometryParser {
+
+    //bumped whenever the layout changes, the model reader skips versions it does not know
+    public static final byte VERSION = 1;
+    public static final byte CUBE = 0, MESH = 1;
+
+    //cube faces, in the same order the model reader builds them
+    public static final String[] FACES = {"n", "s", "e", "w", "u", "d"};
+
+    //cube layout:
+    //from (3 floats), to (3 floats), inflate (float), faces mask (byte)
+    //then for each face in the mask: texture (short), rotation / 90 (byte), uv (4 floats)
+
+    //mesh layout:
+    //vertex count (int), positions (3 floats each)
+    //face count (int), texture and vertex count (short each, as in the unpacked "tex")
+    //index size in bytes (byte), indices (unsigned), uvs (2 floats per index)
+
+    /**
+     * packs the geometry of the part and of all its children, in place
+     * @param part the model part nbt
+     */
+    public static void pack(CompoundTag part) throws IOException {
+        if (part.contains("cube_data", Tag.TAG_COMPOUND) && !part.getCompound("cube_data").isEmpty()) {
+            part.putByteArray("geo", packCube(part));
+            part.remove("cube_data");
+            part.remove("f");
+            part.remove("t");
+            part.remove("inf");
+        } else if (part.contains("mesh_data", Tag.TAG_COMPOUND) && !part.getCompound("mesh_data").isEmpty()) {
+            part.putByteArray("geo", packMesh(part.getCompound("mesh_data")));
+            part.remove("mesh_data");
+        }
+
+        if (part.contains("chld")) {
+            for (Tag child : part.getList("chld", Tag.TAG_COMPOUND))
+                pack((CompoundTag) child);
+        }
+    }
+
+    private static byte[] packCube(CompoundTag part) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        out.writeByte(VERSION);
+        out.writeByte(CUBE);
+
+        writeFloats(out, part, "f", 3);
+        writeFloats(out, part, "t", 3);
+        out.writeFloat(part.getFloat("inf"));
+
+        CompoundTag faces = part.getCompound("cube_data");
+        int mask = 0;
+        for (int i = 0; i < FACES.length; i++) {
+            if (faces.contains(FACES[i]))
+                mask |= 1 << i;
+        }
+        out.writeByte(mask);
+
+        for (String direction : FACES) {
+            if (!faces.contains(direction))
+                continue;
+
+            CompoundTag face = faces.getCompound(direction);
+            out.writeShort(face.getShort("tex"));
+            out.writeByte((int) (face.getFloat("rot") / 90f));
+            writeFloats(out, face, "uv", 4);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte[] packMesh(CompoundTag mesh) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        out.writeByte(VERSION);
+        out.writeByte(MESH);
+
+        //vertices
+        ListTag vtx = mesh.getList("vtx", Tag.TAG_FLOAT);
+        int vertices = vtx.size() / 3;
+        out.writeInt(vertices);
+        for (int i = 0; i < vertices * 3; i++)
+            out.writeFloat(vtx.getFloat(i));
+
+        //faces
+        ListTag tex = mesh.getList("tex", Tag.TAG_SHORT);
+        out.writeInt(tex.size());
+        for (int i = 0; i < tex.size(); i++)
+            out.writeShort(tex.getShort(i));
+
+        //indices, the unpacked list type depends on the vertex count
+        ListTag fac = mesh.get("fac") instanceof ListTag list ? list : new ListTag();
+        int mask = switch (fac.getElementType()) {
+            case Tag.TAG_BYTE -> 0xff;
+            case Tag.TAG_SHORT -> 0xffff;
+            default -> -1;
+        };
+
+        int size = vertices <= 0x100 ? 1 : vertices <= 0x10000 ? 2 : 4;
+        out.writeByte(size);
+        for (int i = 0; i < fac.size(); i++) {
+            int index = ((NumericTag) fac.get(i)).getAsInt() & mask;
+            switch (size) {
+                case 1 -> out.writeByte(index);
+                case 2 -> out.writeShort(index);
+                default -> out.writeInt(index);
+            }
+        }
+
+        //uvs
+        ListTag uvs = mesh.getList("uvs", Tag.TAG_FLOAT);
+        for (int i = 0; i < fac.size() * 2; i++)
+            out.writeFloat(uvs.getFloat(i));
+
+        return baos.toByteArray();
+    }
+
+    //writes a numeric list as floats, missing lists are written as zeros
+    private static void writeFloats(DataOutputStream out, CompoundTag nbt, String name, int count) throws IOException {
+        ListTag list = nbt.get(name) instanceof ListTag l ? l : new ListTag();
+        for (int i = 0; i < count; i++)
+            out.writeFloat(i < list.size() && list.get(i) instanceof NumericTag number ? number.getAsFloat() : 0f);
+    }
+}
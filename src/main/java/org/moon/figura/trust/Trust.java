@@ -7,9 +7,14 @@ import org.moon.figura.utils.ColorUtils;
 import org.moon.figura.utils.FiguraText;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Trust {
 
+    //every created trust, indexed by their id
+    //must be initialized before the default trusts
+    private static final List<Trust> REGISTRY = new CopyOnWriteArrayList<>();
+
     //default trusts
     public static final Trust
             INIT_INST = new Trust("INIT_INST", 0, 32767, 0, 4096, 16384, Integer.MAX_VALUE, Integer.MAX_VALUE),
@@ -60,6 +65,7 @@ public class Trust {
 
     //stuff
     public final String name;
+    public final int id;
     private final List<Integer> defaults;
 
     //toggle check
@@ -86,6 +92,20 @@ public class Trust {
         this.max = max;
         this.stepSize = stepSize;
         this.defaults = List.of(blocked, untrusted, trusted, friend, local);
+
+        synchronized (REGISTRY) {
+            this.id = REGISTRY.size();
+            REGISTRY.add(this);
+        }
+    }
+
+    //amount of created trusts, also the next id
+    public static int count() {
+        return REGISTRY.size();
+    }
+
+    public static Trust byId(int id) {
+        return REGISTRY.get(id);
     }
 
     //infinity check :p
@@ -17,6 +17,9 @@ public abstract class TrustContainer {
     private final Map<Trust, Integer> trustSettings = new HashMap<>();
     private final Map<String, Map<Trust, Integer>> customTrusts = new HashMap<>();
 
+    //resolved values, rebuilt only after this container or its parent changes
+    private volatile Snapshot snapshot;
+
     // constructors //
 
     public TrustContainer(String name) {
@@ -54,6 +57,8 @@ public abstract class TrustContainer {
 
             customTrusts.put(key, map);
         }
+
+        invalidate();
     }
 
     //write nbt
@@ -84,6 +89,38 @@ public abstract class TrustContainer {
 
     //get value from trust
     public int get(Trust trust) {
+        int[] values = getSnapshot();
+        return trust.id < values.length ? values[trust.id] : -1;
+    }
+
+    /**
+     * @return the effective value of every trust, indexed by {@link Trust#id}
+     * the array is never modified after being returned, so it is safe to read from any thread
+     */
+    public int[] getSnapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || isOutdated(snapshot))
+            this.snapshot = snapshot = resolve();
+        return snapshot.values;
+    }
+
+    protected boolean isOutdated(Snapshot snapshot) {
+        return snapshot.values.length != Trust.count();
+    }
+
+    protected Snapshot resolve() {
+        int[] values = new int[Trust.count()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = getSetting(Trust.byId(i));
+        return new Snapshot(values, null);
+    }
+
+    protected void invalidate() {
+        this.snapshot = null;
+    }
+
+    //value from this container settings only
+    private int getSetting(Trust trust) {
         //get setting
         Integer setting = this.trustSettings.get(trust);
         if (setting != null)
@@ -102,12 +139,13 @@ public abstract class TrustContainer {
     public void insert(Trust trust, Integer value, String id) {
         if (Trust.DEFAULT.contains(trust)) {
             trustSettings.put(trust, value);
-            return;
+        } else {
+            Map<Trust, Integer> map = customTrusts.getOrDefault(id, new HashMap<>());
+            map.put(trust, value);
+            customTrusts.put(id, map);
         }
 
-        Map<Trust, Integer> map = customTrusts.getOrDefault(id, new HashMap<>());
-        map.put(trust, value);
-        customTrusts.put(id, map);
+        invalidate();
     }
 
     public boolean hasChanges() {
@@ -139,12 +177,15 @@ public abstract class TrustContainer {
         trustSettings.remove(trust);
         for (Map<Trust, Integer> map : customTrusts.values())
             map.remove(trust);
+
+        invalidate();
     }
 
     //clear trust settings
     public void clear() {
         trustSettings.clear();
         customTrusts.clear();
+        invalidate();
     }
 
     public boolean isVisible() {
@@ -195,9 +236,14 @@ public abstract class TrustContainer {
         }
 
         @Override
-        public int get(Trust trust) {
-            int result = super.get(trust);
-            return result != -1 ? result : trust.getDefault(getGroup());
+        protected Snapshot resolve() {
+            Snapshot snapshot = super.resolve();
+            int[] values = snapshot.values;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == -1)
+                    values[i] = Trust.byId(i).getDefault(getGroup());
+            }
+            return snapshot;
         }
     }
 
@@ -228,6 +274,7 @@ public abstract class TrustContainer {
         @Override
         public void setParent(GroupContainer newParent) {
             this.parent = newParent;
+            invalidate();
         }
 
         @Override
@@ -242,10 +289,21 @@ public abstract class TrustContainer {
             nbt.putString("parent", parent.name);
         }
 
+        //also outdated when the parent snapshot is not the one this was built from
         @Override
-        public int get(Trust trust) {
-            int result = super.get(trust);
-            return result != -1 ? result : parent.get(trust);
+        protected boolean isOutdated(Snapshot snapshot) {
+            return super.isOutdated(snapshot) || snapshot.parent != parent.getSnapshot();
+        }
+
+        @Override
+        protected Snapshot resolve() {
+            int[] parentValues = parent.getSnapshot();
+            int[] values = super.resolve().values;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == -1 && i < parentValues.length)
+                    values[i] = parentValues[i];
+            }
+            return new Snapshot(values, parentValues);
         }
 
         @Override
@@ -253,4 +311,7 @@ public abstract class TrustContainer {
             return parent.isVisible();
         }
     }
+
+    //resolved values, along with the parent values they were built from
+    protected record Snapshot(int[] values, int[] parent) {}
 }
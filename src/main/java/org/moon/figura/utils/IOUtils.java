@@ -7,9 +7,9 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
 import org.moon.figura.FiguraMod;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -74,25 +74,19 @@ public class IOUtils {
         }
     }
 
+    //the nbt is only built and written when the save is due, see SaveScheduler
     public static void saveCacheFile(String name, Consumer<CompoundTag> consumer) {
-        try {
+        Path path = FiguraMod.getCacheDirectory().resolve(name + ".nbt");
+        SaveScheduler.INSTANCE.schedule(path, () -> {
             //get nbt
             CompoundTag nbt = new CompoundTag();
             consumer.accept(nbt);
 
-            //create file
-            Path path = FiguraMod.getCacheDirectory().resolve(name + ".nbt");
-
-            if (!Files.exists(path))
-                Files.createFile(path);
-
-            //write file
-            FileOutputStream fs = new FileOutputStream(path.toFile());
-            NbtIo.writeCompressed(nbt, fs);
-            fs.close();
-        } catch (Exception e) {
-            FiguraMod.LOGGER.error("", e);
-        }
+            //compress
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            NbtIo.writeCompressed(nbt, baos);
+            return baos.toByteArray();
+        });
     }
 
     public static <T> Set<T> loadEntryPoints(String name, Class<T> clazz) {
@@ -0,0 +1,74 @@
+package org.moon.figura.utils;
+
+import java.util.*;
+
+/**
+ * tracks which avatar owns each value, indexed both ways
+ * so removing one value, or all values of one owner, costs only what is removed
+ */
+public class OwnerIndex<T> {
+
+    private final HashMap<T, UUID> owners = new HashMap<>();
+    private final HashMap<UUID, Set<T>> owned = new HashMap<>();
+
+    public void add(UUID owner, T value) {
+        UUID old = owners.put(value, owner);
+        if (old != null)
+            removeFromOwner(old, value);
+        owned.computeIfAbsent(owner, uuid -> new HashSet<>()).add(value);
+    }
+
+    //returns if the value was tracked
+    public boolean remove(T value) {
+        UUID owner = owners.remove(value);
+        if (owner == null)
+            return false;
+
+        removeFromOwner(owner, value);
+        return true;
+    }
+
+    /**
+     * stops tracking every value of the owner
+     * @return the values that were owned
+     */
+    public Set<T> removeOwner(UUID owner) {
+        Set<T> values = owned.remove(owner);
+        if (values == null)
+            return Set.of();
+
+        for (T value : values)
+            owners.remove(value);
+        return values;
+    }
+
+    /**
+     * stops tracking everything
+     * @return every value that was tracked
+     */
+    public Set<T> clear() {
+        Set<T> values = new HashSet<>(owners.keySet());
+        owners.clear();
+        owned.clear();
+        return values;
+    }
+
+    public int count(UUID owner) {
+        Set<T> values = owned.get(owner);
+        return values == null ? 0 : values.size();
+    }
+
+    public int size() {
+        return owners.size();
+    }
+
+    private void removeFromOwner(UUID owner, T value) {
+        Set<T> values = owned.get(owner);
+        if (values == null)
+            return;
+
+        values.remove(value);
+        if (values.isEmpty())
+            owned.remove(owner);
+    }
+}
@@ -0,0 +1,172 @@
+package org.moon.figura.utils;
+
+import org.moon.figura.FiguraMod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * coalesces the mod files saves into a single background writer
+ * a file is serialized once, some ticks after its first change, with whatever state it has by then
+ * so a stream of changes, like dragging a slider, only writes the file once per delay
+ */
+public class SaveScheduler {
+
+    public static final SaveScheduler INSTANCE = new SaveScheduler();
+
+    //same logger as the mod, without loading the mod class
+    private static final Logger LOGGER = LoggerFactory.getLogger(FiguraMod.MOD_NAME);
+
+    //ticks between the first change and the write
+    static final int DELAY = 10;
+
+    //insertion ordered, so files are written in the order they were first changed
+    private final Map<Path, Save> pending = new LinkedHashMap<>();
+    private ExecutorService writer;
+    private int ticks;
+    private boolean closed;
+
+    SaveScheduler() {}
+
+    /**
+     * schedules a file to be saved
+     * once shut down, nothing ticks anymore, so the file is written right away instead
+     * @param path the file to save
+     * @param serializer called on the client thread when the save is due, returns the file contents
+     */
+    public synchronized void schedule(Path path, Callable<byte[]> serializer) {
+        if (closed) {
+            byte[] data = serialize(path, serializer);
+            if (data != null)
+                write(path, data);
+            return;
+        }
+
+        Save save = pending.get(path);
+        if (save != null)
+            save.serializer = serializer;
+        else
+            pending.put(path, new Save(serializer, ticks + DELAY));
+    }
+
+    public synchronized void tick() {
+        ticks++;
+        if (pending.isEmpty())
+            return;
+
+        Iterator<Map.Entry<Path, Save>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Save> entry = iterator.next();
+            if (ticks - entry.getValue().due < 0)
+                continue;
+
+            iterator.remove();
+            submit(entry.getKey(), entry.getValue().serializer);
+        }
+    }
+
+    /**
+     * writes every pending save and waits for the writer to finish them
+     * the writer is kept, so later saves are still written
+     */
+    public synchronized void flush() {
+        for (Map.Entry<Path, Save> entry : pending.entrySet())
+            submit(entry.getKey(), entry.getValue().serializer);
+        pending.clear();
+
+        if (writer == null)
+            return;
+
+        //the writer runs in order, so this finishes after everything submitted before it
+        try {
+            writer.submit(() -> {}).get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Timed out while saving files");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {}
+    }
+
+    /**
+     * flushes the pending saves and stops the writer, later saves are written as soon as they are scheduled
+     */
+    public synchronized void shutdown() {
+        flush();
+        closed = true;
+
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+    }
+
+    private void submit(Path path, Callable<byte[]> serializer) {
+        byte[] data = serialize(path, serializer);
+        if (data == null)
+            return;
+
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Figura Save Worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        writer.execute(() -> write(path, data));
+    }
+
+    private static byte[] serialize(Path path, Callable<byte[]> serializer) {
+        try {
+            return serializer.call();
+        } catch (Exception e) {
+            LOGGER.error("Failed to save file " + path, e);
+            return null;
+        }
+    }
+
+    //writes to a temp file first, so the old file is kept intact if the game stops mid write
+    //the temp file is synced before replacing the old one, or a crash could leave an empty file behind
+    private static void write(Path path, byte[] data) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ignored) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOGGER.debug("Saved file {}", path);
+        } catch (IOException e) {
+            LOGGER.error("Failed to save file " + path, e);
+        }
+    }
+
+    private static class Save {
+        private Callable<byte[]> serializer;
+        private final int due;
+
+        private Save(Callable<byte[]> serializer, int due) {
+            this.serializer = serializer;
+            this.due = due;
+        }
+    }
+}
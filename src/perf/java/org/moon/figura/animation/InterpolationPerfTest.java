@@ -0,0 +1,68 @@
+package org.moon.figura.animation;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.util.Mth;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.moon.figura.math.vector.FiguraVec3;
+import org.moon.figura.perf.Benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+//every playing animation samples each of its channels once per frame
+class InterpolationPerfTest {
+
+    private static final int KEYFRAMES = 64;
+    private static final int SAMPLES = 10_000;
+    private static final float LENGTH = 10f;
+
+    @ParameterizedTest
+    @EnumSource(Interpolation.class)
+    void sample(Interpolation interpolation) throws Exception {
+        Keyframe[] keyframes = keyframes(interpolation);
+        float[] times = new float[SAMPLES];
+        Random random = new Random(7);
+        for (int i = 0; i < SAMPLES; i++)
+            times[i] = random.nextFloat() * LENGTH;
+
+        for (TransformType type : new TransformType[] {TransformType.POSITION, TransformType.SCALE}) {
+            String name = "animation." + interpolation.name().toLowerCase(Locale.ROOT) + "." + type.name().toLowerCase(Locale.ROOT) + ".perSample";
+            Benchmark.measure(name, SAMPLES, () -> {
+                double sum = 0;
+                for (float time : times) {
+                    FiguraVec3 transform = sample(keyframes, time, type);
+                    sum += transform.x + transform.y + transform.z;
+                }
+                return sum;
+            });
+        }
+    }
+
+    //the same keyframe lookup and interpolation as AnimationPlayer.tick
+    private static FiguraVec3 sample(Keyframe[] keyframes, float frameTime, TransformType type) {
+        int currentIndex = Math.max(0, Mth.binarySearch(0, keyframes.length, index -> frameTime <= keyframes[index].getTime()) - 1);
+        int nextIndex = Math.min(keyframes.length - 1, currentIndex + 1);
+
+        Keyframe current = keyframes[currentIndex];
+        Keyframe next = keyframes[nextIndex];
+
+        float delta = Math.min(Math.max((frameTime - current.getTime()) / (next.getTime() - current.getTime()), 0), 1);
+        if (Float.isNaN(delta))
+            delta = 0;
+
+        return current.getInterpolation().generate(keyframes, currentIndex, nextIndex, 1f, delta, type);
+    }
+
+    //constant keyframes, the ones written as code need a lua runtime
+    private static Keyframe[] keyframes(Interpolation interpolation) {
+        Random random = new Random(3);
+        Keyframe[] keyframes = new Keyframe[KEYFRAMES];
+        for (int i = 0; i < KEYFRAMES; i++) {
+            FiguraVec3 pre = FiguraVec3.of(random.nextFloat() * 10, random.nextFloat() * 10, random.nextFloat() * 10);
+            FiguraVec3 end = FiguraVec3.of(random.nextFloat() * 10, random.nextFloat() * 10, random.nextFloat() * 10);
+            keyframes[i] = new Keyframe(null, LENGTH * i / (KEYFRAMES - 1), interpolation, Pair.of(pre, null), Pair.of(end, null));
+        }
+        return keyframes;
+    }
+}
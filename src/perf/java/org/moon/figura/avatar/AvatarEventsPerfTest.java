@@ -0,0 +1,77 @@
+package org.moon.figura.avatar;
+
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.jse.JseBaseLib;
+import org.moon.figura.lua.api.event.EventsAPI;
+import org.moon.figura.perf.Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//every loaded avatar runs its events every tick and frame
+class AvatarEventsPerfTest {
+
+    private static final int AVATARS = 100;
+    private static final int FRAMES = 100;
+
+    private static final LuaValue DELTA = LuaValue.valueOf(0.5);
+    private static final Varargs RENDER_ARGS = LuaValue.varargsOf(DELTA, LuaValue.valueOf("RENDER"));
+
+    private final Globals globals = new Globals();
+
+    AvatarEventsPerfTest() {
+        globals.load(new JseBaseLib());
+        LuaC.install(globals);
+    }
+
+    //like most avatars, only a tick function
+    @Test
+    void tickOnly() throws Exception {
+        List<EventsAPI> avatars = avatars("TICK");
+        Benchmark.measure("events.tickOnly.perAvatarFrame", AVATARS * FRAMES, () -> frames(avatars));
+    }
+
+    //avatars animating every frame
+    @Test
+    void renderAndTick() throws Exception {
+        List<EventsAPI> avatars = avatars("TICK", "RENDER", "POST_RENDER");
+        Benchmark.measure("events.renderAndTick.perAvatarFrame", AVATARS * FRAMES, () -> frames(avatars));
+    }
+
+    private List<EventsAPI> avatars(String... listening) {
+        LuaFunction function = globals.load("return function(...) calls = (calls or 0) + 1 end").call().checkfunction();
+        List<EventsAPI> avatars = new ArrayList<>();
+        for (int i = 0; i < AVATARS; i++) {
+            EventsAPI events = new EventsAPI();
+            for (String event : listening)
+                events.__index(event).register(function, null);
+            avatars.add(events);
+        }
+        return avatars;
+    }
+
+    //the events the avatar runs every tick and frame, skipping the empty ones like Avatar.run
+    private static Object frames(List<EventsAPI> avatars) {
+        Varargs last = LuaValue.NONE;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (EventsAPI events : avatars) {
+                last = run(events, "TICK", LuaValue.NONE, last);
+                last = run(events, "WORLD_TICK", LuaValue.NONE, last);
+                last = run(events, "WORLD_RENDER", DELTA, last);
+                last = run(events, "RENDER", RENDER_ARGS, last);
+                last = run(events, "POST_RENDER", RENDER_ARGS, last);
+                last = run(events, "POST_WORLD_RENDER", DELTA, last);
+            }
+        }
+        return last;
+    }
+
+    private static Varargs run(EventsAPI events, String event, Varargs args, Varargs last) {
+        return AvatarEvents.hasListeners(events, event) ? AvatarEvents.call(events, event, args) : last;
+    }
+}
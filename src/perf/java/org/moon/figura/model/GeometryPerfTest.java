@@ -0,0 +1,74 @@
+package org.moon.figura.model;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import org.junit.jupiter.api.Test;
+import org.moon.figura.parsers.PackedGeometryParser;
+import org.moon.figura.perf.Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//every avatar someone downloads is decompressed, parsed as nbt and has its geometry read
+class GeometryPerfTest {
+
+    private static final CompoundTag MODEL = GeneratedModels.model(20, 20, 200, 11);
+    private static final int PARTS = GeneratedModels.countParts(MODEL);
+
+    @Test
+    void readNbt() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(MODEL, out);
+        byte[] compressed = out.toByteArray();
+
+        CompoundTag packed = MODEL.copy();
+        PackedGeometryParser.pack(packed);
+        out.reset();
+        NbtIo.writeCompressed(packed, out);
+        byte[] compressedPacked = out.toByteArray();
+
+        Benchmark.measure("nbt.read.unpacked.perPart", PARTS, () -> NbtIo.readCompressed(new ByteArrayInputStream(compressed)));
+        Benchmark.measure("nbt.read.packed.perPart", PARTS, () -> NbtIo.readCompressed(new ByteArrayInputStream(compressedPacked)));
+    }
+
+    @Test
+    void readGeometry() throws Exception {
+        CompoundTag packed = MODEL.copy();
+        PackedGeometryParser.pack(packed);
+
+        Benchmark.measure("geometry.read.unpacked.perPart", PARTS, () -> GeneratedModels.read(MODEL));
+        Benchmark.measure("geometry.read.packed.perPart", PARTS, () -> GeneratedModels.read(packed));
+    }
+
+    //what a downloaded avatar goes through, from the compressed nbt to the vertex buffers
+    @Test
+    void packedDecodesFaster() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(MODEL, out);
+        byte[] compressed = out.toByteArray();
+
+        CompoundTag packed = MODEL.copy();
+        PackedGeometryParser.pack(packed);
+        out.reset();
+        NbtIo.writeCompressed(packed, out);
+        byte[] compressedPacked = out.toByteArray();
+
+        double unpackedTime = Benchmark.time(PARTS, () -> GeneratedModels.read(NbtIo.readCompressed(new ByteArrayInputStream(compressed))));
+        double packedTime = Benchmark.time(PARTS, () -> GeneratedModels.read(NbtIo.readCompressed(new ByteArrayInputStream(compressedPacked))));
+        System.out.printf("decode: %d bytes in %.1f ns/part unpacked, %d bytes in %.1f ns/part packed%n", compressed.length, unpackedTime, compressedPacked.length, packedTime);
+
+        assertTrue(compressedPacked.length < compressed.length);
+        assertTrue(packedTime < unpackedTime, String.format("packed geometry decoded in %.1f ns/part, unpacked in %.1f", packedTime, unpackedTime));
+    }
+
+    @Test
+    void pack() throws Exception {
+        Benchmark.measure("geometry.pack.perPart", PARTS, () -> {
+            CompoundTag copy = MODEL.copy();
+            PackedGeometryParser.pack(copy);
+            return copy;
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package org.moon.figura.parsers;
+
+import org.junit.jupiter.api.Test;
+import org.moon.figura.perf.Benchmark;
+
+import java.util.Random;
+
+//scripts are minified on every avatar upload, with the bigger avatars having hundreds of kilobytes of lua
+class LuaScriptParserPerfTest {
+
+    private static final String SCRIPT = script(200_000);
+
+    @Test
+    void lightMinify() throws Exception {
+        Benchmark.measure("parser.lightMinify.perChar", SCRIPT.length(), () -> LuaScriptParser.lightMinify(SCRIPT));
+    }
+
+    @Test
+    void heavyMinify() throws Exception {
+        Benchmark.measure("parser.heavyMinify.perChar", SCRIPT.length(), () -> LuaScriptParser.heavyMinify(SCRIPT));
+    }
+
+    //the same avatar-like code as the parser tests
+    private static String script(int size) {
+        String[] lines = {
+                "local value_%d = math.max(%d, 2) * 0.5 -- comment %d\n",
+                "\tif value_%d ~= %d then print(\"string %d -- not a comment\") end\n",
+                "--[[ block comment %d\n  spanning %d lines %d ]]\n",
+                "local text_%d = [==[ long %d\nstring %d ]==]\n",
+                "    models.model.Part_%d:setPos(%d, 'x', %d)   \n",
+                "\n\n",
+        };
+
+        Random random = new Random(1234);
+        StringBuilder builder = new StringBuilder(size + 100);
+        for (int i = 0; builder.length() < size; i++)
+            builder.append(lines[random.nextInt(lines.length)].formatted(i, i, i));
+        return builder.toString();
+    }
+}
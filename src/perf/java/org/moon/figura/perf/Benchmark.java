@@ -0,0 +1,127 @@
+package org.moon.figura.perf;
+
+import org.junit.jupiter.api.Assumptions;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * times pieces of code and checks them against the recorded baseline
+ * the baseline is in nanoseconds per operation, one line per benchmark
+ * a benchmark fails when it is slower than its baseline by more than the tolerance,
+ * and is skipped when it has no baseline yet
+ * the properties are set by the perfTest gradle task
+ */
+public final class Benchmark {
+
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("figura.perf.tolerance", "0.5"));
+    private static final boolean UPDATE = Boolean.getBoolean("figura.perf.update");
+    private static final Path BASELINE = Path.of(System.getProperty("figura.perf.baseline", "src/perf/resources/perf-baseline.properties"));
+    private static final Path RESULTS = Path.of(System.getProperty("figura.perf.results", "build/perf/results.properties"));
+
+    private static final long WARMUP_NANOS = Long.getLong("figura.perf.warmupMillis", 1000) * 1_000_000L;
+    private static final int ROUNDS = Integer.getInteger("figura.perf.rounds", 20);
+
+    private static final Map<String, Double> baseline = load(BASELINE);
+    private static final Map<String, Double> results = new TreeMap<>();
+
+    //keeps the results alive, so the jit can not remove the timed code
+    private static volatile Object sink;
+
+    public interface Op {
+        Object run() throws Exception;
+    }
+
+    private Benchmark() {}
+
+    /**
+     * runs the op for a while to let the jit settle, then keeps the fastest of the timed rounds
+     * @param ops how many operations one run of the op does
+     * @return the nanoseconds per operation
+     */
+    public static double measure(String name, int ops, Op op) throws Exception {
+        double nsPerOp = time(ops, op);
+        record(name, nsPerOp);
+        return nsPerOp;
+    }
+
+    /**
+     * times the op like {@link #measure}, without checking it against the baseline
+     * for comparing two ways of doing the same thing
+     * @return the nanoseconds per operation
+     */
+    public static double time(int ops, Op op) throws Exception {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        do {
+            sink = op.run();
+        } while (System.nanoTime() < warmupEnd);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink = op.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return (double) best / ops;
+    }
+
+    private static synchronized void record(String name, double nsPerOp) throws IOException {
+        results.put(name, nsPerOp);
+        store(RESULTS, results);
+
+        Double expected = baseline.get(name);
+        if (UPDATE) {
+            baseline.put(name, nsPerOp);
+            store(BASELINE, baseline);
+            System.out.printf("%s: %.1f ns/op, recorded as the new baseline%n", name, nsPerOp);
+            return;
+        }
+
+        if (expected == null) {
+            System.out.printf("%s: %.1f ns/op, no baseline%n", name, nsPerOp);
+            Assumptions.abort(name + " has no baseline, record one with -PperfUpdate");
+        }
+
+        double limit = expected * (1 + TOLERANCE);
+        System.out.printf("%s: %.1f ns/op, baseline %.1f ns/op (%+.0f%%)%n", name, nsPerOp, expected, (nsPerOp / expected - 1) * 100);
+        assertTrue(nsPerOp <= limit, String.format("%s regressed: %.1f ns/op, over the limit of %.1f ns/op (baseline %.1f ns/op, tolerance %.0f%%)", name, nsPerOp, limit, expected, TOLERANCE * 100));
+    }
+
+    private static Map<String, Double> load(Path path) {
+        Map<String, Double> map = new TreeMap<>();
+        if (!Files.exists(path))
+            return map;
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the perf baseline " + path, e);
+        }
+        for (String key : properties.stringPropertyNames())
+            map.put(key, Double.parseDouble(properties.getProperty(key)));
+        return map;
+    }
+
+    //sorted, so baseline updates make small diffs
+    private static void store(Path path, Map<String, Double> map) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("#nanoseconds per operation\n");
+            for (Map.Entry<String, Double> entry : map.entrySet())
+                writer.write(String.format(Locale.ROOT, "%s=%.1f%n", entry.getKey(), entry.getValue()));
+        }
+    }
+}
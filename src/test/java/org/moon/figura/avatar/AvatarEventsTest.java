@@ -0,0 +1,207 @@
+package org.moon.figura.avatar;
+
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.jse.CoerceJavaToLua;
+import org.luaj.vm2.lib.jse.JseBaseLib;
+import org.moon.figura.lua.api.event.EventsAPI;
+import org.moon.figura.lua.api.event.LuaEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//avatars run events every tick and frame, but most of them only listen to a few
+class AvatarEventsTest {
+
+    //the events read as "cancel the vanilla behaviour", with arguments like the avatar sends them
+    private static final Object[][] CANCELLABLE = {
+            {"SKULL_RENDER", 0.5f, null, null, null, "BLOCK"},
+            {"USE_ITEM", null, "EAT", 5},
+            {"MOUSE_SCROLL", 1d},
+            {"MOUSE_MOVE", 12d, -3d},
+            {"MOUSE_PRESS", 0, 1, 0},
+            {"KEY_PRESS", 65, 1, 0}
+    };
+
+    private static final int AVATARS = 100;
+    private static final int FRAMES = 200;
+    private static final int ROUNDS = 5;
+
+    private final Globals globals = new Globals();
+
+    AvatarEventsTest() {
+        globals.load(new JseBaseLib());
+        LuaC.install(globals);
+    }
+
+    @Test
+    void skipsEventsWithoutListeners() {
+        EventsAPI events = new EventsAPI();
+        for (LuaEvent event : events.getEvents())
+            assertFalse(AvatarEvents.hasListeners(events, event));
+        assertFalse(AvatarEvents.hasListeners(events, "NOT_AN_EVENT"));
+
+        for (Object[] event : CANCELLABLE) {
+            String name = (String) event[0];
+            assertFalse(AvatarEvents.hasListeners(events, name), name);
+            assertNull(run(events, true, event), name);
+
+            //skipping reads the same as calling the empty event
+            assertFalse(AvatarEvents.isTrue(run(events, false, event)), name);
+            assertFalse(AvatarEvents.isTrue(run(events, true, event)), name);
+        }
+
+        for (boolean canModify : new boolean[] {true, false}) {
+            assertNull(run(events, true, "CHAT_SEND_MESSAGE", "hello"));
+            assertEquals("hello", chat(events, false, "hello", canModify));
+            assertEquals("hello", chat(events, true, "hello", canModify));
+        }
+    }
+
+    @Test
+    void functionsAlwaysCount() {
+        EventsAPI events = new EventsAPI();
+        assertTrue(AvatarEvents.hasListeners(events, function("return true")));
+    }
+
+    @Test
+    void keepsTheCancellableResults() {
+        String[][] scenarios = {
+                {"return true"},
+                {"return false"},
+                {"return nil"},
+                {"return 1"},
+                {"return 'true'"},
+                {"return false", "return true", "return nil"},
+                {"return true", "return false"},
+                {"return ..."}
+        };
+
+        for (String[] scenario : scenarios) {
+            for (Object[] event : CANCELLABLE) {
+                String name = (String) event[0];
+                EventsAPI events = new EventsAPI();
+                for (String src : scenario)
+                    events.__index(name).register(function(src), null);
+
+                //listening to another event does not change anything
+                events.TICK.register(function("return true"), null);
+
+                boolean expected = AvatarEvents.isTrue(run(events, false, event));
+                assertTrue(AvatarEvents.hasListeners(events, name), name);
+                assertEquals(expected, AvatarEvents.isTrue(run(events, true, event)), name + " " + String.join(", ", scenario));
+                assertEquals(List.of(scenario).contains("return true"), expected, name + " " + String.join(", ", scenario));
+
+                for (Object[] other : CANCELLABLE) {
+                    if (other != event)
+                        assertNull(run(events, true, other), other[0] + " with " + name + " listening");
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsTheChatMessages() {
+        Object[][] scenarios = {
+                {"hello", "hello", "return ..."},
+                {"hey hello", "hello", "return 'hey ' .. ..."},
+                {"", "hello", "return nil"},
+                {"hey hello!", "hello", "return 'hey ' .. ...", "return ... .. '!'"},
+                {"", "hello", "return 'hey ' .. ...", "return nil"},
+                {"42", "hello", "return 42"}
+        };
+
+        for (Object[] scenario : scenarios) {
+            EventsAPI events = new EventsAPI();
+            for (int i = 2; i < scenario.length; i++)
+                events.CHAT_SEND_MESSAGE.register(function((String) scenario[i]), null);
+            String message = (String) scenario[1];
+
+            for (boolean canModify : new boolean[] {true, false}) {
+                String expected = chat(events, false, message, canModify);
+                assertEquals(expected, chat(events, true, message, canModify));
+
+                //only cancelling goes through when messages can not be modified
+                String result = (String) scenario[0];
+                assertEquals(canModify || result.isEmpty() ? result : message, expected);
+            }
+        }
+    }
+
+    @Test
+    void hundredAvatarsListeningToTick() {
+        //like most avatars, each one only registers a tick function
+        List<EventsAPI> avatars = new ArrayList<>();
+        LuaFunction tick = function("ticks = (ticks or 0) + 1");
+        for (int i = 0; i < AVATARS; i++) {
+            EventsAPI events = new EventsAPI();
+            events.TICK.register(tick, null);
+            avatars.add(events);
+        }
+
+        //warm up both paths first
+        frames(avatars, false);
+        frames(avatars, true);
+
+        long dispatched = Long.MAX_VALUE, skipped = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            dispatched = Math.min(dispatched, frames(avatars, false));
+            skipped = Math.min(skipped, frames(avatars, true));
+        }
+
+        //skipping never drops a tick
+        assertEquals((2 + ROUNDS * 2) * FRAMES * AVATARS, globals.get("ticks").toint());
+
+        System.out.printf("%d frames of %d avatars listening to TICK: %.2fms calling every event, %.2fms skipping the empty ones%n", FRAMES, AVATARS, dispatched / 1e6, skipped / 1e6);
+        assertTrue(skipped < dispatched, "skipping took " + skipped + "ns, calling every event took " + dispatched + "ns");
+    }
+
+    //the events the avatar runs every tick and frame
+    private static long frames(List<EventsAPI> avatars, boolean skip) {
+        long start = System.nanoTime();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (EventsAPI events : avatars) {
+                run(events, skip, "TICK");
+                run(events, skip, "WORLD_TICK");
+                run(events, skip, "WORLD_RENDER", 0.5f);
+                run(events, skip, "RENDER", 0.5f, "RENDER");
+                run(events, skip, "POST_RENDER", 0.5f, "RENDER");
+                run(events, skip, "POST_WORLD_RENDER", 0.5f);
+                run(events, skip, "MOUSE_MOVE", 12d, -3d);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Varargs run(EventsAPI events, boolean skip, Object[] event) {
+        Object[] args = new Object[event.length - 1];
+        System.arraycopy(event, 1, args, 0, args.length);
+        return run(events, skip, (String) event[0], args);
+    }
+
+    //the same steps as Avatar.run, with or without skipping the events nothing listens to
+    private static Varargs run(EventsAPI events, boolean skip, String event, Object... args) {
+        if (skip && !AvatarEvents.hasListeners(events, event))
+            return null;
+
+        LuaValue[] values = new LuaValue[args.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = CoerceJavaToLua.coerce(args[i]);
+
+        return AvatarEvents.call(events, event, LuaValue.varargsOf(values));
+    }
+
+    private static String chat(EventsAPI events, boolean skip, String message, boolean canModify) {
+        return AvatarEvents.chatMessage(message, run(events, skip, "CHAT_SEND_MESSAGE", message), canModify);
+    }
+
+    private LuaFunction function(String src) {
+        return globals.load("return function(...) " + src + " end").call().checkfunction();
+    }
+}
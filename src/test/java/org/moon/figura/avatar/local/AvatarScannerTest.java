@@ -0,0 +1,151 @@
+package org.moon.figura.avatar.local;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the wardrobe rescans the avatar directory every second while it is open
+class AvatarScannerTest {
+
+    private static final int FOLDERS = 40;
+    private static final int AVATARS_PER_FOLDER = 75;
+    private static final int AVATARS = FOLDERS * AVATARS_PER_FOLDER;
+
+    private sealed interface Entry permits Avatar, Folder {}
+    private record Avatar(Path path) implements Entry {}
+    private record Folder(Path path, List<Entry> children) implements Entry {}
+
+    @TempDir
+    Path root;
+
+    private int reads;
+    private AvatarScanner<Entry> scanner;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        scanner = new AvatarScanner<>(path -> {
+            reads++;
+            return new Avatar(path);
+        }, Folder::new);
+
+        //nested folders of avatars, plus things that are not avatars
+        for (int i = 0; i < FOLDERS; i++) {
+            Path folder = root.resolve("group " + i).resolve("nested");
+            for (int j = 0; j < AVATARS_PER_FOLDER; j++)
+                avatar(folder.resolve("avatar " + j));
+        }
+        Files.createDirectories(root.resolve("empty").resolve("still empty"));
+        Files.writeString(root.resolve("notes.txt"), "not an avatar");
+        Files.createDirectories(root.resolve("fake").resolve("avatar.json"));
+    }
+
+    @Test
+    void findsEveryAvatar() {
+        List<Entry> entries = assertTimeout(Duration.ofSeconds(10), () -> scanner.scan(root, false));
+
+        assertEquals(AVATARS, avatars(entries).size());
+        assertEquals(AVATARS, reads);
+
+        //only folders with avatars inside are kept
+        assertEquals(FOLDERS, entries.size());
+        for (Entry entry : entries) {
+            Folder group = assertInstanceOf(Folder.class, entry);
+            Folder nested = assertInstanceOf(Folder.class, group.children().get(0));
+            assertEquals(AVATARS_PER_FOLDER, nested.children().size());
+        }
+    }
+
+    @Test
+    void reusesUnchangedAvatars() throws IOException {
+        Set<Entry> first = identitySet(avatars(scanner.scan(root, false)));
+        reads = 0;
+
+        //nothing changed, nothing is read
+        Set<Entry> second = identitySet(avatars(scanner.scan(root, false)));
+        assertEquals(0, reads);
+        assertEquals(first, second);
+
+        //only the edited avatar is read again
+        Path edited = root.resolve("group 3").resolve("nested").resolve("avatar 7");
+        Files.setLastModifiedTime(edited.resolve("avatar.json"), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        List<Avatar> third = avatars(scanner.scan(root, false));
+        assertEquals(1, reads);
+        for (Avatar avatar : third)
+            assertEquals(!avatar.path().equals(edited), second.contains(avatar), avatar.path().toString());
+    }
+
+    @Test
+    void picksUpAddedAndRemovedAvatars() throws IOException {
+        scanner.scan(root, false);
+        reads = 0;
+
+        avatar(root.resolve("new"));
+        Path removed = root.resolve("group 0").resolve("nested").resolve("avatar 0");
+        Files.delete(removed.resolve("avatar.json"));
+        Files.delete(removed);
+
+        List<Avatar> avatars = avatars(scanner.scan(root, false));
+        assertEquals(1, reads);
+        assertEquals(AVATARS, avatars.size());
+        assertTrue(avatars.stream().anyMatch(avatar -> avatar.path().equals(root.resolve("new"))));
+        assertTrue(avatars.stream().noneMatch(avatar -> avatar.path().equals(removed)));
+    }
+
+    @Test
+    void readsEverythingAfterClearing() {
+        scanner.scan(root, false);
+        reads = 0;
+
+        scanner.clear();
+        scanner.scan(root, false);
+        assertEquals(AVATARS, reads);
+    }
+
+    @Test
+    void onlyCountsMoonFilesWhenAsked() throws IOException {
+        Files.writeString(root.resolve("cached.moon"), "");
+
+        assertEquals(AVATARS, avatars(scanner.scan(root, false)).size());
+        assertEquals(AVATARS + 1, avatars(scanner.scan(root, true)).size());
+    }
+
+    @Test
+    void publishesImmutableLists() {
+        List<Entry> entries = scanner.scan(root, false);
+        assertThrows(UnsupportedOperationException.class, () -> entries.add(new Avatar(root)));
+        Folder folder = (Folder) entries.get(0);
+        assertThrows(UnsupportedOperationException.class, () -> folder.children().clear());
+    }
+
+    private static void avatar(Path path) throws IOException {
+        Files.createDirectories(path);
+        Files.writeString(path.resolve("avatar.json"), "{}");
+    }
+
+    private static List<Avatar> avatars(List<Entry> entries) {
+        List<Avatar> avatars = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry instanceof Avatar avatar)
+                avatars.add(avatar);
+            else if (entry instanceof Folder folder)
+                avatars.addAll(avatars(folder.children()));
+        }
+        return avatars;
+    }
+
+    //the records compare by path, but reuse means the very same instance
+    private static Set<Entry> identitySet(Collection<? extends Entry> entries) {
+        Set<Entry> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(entries);
+        return set;
+    }
+}
@@ -0,0 +1,536 @@
+package org.moon.figura.backend2;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.moon.figura.backend2.websocket.C2SMessageHandler;
+import org.moon.figura.backend2.websocket.S2CMessageHandler;
+import org.moon.figura.utils.RefilledNumber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * an in memory stand-in for the backend, with the http api and websocket protocol the client speaks
+ * latency, bandwidth and failures can be injected, and the backend limits are enforced like the real one
+ * it only listens on the loopback address, over plain http and ws
+ */
+class StandInBackend implements AutoCloseable {
+
+    static class Settings {
+        int latencyMillis; //before every response and relayed message
+        int bytesPerSecond; //of every response body, 0 is unlimited
+        double errorRate; //chance of a request failing with a 500, a 503 or a dropped connection
+        long seed = 1;
+
+        int httpThreads = 8;
+        int httpQueue = 64; //requests waiting for a thread, the acceptor waits when it is full
+
+        //the limits the real backend reports, per user
+        int maxAvatarSize = 100_000;
+        int uploadRate = 5, downloadRate = 50; //requests per second
+        int pingSize = 1024, pingRate = 32; //bytes per ping, pings per second
+
+        int maxOutgoing = 128; //messages waiting for a slow client, newer ones are dropped
+
+        Settings latency(int millis) { latencyMillis = millis; return this; }
+        Settings bandwidth(int bytesPerSecond) { this.bytesPerSecond = bytesPerSecond; return this; }
+        Settings errors(double rate) { errorRate = rate; return this; }
+        Settings outgoing(int max) { maxOutgoing = max; return this; }
+        Settings pingRate(int rate) { pingRate = rate; return this; }
+        Settings uploadRate(int rate) { uploadRate = rate; return this; }
+    }
+
+    //what happened, for the tests to check
+    static class Stats {
+        final AtomicLong requests = new AtomicLong(), injectedErrors = new AtomicLong(), rateLimited = new AtomicLong();
+        final AtomicLong pingsReceived = new AtomicLong(), pingsRelayed = new AtomicLong(), pingsRejected = new AtomicLong(), messagesDropped = new AtomicLong();
+        final AtomicInteger maxHttpQueue = new AtomicInteger(), maxOutgoing = new AtomicInteger(), maxRelayQueue = new AtomicInteger();
+    }
+
+    record User(UUID id, String token) {}
+
+    private record Equipped(UUID owner, String id) {}
+
+    private static class Account {
+        final UUID id;
+        final Map<String, byte[]> avatars = new ConcurrentHashMap<>();
+        volatile List<Equipped> equipped = List.of();
+        final RefilledNumber uploads, downloads, pings;
+
+        Account(UUID id, Settings settings) {
+            this.id = id;
+            this.uploads = new RefilledNumber(settings.uploadRate);
+            this.downloads = new RefilledNumber(settings.downloadRate);
+            this.pings = new RefilledNumber(settings.pingRate);
+        }
+
+        synchronized boolean use(RefilledNumber limit) {
+            return limit.use();
+        }
+
+        synchronized void tick() {
+            uploads.tick();
+            downloads.tick();
+            pings.tick();
+        }
+    }
+
+    private static class Session {
+        volatile UUID user;
+        final Set<UUID> subscriptions = ConcurrentHashMap.newKeySet();
+    }
+
+    final Settings settings;
+    final Stats stats = new Stats();
+
+    private final Random random;
+    private final Map<String, UUID> tokens = new ConcurrentHashMap<>();
+    private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<WebSocket>> subscribers = new ConcurrentHashMap<>();
+
+    private final HttpServer http;
+    private final ThreadPoolExecutor httpPool;
+    private final Sockets ws;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledThreadPoolExecutor relay = new ScheduledThreadPoolExecutor(2);
+
+    StandInBackend(Settings settings) throws IOException, InterruptedException {
+        this.settings = settings;
+        this.random = new Random(settings.seed);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        httpPool = new ThreadPoolExecutor(settings.httpThreads, settings.httpThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(settings.httpQueue), new ThreadPoolExecutor.CallerRunsPolicy());
+        http = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        http.createContext("/api/", this::handle);
+        http.setExecutor(httpPool);
+        http.start();
+
+        ws = new Sockets(new InetSocketAddress(loopback, 0));
+        ws.setReuseAddr(true);
+        ws.start();
+        if (!ws.started.await(5, TimeUnit.SECONDS))
+            throw new IOException("Websocket server did not start");
+
+        //limits refill every tick, like the client ones
+        ticker.scheduleAtFixedRate(() -> accounts.values().forEach(Account::tick), 50, 50, TimeUnit.MILLISECONDS);
+    }
+
+    String apiAddress() {
+        return "http://" + http.getAddress().getHostString() + ":" + http.getAddress().getPort() + "/api";
+    }
+
+    String wsAddress() {
+        return "ws://" + ws.getAddress().getHostString() + ":" + ws.getPort() + "/ws";
+    }
+
+    //a new account, with a random v4 id, as the clients void requests for anything else
+    User addUser() {
+        UUID id = UUID.randomUUID();
+        String token = UUID.randomUUID().toString().replace("-", "");
+        accounts.put(id, new Account(id, settings));
+        tokens.put(token, id);
+        return new User(id, token);
+    }
+
+    long storedBytes() {
+        long total = 0;
+        for (Account account : accounts.values())
+            for (byte[] avatar : account.avatars.values())
+                total += avatar.length;
+        return total;
+    }
+
+    int subscriptions() {
+        int total = 0;
+        for (Set<WebSocket> set : subscribers.values())
+            total += set.size();
+        return total;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        ticker.shutdownNow();
+        relay.shutdownNow();
+        ws.stop(1000);
+        http.stop(0);
+        httpPool.shutdownNow();
+    }
+
+
+    // -- http -- //
+
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            stats.requests.incrementAndGet();
+            stats.maxHttpQueue.accumulateAndGet(httpPool.getQueue().size(), Math::max);
+            sleep(settings.latencyMillis);
+
+            //injected failures, as a busy or broken backend would answer
+            int failure = nextFailure();
+            if (failure >= 0) {
+                stats.injectedErrors.incrementAndGet();
+                switch (failure) {
+                    case 0 -> respond(exchange, 500, "injected error");
+                    case 1 -> respond(exchange, 503, "injected overload");
+                    default -> {} //closed without an answer
+                }
+                return;
+            }
+
+            UUID user = tokens.get(Objects.requireNonNullElse(exchange.getRequestHeaders().getFirst("token"), ""));
+            if (user == null) {
+                respond(exchange, 401, "unauthorized");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath().substring("/api/".length());
+            String[] parts = path.isEmpty() ? new String[0] : path.split("/");
+            String method = exchange.getRequestMethod();
+            Account account = accounts.get(user);
+
+            if (parts.length == 0) {
+                respond(exchange, 200, "ok");
+            } else if (parts.length == 1 && method.equals("GET")) {
+                switch (parts[0]) {
+                    case "version" -> respond(exchange, 200, "{\"release\":\"0.0.0\",\"prerelease\":\"0.0.0\"}");
+                    case "motd" -> respond(exchange, 200, "stand-in backend");
+                    case "limits" -> respond(exchange, 200, limits());
+                    default -> getUser(exchange, parts[0]);
+                }
+            } else if (parts.length == 1 && method.equals("PUT")) {
+                upload(exchange, account, parts[0]);
+            } else if (parts.length == 1 && method.equals("DELETE")) {
+                respond(exchange, account.avatars.remove(parts[0]) != null ? 200 : 404, "");
+            } else if (parts.length == 1 && method.equals("POST") && parts[0].equals("equip")) {
+                equip(exchange, account);
+            } else if (parts.length == 2 && method.equals("GET")) {
+                download(exchange, account, parts[0], parts[1]);
+            } else {
+                respond(exchange, 404, "not found");
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String limits() {
+        JsonObject rate = new JsonObject();
+        rate.addProperty("upload", settings.uploadRate);
+        rate.addProperty("download", settings.downloadRate);
+        rate.addProperty("pingSize", settings.pingSize);
+        rate.addProperty("pingRate", settings.pingRate);
+
+        JsonObject limits = new JsonObject();
+        limits.addProperty("maxAvatarSize", settings.maxAvatarSize);
+
+        JsonObject json = new JsonObject();
+        json.add("rate", rate);
+        json.add("limits", limits);
+        return json.toString();
+    }
+
+    private void getUser(HttpExchange exchange, String id) throws IOException {
+        Account account = accounts.get(UUID.fromString(id));
+        if (account == null) {
+            respond(exchange, 404, "user not found");
+            return;
+        }
+
+        JsonArray equipped = new JsonArray();
+        for (Equipped avatar : account.equipped) {
+            Account owner = accounts.get(avatar.owner());
+            byte[] data = owner == null ? null : owner.avatars.get(avatar.id());
+            if (data == null)
+                continue;
+
+            JsonObject entry = new JsonObject();
+            entry.addProperty("owner", avatar.owner().toString());
+            entry.addProperty("id", avatar.id());
+            entry.addProperty("hash", hash(data));
+            equipped.add(entry);
+        }
+
+        JsonObject badges = new JsonObject();
+        badges.add("pride", new JsonArray());
+        badges.add("special", new JsonArray());
+
+        JsonObject json = new JsonObject();
+        json.addProperty("uuid", account.id.toString());
+        json.add("equipped", equipped);
+        json.add("equippedBadges", badges);
+        respond(exchange, 200, json.toString());
+    }
+
+    private void upload(HttpExchange exchange, Account account, String id) throws IOException {
+        if (!account.use(account.uploads)) {
+            stats.rateLimited.incrementAndGet();
+            respond(exchange, 429, "too many uploads");
+            return;
+        }
+
+        //never reads more than the limit, however big the upload is
+        byte[] data;
+        try (InputStream body = exchange.getRequestBody()) {
+            data = body.readNBytes(settings.maxAvatarSize + 1);
+        }
+        if (data.length > settings.maxAvatarSize) {
+            respond(exchange, 413, "avatar too big");
+            return;
+        }
+
+        account.avatars.put(id, data);
+        respond(exchange, 200, "");
+        notifyEquipped(account.id);
+    }
+
+    private void equip(HttpExchange exchange, Account account) throws IOException {
+        JsonElement json;
+        try (InputStream body = exchange.getRequestBody()) {
+            json = JsonParser.parseString(new String(body.readNBytes(settings.maxAvatarSize), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid json");
+        }
+
+        List<Equipped> equipped = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray()) {
+            JsonObject entry = element.getAsJsonObject();
+            equipped.add(new Equipped(UUID.fromString(entry.get("owner").getAsString()), entry.get("id").getAsString()));
+        }
+
+        account.equipped = List.copyOf(equipped);
+        respond(exchange, 200, "");
+        notifyEquipped(account.id);
+    }
+
+    private void download(HttpExchange exchange, Account account, String owner, String id) throws IOException {
+        if (!account.use(account.downloads)) {
+            stats.rateLimited.incrementAndGet();
+            respond(exchange, 429, "too many downloads");
+            return;
+        }
+
+        Account target = accounts.get(UUID.fromString(owner));
+        byte[] data = target == null ? null : target.avatars.get(id);
+        if (data == null)
+            respond(exchange, 404, "avatar not found");
+        else
+            respond(exchange, 200, data);
+    }
+
+    private void respond(HttpExchange exchange, int code, String body) throws IOException {
+        respond(exchange, code, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //bodies are written in ticks worth of bytes, to stay under the bandwidth
+    //empty ones go out chunked, as the server drops the connection after a response sent without a body
+    private void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            int chunk = settings.bytesPerSecond > 0 ? Math.max(1, settings.bytesPerSecond / 20) : body.length;
+            for (int i = 0; i < body.length; i += chunk) {
+                if (i > 0)
+                    sleep(50);
+                out.write(body, i, Math.min(chunk, body.length - i));
+                out.flush();
+            }
+        }
+    }
+
+    //-1 for no failure, else which one
+    private int nextFailure() {
+        synchronized (random) {
+            return random.nextDouble() < settings.errorRate ? random.nextInt(3) : -1;
+        }
+    }
+
+
+    // -- websocket -- //
+
+
+    private class Sockets extends WebSocketServer {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        Sockets(InetSocketAddress address) {
+            super(address, 2);
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            conn.setAttachment(new Session());
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            Session session = conn.getAttachment();
+            if (session == null)
+                return;
+            for (UUID id : session.subscriptions)
+                unsubscribe(conn, id);
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            conn.close(1003, "Unsupported Data");
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, ByteBuffer bytes) {
+            Session session = conn.getAttachment();
+            if (!bytes.hasRemaining())
+                return;
+
+            byte type = bytes.get();
+            if (type == C2SMessageHandler.TOKEN) {
+                UUID user = tokens.get(StandardCharsets.UTF_8.decode(bytes).toString());
+                if (user == null) {
+                    conn.close(3000, "Unauthorized");
+                    return;
+                }
+                session.user = user;
+                conn.send(new byte[] {S2CMessageHandler.AUTH});
+                return;
+            }
+
+            if (session.user == null) {
+                conn.close(3000, "Unauthorized");
+                return;
+            }
+
+            switch (type) {
+                case C2SMessageHandler.PING -> ping(session.user, bytes);
+                case C2SMessageHandler.SUB -> {
+                    UUID id = new UUID(bytes.getLong(), bytes.getLong());
+                    if (session.subscriptions.add(id))
+                        subscribers.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(conn);
+                }
+                case C2SMessageHandler.UNSUB -> {
+                    UUID id = new UUID(bytes.getLong(), bytes.getLong());
+                    if (session.subscriptions.remove(id))
+                        unsubscribe(conn, id);
+                }
+                default -> conn.close(1003, "Unsupported Data");
+            }
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {}
+
+        private void ping(UUID user, ByteBuffer bytes) {
+            stats.pingsReceived.incrementAndGet();
+            int id = bytes.getInt();
+            boolean sync = bytes.get() != 0;
+            byte[] data = new byte[bytes.remaining()];
+            bytes.get(data);
+
+            //over the limits the ping is dropped, and the sender told why
+            Account account = accounts.get(user);
+            int notice = data.length > settings.pingSize ? 0 : !account.use(account.pings) ? 1 : -1;
+            if (notice >= 0) {
+                stats.pingsRejected.incrementAndGet();
+                for (WebSocket conn : getConnections()) {
+                    Session session = conn.getAttachment();
+                    if (session != null && user.equals(session.user))
+                        deliver(conn, new byte[] {S2CMessageHandler.NOTICE, (byte) notice});
+                }
+                return;
+            }
+
+            ByteBuffer message = ByteBuffer.allocate(1 + 16 + 4 + 1 + data.length);
+            message.put(S2CMessageHandler.PING).putLong(user.getMostSignificantBits()).putLong(user.getLeastSignificantBits());
+            message.putInt(id).put((byte) (sync ? 1 : 0)).put(data);
+            byte[] relayed = message.array();
+
+            for (WebSocket conn : subscribers.getOrDefault(user, Set.of())) {
+                deliver(conn, relayed);
+                stats.pingsRelayed.incrementAndGet();
+            }
+        }
+    }
+
+    private void notifyEquipped(UUID user) {
+        ByteBuffer message = ByteBuffer.allocate(17);
+        message.put(S2CMessageHandler.EVENT).putLong(user.getMostSignificantBits()).putLong(user.getLeastSignificantBits());
+        for (WebSocket conn : subscribers.getOrDefault(user, Set.of()))
+            deliver(conn, message.array());
+    }
+
+    private void unsubscribe(WebSocket conn, UUID id) {
+        subscribers.computeIfPresent(id, (k, set) -> {
+            set.remove(conn);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    //slow clients do not get to pile up messages on the backend
+    private void deliver(WebSocket conn, byte[] message) {
+        Runnable send = () -> {
+            if (!conn.isOpen())
+                return;
+
+            //checked and sent together, as the relay and decoder threads all send to the same connections
+            synchronized (conn) {
+                int queued = ((WebSocketImpl) conn).outQueue.size();
+                stats.maxOutgoing.accumulateAndGet(queued, Math::max);
+                if (queued >= settings.maxOutgoing) {
+                    stats.messagesDropped.incrementAndGet();
+                    return;
+                }
+                conn.send(message);
+            }
+        };
+
+        if (settings.latencyMillis <= 0) {
+            send.run();
+            return;
+        }
+
+        stats.maxRelayQueue.accumulateAndGet(relay.getQueue().size(), Math::max);
+        relay.schedule(send, settings.latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sleep(int millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package org.moon.figura.backend2;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the client http api and websocket messages against a local stand-in backend, under latency, failures and load
+class StandInBackendTest {
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Collections.reverse(resources);
+        for (AutoCloseable resource : resources)
+            resource.close();
+    }
+
+    @Test
+    void servesTheClientEndpoints() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings());
+        SyntheticUser alice = user(backend), bob = user(backend);
+        byte[] avatar = bytes(50_000, 1);
+
+        assertEquals(200, alice.request(alice.api.checkAuth()));
+        assertNotNull(alice.requestString(alice.api.getVersion()));
+        assertNotNull(alice.requestString(alice.api.getMotd()));
+        JsonObject limits = JsonParser.parseString(alice.requestString(alice.api.getLimits())).getAsJsonObject();
+        assertEquals(backend.settings.maxAvatarSize, limits.getAsJsonObject("limits").get("maxAvatarSize").getAsInt());
+
+        //upload and equip, like NetworkStuff.uploadAvatar does
+        assertEquals(200, alice.request(alice.api.uploadAvatar("avatar", avatar)));
+        assertEquals(200, alice.request(alice.api.setEquipped("[{\"owner\":\"" + alice.id() + "\",\"id\":\"avatar\"}]")));
+
+        //read back the way NetworkStuff.getUser reads it
+        JsonObject user = JsonParser.parseString(bob.requestString(bob.api.getUser(alice.id()))).getAsJsonObject();
+        assertEquals(alice.id(), UUID.fromString(user.get("uuid").getAsString()));
+        JsonArray equipped = user.getAsJsonArray("equipped");
+        assertEquals(1, equipped.size());
+        JsonObject entry = equipped.get(0).getAsJsonObject();
+        assertEquals(alice.id(), UUID.fromString(entry.get("owner").getAsString()));
+        assertEquals("avatar", entry.get("id").getAsString());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(avatar)), entry.get("hash").getAsString());
+        assertNotNull(user.getAsJsonObject("equippedBadges").getAsJsonArray("pride"));
+
+        assertArrayEquals(avatar, bob.download(alice.id(), "avatar"));
+
+        //errors
+        assertEquals(404, bob.request(bob.api.getUser(UUID.randomUUID())));
+        assertEquals(413, alice.request(alice.api.uploadAvatar("big", new byte[backend.settings.maxAvatarSize + 1])));
+        assertEquals(200, alice.request(alice.api.deleteAvatar("avatar")));
+        assertEquals(404, alice.request(alice.api.deleteAvatar("avatar")));
+        assertNull(bob.download(alice.id(), "avatar"));
+    }
+
+    @Test
+    void relaysPingsToSubscribers() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings());
+        SyntheticUser alice = connected(backend), bob = connected(backend);
+
+        bob.subscribe(alice.id());
+        await(() -> backend.subscriptions() == 1);
+
+        alice.ping(7, "hello".getBytes(StandardCharsets.UTF_8));
+        await(() -> bob.pings.get() == 1);
+        assertEquals(alice.id(), bob.lastPingOwner);
+        assertEquals(7, bob.lastPingId);
+        assertEquals("hello", new String(bob.lastPingData, StandardCharsets.UTF_8));
+        assertEquals(0, alice.pings.get(), "not subscribed to itself");
+
+        //equipping tells the subscribers to reload
+        assertEquals(200, alice.request(alice.api.uploadAvatar("avatar", bytes(100, 2))));
+        await(() -> bob.events.get() >= 1);
+
+        bob.unsubscribe(alice.id());
+        await(() -> backend.subscriptions() == 0);
+        alice.ping(8, new byte[0]);
+        alice.ping(9, new byte[0]);
+        Thread.sleep(200);
+        assertEquals(1, bob.pings.get());
+
+        //closing drops every subscription of the connection
+        bob.subscribe(alice.id());
+        await(() -> backend.subscriptions() == 1);
+        bob.close();
+        await(() -> backend.subscriptions() == 0);
+
+        //the websocket needs a valid token first
+        SyntheticUser stranger = new SyntheticUser(backend, client, new StandInBackend.User(UUID.randomUUID(), "invalid"), 0);
+        resources.add(stranger);
+        assertFalse(stranger.connect());
+        assertTrue(stranger.awaitClose());
+        assertEquals(3000, stranger.closeCode);
+    }
+
+    @Test
+    void addsLatency() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings().latency(100));
+        SyntheticUser alice = user(backend);
+
+        long start = System.nanoTime();
+        assertEquals(200, alice.request(alice.api.checkAuth()));
+        assertTrue(System.nanoTime() - start >= 100_000_000L);
+    }
+
+    @Test
+    void limitsBandwidth() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings().bandwidth(100_000));
+        SyntheticUser alice = user(backend);
+        byte[] avatar = bytes(50_000, 3);
+        assertEquals(200, alice.request(alice.api.uploadAvatar("avatar", avatar)));
+
+        //half a second worth of bytes
+        long start = System.nanoTime();
+        assertArrayEquals(avatar, alice.download(alice.id(), "avatar"));
+        long millis = (System.nanoTime() - start) / 1_000_000L;
+        assertTrue(millis >= 400, "downloaded " + avatar.length + " bytes in " + millis + "ms");
+    }
+
+    @Test
+    void injectsErrors() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings().errors(0.3));
+        List<SyntheticUser> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            users.add(user(backend));
+
+        //every request ends in one of the injected failures, or goes through
+        Map<Integer, Integer> codes = new TreeMap<>();
+        for (int i = 0; i < 20; i++) {
+            for (SyntheticUser user : users)
+                codes.merge(user.request(user.api.getUser(users.get(i % users.size()).id())), 1, Integer::sum);
+        }
+
+        assertTrue(Set.of(-1, 200, 500, 503).containsAll(codes.keySet()), codes.toString());
+        assertTrue(codes.containsKey(500) && codes.containsKey(503), codes.toString());
+
+        //the http client retries dropped connections once, so some injected errors never reach the caller
+        int failed = 200 - codes.get(200);
+        assertTrue(failed <= backend.stats.injectedErrors.get());
+        assertTrue(failed > 20 && failed < 90, failed + " of 200 requests failed, at a 30% error rate");
+    }
+
+    @Test
+    void enforcesRateLimits() throws Exception {
+        StandInBackend backend = backend(new StandInBackend.Settings().pingRate(10).uploadRate(2));
+        SyntheticUser alice = connected(backend), bob = connected(backend);
+        bob.subscribe(alice.id());
+        await(() -> backend.subscriptions() == 1);
+
+        //a burst of pings, only the allowed ones reach the subscribers
+        for (int i = 0; i < 100; i++)
+            alice.ping(i, new byte[16]);
+        await(() -> bob.pings.get() + alice.notices.get(1) == 100);
+        assertTrue(bob.pings.get() <= 10 + 2, bob.pings.get() + " pings relayed, at 10 per second");
+        assertTrue(alice.notices.get(1) >= 85);
+
+        alice.ping(100, new byte[backend.settings.pingSize + 1]);
+        await(() -> alice.notices.get(0) == 1);
+
+        //the same for uploads
+        int uploaded = 0;
+        for (int i = 0; i < 10; i++) {
+            int code = alice.request(alice.api.uploadAvatar("avatar", bytes(100, i)));
+            if (code == 200) uploaded++;
+            else assertEquals(429, code);
+        }
+        assertTrue(uploaded >= 2 && uploaded <= 3, uploaded + " uploads went through, at 2 per second");
+    }
+
+    @Test
+    void staysBoundedUnderLoad() throws Exception {
+        StandInBackend.Settings settings = new StandInBackend.Settings().latency(5).outgoing(64);
+        StandInBackend backend = backend(settings);
+        long memoryBefore = usedMemory();
+
+        //everyone follows a popular user and a few others, some are too slow to keep up with everything
+        int count = 100;
+        List<SyntheticUser> users = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            users.add(connected(backend));
+        SyntheticUser popular = users.get(0);
+        List<SyntheticUser> slow = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            slow.add(connected(new SyntheticUser(backend, client, backend.addUser(), 20)));
+
+        Random random = new Random(4);
+        for (SyntheticUser user : users) {
+            user.subscribe(popular.id());
+            for (int i = 0; i < 5; i++)
+                user.subscribe(users.get(random.nextInt(count)).id());
+        }
+        for (SyntheticUser user : slow) {
+            for (SyntheticUser other : users)
+                user.subscribe(other.id());
+        }
+        assertEquals(200, popular.request(popular.api.uploadAvatar("avatar", bytes(settings.maxAvatarSize, 5))));
+
+        //two seconds of everyone pinging way over the limit, while downloading the popular avatar
+        ExecutorService downloads = Executors.newFixedThreadPool(16);
+        resources.add(downloads::shutdownNow);
+        List<Future<?>> pending = new ArrayList<>();
+        byte[] ping = bytes(settings.pingSize, 6);
+        long sent = 0;
+        long start = System.nanoTime(), end = start + 2_000_000_000L;
+        for (int tick = 0; System.nanoTime() < end; tick++) {
+            for (SyntheticUser user : users) {
+                for (int i = 0; i < 4; i++)
+                    user.ping(tick, ping);
+                sent += 4;
+            }
+            if (tick % 4 == 0) {
+                for (int i = 0; i < 16; i++) {
+                    SyntheticUser user = users.get(random.nextInt(count));
+                    pending.add(downloads.submit(() -> user.download(popular.id(), "avatar")));
+                }
+            }
+            Thread.sleep(50);
+        }
+        for (Future<?> future : pending)
+            future.get(30, TimeUnit.SECONDS);
+
+        //the backend may still be working through its backlog, the limits apply to when it reads the pings
+        StandInBackend.Stats stats = backend.stats;
+        long total = sent;
+        await(() -> stats.pingsReceived.get() == total);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("load: %.1fs, %d pings relayed, %d rejected, %d messages dropped for slow clients, %d requests, %d rate limited%n",
+                seconds, stats.pingsRelayed.get(), stats.pingsRejected.get(), stats.messagesDropped.get(), stats.requests.get(), stats.rateLimited.get());
+        System.out.printf("load: max outgoing queue %d, max http queue %d, max relay queue %d%n",
+                stats.maxOutgoing.get(), stats.maxHttpQueue.get(), stats.maxRelayQueue.get());
+
+        //queues never grow past their limits, the slow clients lose messages instead
+        assertTrue(stats.maxOutgoing.get() <= settings.maxOutgoing);
+        assertTrue(stats.maxHttpQueue.get() <= settings.httpQueue);
+        assertTrue(stats.messagesDropped.get() > 0, "the slow clients never fell behind");
+
+        //every user pinged over twice its limit, only the allowed ones were accepted
+        long accepted = sent - stats.pingsRejected.get();
+        assertTrue(stats.pingsRejected.get() > 0);
+        assertTrue(accepted <= (long) count * settings.pingRate * (seconds + 1), accepted + " of " + sent + " pings accepted in " + seconds + "s");
+
+        //the stored avatars and the heap stay small, however much went through
+        assertTrue(backend.storedBytes() <= (long) (count + slow.size()) * settings.maxAvatarSize);
+        long growth = usedMemory() - memoryBefore;
+        assertTrue(growth < 64L * 1024 * 1024, "heap grew by " + growth / 1024 + "KB");
+    }
+
+    private StandInBackend backend(StandInBackend.Settings settings) throws Exception {
+        StandInBackend backend = new StandInBackend(settings);
+        resources.add(backend);
+        return backend;
+    }
+
+    private SyntheticUser user(StandInBackend backend) {
+        SyntheticUser user = new SyntheticUser(backend, client);
+        resources.add(user);
+        return user;
+    }
+
+    private SyntheticUser connected(StandInBackend backend) throws Exception {
+        return connected(user(backend));
+    }
+
+    private SyntheticUser connected(SyntheticUser user) throws Exception {
+        if (!resources.contains(user))
+            resources.add(user);
+        assertTrue(user.connect(), "websocket did not authenticate");
+        return user;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            while (!condition.getAsBoolean())
+                Thread.sleep(10);
+        });
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
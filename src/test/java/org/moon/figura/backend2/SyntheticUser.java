@@ -0,0 +1,203 @@
+package org.moon.figura.backend2;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.handshake.ServerHandshake;
+import org.moon.figura.backend2.websocket.C2SMessageHandler;
+import org.moon.figura.backend2.websocket.S2CMessageHandler;
+
+import javax.net.SocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//a player connected to the stand-in backend, through the client http api and the client websocket messages
+class SyntheticUser implements AutoCloseable {
+
+    final StandInBackend.User user;
+    final HttpAPI api;
+    final Connection ws;
+
+    //what the websocket received
+    final AtomicInteger pings = new AtomicInteger(), events = new AtomicInteger();
+    final AtomicIntegerArray notices = new AtomicIntegerArray(2);
+    volatile UUID lastPingOwner;
+    volatile int lastPingId;
+    volatile byte[] lastPingData;
+    volatile int closeCode;
+
+    private final CountDownLatch authed = new CountDownLatch(1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    SyntheticUser(StandInBackend backend, HttpClient client) {
+        this(backend, client, backend.addUser(), 0);
+    }
+
+    /**
+     * @param readDelayMillis how long each websocket message takes to handle, to act as a slow client
+     */
+    SyntheticUser(StandInBackend backend, HttpClient client, StandInBackend.User user, int readDelayMillis) {
+        this.user = user;
+        this.api = new HttpAPI(client, user.token(), backend.apiAddress());
+        this.ws = new Connection(URI.create(backend.wsAddress()), readDelayMillis);
+    }
+
+    UUID id() {
+        return user.id();
+    }
+
+    boolean connect() throws InterruptedException, IOException {
+        if (!ws.connectBlocking(5, TimeUnit.SECONDS))
+            return false;
+        ws.send(C2SMessageHandler.auth(user.token()));
+        return authed.await(5, TimeUnit.SECONDS);
+    }
+
+    boolean awaitClose() throws InterruptedException {
+        return closed.await(5, TimeUnit.SECONDS);
+    }
+
+    void ping(int id, byte[] data) throws IOException {
+        ws.send(C2SMessageHandler.ping(id, false, data));
+    }
+
+    void subscribe(UUID id) throws IOException {
+        ws.send(C2SMessageHandler.sub(id));
+    }
+
+    void unsubscribe(UUID id) throws IOException {
+        ws.send(C2SMessageHandler.unsub(id));
+    }
+
+    //the response code, or -1 when the request failed without one
+    int request(HttpRequest request) {
+        int[] code = {-1};
+        api.runString(request, (c, data) -> code[0] = c);
+        return code[0];
+    }
+
+    //the body of a successful response, null otherwise
+    String requestString(HttpRequest request) {
+        String[] body = {null};
+        api.runString(request, (code, data) -> body[0] = code == 200 ? data : null);
+        return body[0];
+    }
+
+    byte[] download(UUID owner, String id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean[] ok = {false};
+        api.runStream(api.getAvatar(owner, id), (code, stream) -> {
+            try (InputStream in = stream) {
+                if (code == 200) {
+                    in.transferTo(out);
+                    ok[0] = true;
+                }
+            } catch (IOException ignored) {}
+        });
+        return ok[0] ? out.toByteArray() : null;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        //a client that never connected has nothing to close, and would wait forever
+        if (ws.getReadyState() != ReadyState.NOT_YET_CONNECTED)
+            ws.closeBlocking();
+    }
+
+    class Connection extends WebSocketClient {
+
+        private final int readDelayMillis;
+
+        Connection(URI uri, int readDelayMillis) {
+            super(uri);
+            this.readDelayMillis = readDelayMillis;
+
+            //slow clients also have a small receive window, so the backlog shows up on the backend quickly
+            if (readDelayMillis > 0)
+                setSocketFactory(new SmallBufferSocketFactory());
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {}
+
+        @Override
+        public void onMessage(String message) {}
+
+        //same layout as S2CMessageHandler reads
+        @Override
+        public void onMessage(ByteBuffer bytes) {
+            if (readDelayMillis > 0) {
+                try {
+                    Thread.sleep(readDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            switch (bytes.get()) {
+                case S2CMessageHandler.AUTH -> authed.countDown();
+                case S2CMessageHandler.PING -> {
+                    lastPingOwner = new UUID(bytes.getLong(), bytes.getLong());
+                    lastPingId = bytes.getInt();
+                    bytes.get(); //sync
+                    byte[] data = new byte[bytes.remaining()];
+                    bytes.get(data);
+                    lastPingData = data;
+                    pings.incrementAndGet();
+                }
+                case S2CMessageHandler.EVENT -> events.incrementAndGet();
+                case S2CMessageHandler.NOTICE -> notices.incrementAndGet(bytes.get());
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            closeCode = code;
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(Exception ex) {}
+    }
+
+    private static class SmallBufferSocketFactory extends SocketFactory {
+
+        @Override
+        public Socket createSocket() throws IOException {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(4096);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.moon.figura.lua;
+
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.*;
+import org.luaj.vm2.lib.jse.JseBaseLib;
+import org.luaj.vm2.lib.jse.JseMathLib;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//every avatar runtime loads the builtin scripts, and a reload creates them all again
+class BuiltinScriptsTest {
+
+    private static final int AVATARS = 100;
+    private static final int ROUNDS = 5;
+
+    private interface Loader {
+        LuaValue load(String name, Globals globals) throws IOException;
+    }
+
+    private static final Loader CACHED = BuiltinScripts::load;
+    private static final Loader UNCACHED = (name, globals) -> new LuaClosure(BuiltinScripts.compile(name), globals);
+
+    @Test
+    void sharesOnePrototype() throws IOException {
+        assertSame(BuiltinScripts.get("sandbox"), BuiltinScripts.get("sandbox"));
+        assertSame(BuiltinScripts.get("math"), BuiltinScripts.get("math"));
+        assertNotSame(BuiltinScripts.get("math"), BuiltinScripts.compile("math"));
+    }
+
+    @Test
+    void closuresDoNotShareState() throws IOException {
+        Globals a = runtime(CACHED);
+        Globals b = runtime(CACHED);
+
+        //each runtime gets its own functions, bound to its own globals
+        LuaValue lerp = a.get("math").get("lerp");
+        assertNotSame(lerp, b.get("math").get("lerp"));
+        assertEquals(5, lerp.call(LuaValue.valueOf(0), LuaValue.valueOf(10), LuaValue.valueOf(0.5)).todouble());
+
+        a.get("math").set("lerp", LuaValue.NIL);
+        assertTrue(b.get("math").get("lerp").isfunction());
+    }
+
+    @Test
+    void behavesLikeCompilingEveryTime() throws IOException {
+        Globals cached = runtime(CACHED);
+        Globals uncached = runtime(UNCACHED);
+
+        for (String global : new String[] {"_VERSION", "debug", "dofile", "loadfile", "collectgarbage"})
+            assertEquals(uncached.get(global), cached.get(global), global);
+        assertSame(cached, cached.get("_GS"));
+
+        String[] functions = {"clamp", "lerp", "round", "map", "shortAngle", "lerpAngle", "sign"};
+        LuaValue[] args = {LuaValue.valueOf(370), LuaValue.valueOf(-20), LuaValue.valueOf(0.25), LuaValue.valueOf(3), LuaValue.valueOf(7)};
+        for (String function : functions) {
+            LuaValue expected = uncached.get("math").get(function).invoke(LuaValue.varargsOf(args)).arg1();
+            LuaValue actual = cached.get("math").get(function).invoke(LuaValue.varargsOf(args)).arg1();
+            assertEquals(expected, actual, function);
+        }
+        assertEquals(uncached.get("math").get("playerScale"), cached.get("math").get("playerScale"));
+    }
+
+    @Test
+    void createsRuntimesFaster() throws IOException {
+        //warm up both paths first, so the comparison is not about class loading
+        time(UNCACHED);
+        time(CACHED);
+
+        long uncached = Long.MAX_VALUE, cached = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            uncached = Math.min(uncached, time(UNCACHED));
+            cached = Math.min(cached, time(CACHED));
+        }
+
+        System.out.printf("creating %d runtimes: %.2fms compiling every time, %.2fms with shared prototypes%n", AVATARS, uncached / 1e6, cached / 1e6);
+        assertTrue(cached < uncached, "shared prototypes took " + cached + "ns, compiling took " + uncached + "ns");
+    }
+
+    //a batch of avatars reloading, like when joining a crowded server
+    private static long time(Loader loader) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < AVATARS; i++)
+            runtime(loader);
+        return System.nanoTime() - start;
+    }
+
+    //same libraries and builtin scripts as a FiguraLuaRuntime, without the figura apis
+    private static Globals runtime(Loader loader) throws IOException {
+        Globals globals = new Globals();
+        globals.load(new JseBaseLib());
+        globals.load(new Bit32Lib());
+        globals.load(new TableLib());
+        globals.load(new StringLib());
+        globals.load(new JseMathLib());
+        LuaC.install(globals);
+        globals.load(new DebugLib());
+
+        loader.load("sandbox", globals).call();
+
+        //the math script reads the vectors api
+        globals.set("vectors", new LuaTable());
+        loader.load("math", globals).call();
+
+        return globals;
+    }
+}
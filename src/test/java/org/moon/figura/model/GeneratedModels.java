@@ -0,0 +1,139 @@
+package org.moon.figura.model;
+
+import net.minecraft.nbt.*;
+import org.moon.figura.model.rendering.FiguraImmediateBuffer;
+import org.moon.figura.parsers.PackedGeometryParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//avatar models like the blockbench parser writes them, with cubes and meshes spread over a few textures
+public final class GeneratedModels {
+
+    public static final int TEXTURES = 3;
+
+    private GeneratedModels() {}
+
+    /**
+     * @param groups the groups under the root, each with its cubes and one mesh
+     * @param meshVertices the vertices of each mesh, over 255 and 32767 the indices are written as shorts and ints
+     */
+    public static CompoundTag model(int groups, int cubes, int meshVertices, long seed) {
+        Random random = new Random(seed);
+        ListTag children = new ListTag();
+        for (int i = 0; i < groups; i++) {
+            ListTag parts = new ListTag();
+            for (int j = 0; j < cubes; j++)
+                parts.add(cube("cube" + j, random));
+            parts.add(mesh("mesh", meshVertices, random));
+
+            CompoundTag group = new CompoundTag();
+            group.putString("name", "group" + i);
+            group.put("rot", floats(random.nextFloat() * 90, 0, 0));
+            group.put("chld", parts);
+            children.add(group);
+        }
+
+        CompoundTag root = new CompoundTag();
+        root.putString("name", "models");
+        root.put("chld", children);
+        return root;
+    }
+
+    public static CompoundTag cube(String name, Random random) {
+        CompoundTag part = new CompoundTag();
+        part.putString("name", name);
+        float x = random.nextFloat() * 16, y = random.nextFloat() * 16, z = random.nextFloat() * 16;
+        part.put("f", floats(x, y, z));
+        part.put("t", floats(x + 1 + random.nextInt(8), y + 1 + random.nextInt(8), z + 1 + random.nextInt(8)));
+        if (random.nextBoolean())
+            part.putFloat("inf", random.nextFloat() * 0.5f);
+
+        CompoundTag faces = new CompoundTag();
+        for (String direction : PackedGeometryParser.FACES) {
+            //some faces are usually left out
+            if (random.nextInt(6) == 0)
+                continue;
+
+            CompoundTag face = new CompoundTag();
+            face.putShort("tex", (short) random.nextInt(TEXTURES));
+            face.put("uv", floats(random.nextInt(64), random.nextInt(64), random.nextInt(64), random.nextInt(64)));
+            if (random.nextBoolean())
+                face.putFloat("rot", 90 * random.nextInt(4));
+            faces.put(direction, face);
+        }
+        part.put("cube_data", faces);
+        return part;
+    }
+
+    public static CompoundTag mesh(String name, int vertices, Random random) {
+        ListTag vtx = new ListTag();
+        for (int i = 0; i < vertices * 3; i++)
+            vtx.add(FloatTag.valueOf(random.nextFloat() * 32 - 16));
+
+        //the index list type follows the vertex count, like the model reader expects
+        ListTag tex = new ListTag(), fac = new ListTag(), uvs = new ListTag();
+        for (int face = 0; face < vertices; face++) {
+            int numVerts = random.nextBoolean() ? 3 : 4;
+            tex.add(ShortTag.valueOf((short) ((random.nextInt(TEXTURES) << 4) | numVerts)));
+            for (int j = 0; j < numVerts; j++) {
+                int index = random.nextInt(vertices);
+                fac.add(vertices > 32767 ? IntTag.valueOf(index) : vertices > 255 ? ShortTag.valueOf((short) index) : ByteTag.valueOf((byte) index));
+                uvs.add(FloatTag.valueOf(random.nextInt(64)));
+                uvs.add(FloatTag.valueOf(random.nextInt(64)));
+            }
+        }
+
+        CompoundTag mesh = new CompoundTag();
+        mesh.put("vtx", vtx);
+        mesh.put("tex", tex);
+        mesh.put("fac", fac);
+        mesh.put("uvs", uvs);
+
+        CompoundTag part = new CompoundTag();
+        part.putString("name", name);
+        part.put("mesh_data", mesh);
+        return part;
+    }
+
+    //reads the geometry of every part into shared builders, like the model reader does for a whole avatar
+    public static Geometry read(CompoundTag root) {
+        List<Integer> facesByTexture = new ArrayList<>();
+        List<FiguraImmediateBuffer.Builder> builders = new ArrayList<>();
+        for (int i = 0; i < TEXTURES; i++) {
+            facesByTexture.add(0);
+            builders.add(FiguraImmediateBuffer.builder());
+        }
+
+        List<PartCustomization.PartType> types = new ArrayList<>();
+        readParts(root, facesByTexture, builders, types);
+
+        List<FiguraImmediateBuffer.Data> data = new ArrayList<>();
+        for (FiguraImmediateBuffer.Builder builder : builders)
+            data.add(builder.build());
+        return new Geometry(data, facesByTexture, types);
+    }
+
+    private static void readParts(CompoundTag part, List<Integer> facesByTexture, List<FiguraImmediateBuffer.Builder> builders, List<PartCustomization.PartType> types) {
+        types.add(FiguraModelPartReader.readGeometry(part, facesByTexture, builders));
+        for (Tag child : part.getList("chld", Tag.TAG_COMPOUND))
+            readParts((CompoundTag) child, facesByTexture, builders, types);
+    }
+
+    public static int countParts(CompoundTag part) {
+        int count = 1;
+        for (Tag child : part.getList("chld", Tag.TAG_COMPOUND))
+            count += countParts((CompoundTag) child);
+        return count;
+    }
+
+    private static ListTag floats(float... values) {
+        ListTag list = new ListTag();
+        for (float value : values)
+            list.add(FloatTag.valueOf(value));
+        return list;
+    }
+
+    public record Geometry(List<FiguraImmediateBuffer.Data> textures, List<Integer> facesByTexture, List<PartCustomization.PartType> types) {}
+}
@@ -0,0 +1,216 @@
+package org.moon.figura.model;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.moon.figura.model.rendering.FiguraImmediateBuffer;
+import org.moon.figura.parsers.PackedGeometryParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//packed geometry has to render exactly like the nbt it replaces, and fail cleanly on bad data from other players
+class PackedGeometryTest {
+
+    // -- round trip -- //
+
+    //the mesh sizes pick byte, short and int indices in the nbt
+    @ParameterizedTest
+    @ValueSource(ints = {40, 1000, 40000})
+    void readsLikeTheUnpackedModel(int meshVertices) throws IOException {
+        CompoundTag model = GeneratedModels.model(meshVertices > 1000 ? 1 : 8, 10, meshVertices, meshVertices);
+        CompoundTag packed = model.copy();
+        PackedGeometryParser.pack(packed);
+        assertNoUnpackedGeometry(packed);
+
+        GeneratedModels.Geometry expected = GeneratedModels.read(model);
+        GeneratedModels.Geometry actual = GeneratedModels.read(packed);
+
+        assertEquals(expected.types(), actual.types());
+        assertEquals(expected.facesByTexture(), actual.facesByTexture());
+        for (int i = 0; i < GeneratedModels.TEXTURES; i++) {
+            FiguraImmediateBuffer.Data a = expected.textures().get(i), b = actual.textures().get(i);
+            assertBufferEquals(a.positions(), b.positions(), "positions of texture " + i);
+            assertBufferEquals(a.uvs(), b.uvs(), "uvs of texture " + i);
+            assertBufferEquals(a.normals(), b.normals(), "normals of texture " + i);
+        }
+    }
+
+    @Test
+    void packsSmallerThanNbt() throws IOException {
+        CompoundTag model = GeneratedModels.model(20, 20, 200, 11);
+        CompoundTag packed = model.copy();
+        PackedGeometryParser.pack(packed);
+
+        int raw = size(model, false), rawPacked = size(packed, false);
+        int compressed = size(model, true), compressedPacked = size(packed, true);
+        System.out.printf("geometry: %d bytes unpacked, %d packed, %d and %d compressed%n", raw, rawPacked, compressed, compressedPacked);
+
+        //the cube faces are compounds in nbt, with a name for every value
+        assertTrue(rawPacked < raw, rawPacked + " packed bytes against " + raw);
+        assertTrue(compressedPacked < compressed, compressedPacked + " packed bytes against " + compressed + ", compressed");
+    }
+
+
+    // -- malformed input -- //
+
+
+    //mesh layout offsets, see PackedGeometryParser
+    private static final int VERTEX_COUNT = 2;
+
+    @Test
+    void rejectsHugeCounts() {
+        Mesh mesh = new Mesh(300);
+        assertInvalid(mesh.withInt(VERTEX_COUNT, Integer.MAX_VALUE));
+        assertInvalid(mesh.withInt(VERTEX_COUNT, -1));
+        assertInvalid(mesh.withInt(VERTEX_COUNT, mesh.vertices * 10));
+        assertInvalid(mesh.withInt(mesh.faceCount(), Integer.MAX_VALUE));
+        assertInvalid(mesh.withInt(mesh.faceCount(), -1));
+
+        //one face more than written, its texture is then read from the index size
+        assertInvalid(mesh.withInt(mesh.faceCount(), mesh.faces + 1));
+    }
+
+    @Test
+    void rejectsTruncatedData() throws IOException {
+        Mesh mesh = new Mesh(300);
+        for (int length : new int[] {0, 1, 2, 5, mesh.faceCount() + 2, mesh.indexSize(), mesh.geo.length - 4})
+            assertInvalid(Arrays.copyOf(mesh.geo, length));
+
+        CompoundTag cube = GeneratedModels.cube("cube", new Random(3));
+        PackedGeometryParser.pack(cube);
+        byte[] geo = cube.getByteArray("geo");
+        assertInvalid(Arrays.copyOf(geo, geo.length - 1));
+    }
+
+    @Test
+    void rejectsInvalidFaces() {
+        Mesh mesh = new Mesh(300);
+        assertInvalid(mesh.withShort(mesh.tex(0), (short) 5));
+        assertInvalid(mesh.withShort(mesh.tex(0), (short) 2));
+        assertInvalid(mesh.withShort(mesh.tex(mesh.faces - 1), (short) (GeneratedModels.TEXTURES << 4 | 3)));
+        assertInvalid(mesh.withShort(mesh.tex(0), (short) -1));
+    }
+
+    @Test
+    void rejectsInvalidIndices() {
+        Mesh mesh = new Mesh(300);
+        for (int size : new int[] {0, 3, 8, -1})
+            assertInvalid(mesh.withByte(mesh.indexSize(), (byte) size));
+
+        //300 vertices take short indices
+        assertInvalid(mesh.withShort(mesh.indexSize() + 1, (short) mesh.vertices));
+        assertInvalid(mesh.withShort(mesh.indexSize() + 1, (short) -1));
+    }
+
+    @Test
+    void skipsNewerVersions() {
+        Mesh mesh = new Mesh(300);
+        GeneratedModels.Geometry geometry = read(mesh.withByte(0, (byte) (PackedGeometryParser.VERSION + 1)));
+        assertEquals(PartCustomization.PartType.GROUP, geometry.types().get(0));
+        for (int faces : geometry.facesByTexture())
+            assertEquals(0, faces);
+    }
+
+
+    // -- helpers -- //
+
+
+    //a packed mesh, with the offsets of its sections
+    private static final class Mesh {
+        final int vertices, faces;
+        final byte[] geo;
+
+        Mesh(int vertices) {
+            CompoundTag part = GeneratedModels.mesh("mesh", vertices, new Random(vertices));
+            this.vertices = vertices;
+            this.faces = part.getCompound("mesh_data").getList("tex", Tag.TAG_SHORT).size();
+            try {
+                PackedGeometryParser.pack(part);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.geo = part.getByteArray("geo");
+
+            //the untouched mesh reads fine
+            assertEquals(PartCustomization.PartType.MESH, read(geo).types().get(0));
+        }
+
+        int faceCount() {
+            return VERTEX_COUNT + 4 + vertices * 12;
+        }
+
+        int tex(int face) {
+            return faceCount() + 4 + face * 2;
+        }
+
+        int indexSize() {
+            return tex(faces);
+        }
+
+        byte[] withByte(int offset, byte value) {
+            byte[] copy = geo.clone();
+            copy[offset] = value;
+            return copy;
+        }
+
+        byte[] withShort(int offset, short value) {
+            byte[] copy = geo.clone();
+            ByteBuffer.wrap(copy).putShort(offset, value);
+            return copy;
+        }
+
+        byte[] withInt(int offset, int value) {
+            byte[] copy = geo.clone();
+            ByteBuffer.wrap(copy).putInt(offset, value);
+            return copy;
+        }
+    }
+
+    private static GeneratedModels.Geometry read(byte[] geo) {
+        CompoundTag part = new CompoundTag();
+        part.putByteArray("geo", geo);
+        return GeneratedModels.read(part);
+    }
+
+    private static void assertInvalid(byte[] geo) {
+        assertThrows(IllegalArgumentException.class, () -> read(geo));
+    }
+
+    private static void assertNoUnpackedGeometry(CompoundTag part) {
+        assertFalse(part.contains("cube_data"), part.getString("name"));
+        assertFalse(part.contains("mesh_data"), part.getString("name"));
+        ListTag children = part.getList("chld", Tag.TAG_COMPOUND);
+        for (Tag child : children)
+            assertNoUnpackedGeometry((CompoundTag) child);
+    }
+
+    //the built buffers are not flipped, so they are read by index
+    private static void assertBufferEquals(FloatBuffer expected, FloatBuffer actual, String message) {
+        assertEquals(expected.capacity(), actual.capacity(), message);
+        for (int i = 0; i < expected.capacity(); i++) {
+            if (Float.floatToIntBits(expected.get(i)) != Float.floatToIntBits(actual.get(i)))
+                fail(message + " differ at " + i + ": " + expected.get(i) + " against " + actual.get(i));
+        }
+    }
+
+    private static int size(CompoundTag tag, boolean compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (compressed)
+            NbtIo.writeCompressed(tag, out);
+        else
+            NbtIo.write(tag, new DataOutputStream(out));
+        return out.size();
+    }
+}
@@ -0,0 +1,134 @@
+package org.moon.figura.parsers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//textures embedded in a model are decoded while the json is read, gson never sees their base64 text
+class EmbeddedSourceReaderTest {
+
+    private static final Gson GSON = new Gson();
+
+    private static final String HEAD = "{\"meta\":{\"format_version\":\"4.5\",\"model_format\":\"free\"},\"textures\":[";
+
+    @Test
+    void decodesLargeSources() throws IOException {
+        //a 24MB texture is 32MB of base64, generated as the json is read so the test never holds it either
+        byte[] texture = random(24 << 20, 1);
+        String head = HEAD + "{\"name\":\"big.png\",\"relative_path\":\"../big.png\",\"source\":\"" + EmbeddedSourceReader.PREFIX;
+        String tail = "\"},{\"name\":\"after.png\",\"source\":\"" + source(new byte[] {1, 2, 3}) + "\"}]}";
+        InputStream json = new SequenceInputStream(Collections.enumeration(List.of(bytes(head), base64(texture), bytes(tail))));
+
+        EmbeddedSourceReader reader = new EmbeddedSourceReader(new InputStreamReader(json, StandardCharsets.UTF_8));
+        BlockbenchModel model = GSON.fromJson(reader, BlockbenchModel.class);
+
+        assertEquals(2, model.textures.length);
+        assertEquals("big.png", model.textures[0].name);
+        assertEquals("../big.png", model.textures[0].relative_path);
+        assertTrue(model.textures[0].source.length() < 64, "gson read the whole source");
+        assertArrayEquals(texture, reader.source(model.textures[0].source));
+        assertArrayEquals(new byte[] {1, 2, 3}, reader.source(model.textures[1].source));
+    }
+
+    //every padding length and tricky string, read one char at a time to split everything across refills
+    @Test
+    void keepsTheRestOfTheJson() {
+        Random random = new Random(2);
+        StringBuilder json = new StringBuilder(HEAD);
+        byte[][] textures = new byte[8][];
+        for (int i = 0; i < textures.length; i++) {
+            textures[i] = random(i * 7, random.nextLong());
+            //blockbench does not escape slashes, but other json writers may
+            String source = source(textures[i]);
+            if (i % 2 == 1)
+                source = source.replace("/", "\\/");
+            json.append(i > 0 ? "," : "").append("{\"name\":\"tex\\\"").append(i).append("\\\\\",\"source\" : \"").append(source).append("\"}");
+        }
+        json.append("],\"outliner\":[\"not a source: \\\"" + EmbeddedSourceReader.PREFIX + "AAAA\\\"\",\"" + EmbeddedSourceReader.PREFIX + "\"]}");
+
+        EmbeddedSourceReader reader = new EmbeddedSourceReader(new OneCharReader(json.toString()));
+        BlockbenchModel model = GSON.fromJson(reader, BlockbenchModel.class);
+
+        assertEquals(textures.length, model.textures.length);
+        for (int i = 0; i < textures.length; i++) {
+            assertEquals("tex\"" + i + "\\", model.textures[i].name);
+            assertArrayEquals(textures[i], reader.source(model.textures[i].source), "texture " + i);
+        }
+        assertEquals("not a source: \"" + EmbeddedSourceReader.PREFIX + "AAAA\"", model.outliner.get(0).getAsString());
+        assertArrayEquals(new byte[0], reader.source(model.outliner.get(1).getAsString()));
+    }
+
+    @Test
+    void failsInvalidSourcesWhenUsed() {
+        String json = HEAD + "{\"source\":\"" + EmbeddedSourceReader.PREFIX + "@@@@\"},{\"source\":\"" + EmbeddedSourceReader.PREFIX + "AAAA==BBBB\\n\"},{\"source\":\"" + source(new byte[] {4}) + "\"}]}";
+        EmbeddedSourceReader reader = new EmbeddedSourceReader(new StringReader(json));
+        BlockbenchModel model = GSON.fromJson(reader, BlockbenchModel.class);
+
+        assertThrows(IllegalArgumentException.class, () -> reader.source(model.textures[0].source));
+        assertArrayEquals(new byte[] {4}, reader.source(model.textures[2].source));
+    }
+
+    @Test
+    void failsUnterminatedSources() {
+        String json = HEAD + "{\"source\":\"" + EmbeddedSourceReader.PREFIX + "AAAA";
+        assertThrows(JsonParseException.class, () -> GSON.fromJson(new EmbeddedSourceReader(new StringReader(json)), BlockbenchModel.class));
+        assertThrows(JsonParseException.class, () -> GSON.fromJson(new EmbeddedSourceReader(new StringReader(json + "\\")), BlockbenchModel.class));
+    }
+
+    private static String source(byte[] texture) {
+        return EmbeddedSourceReader.PREFIX + Base64.getEncoder().encodeToString(texture);
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static InputStream bytes(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //encodes the texture a chunk at a time, as it is read
+    private static InputStream base64(byte[] texture) {
+        return new InputStream() {
+            private byte[] chunk = new byte[0];
+            private int pos, offset;
+
+            @Override
+            public int read() {
+                if (pos == chunk.length) {
+                    if (offset >= texture.length)
+                        return -1;
+                    int end = Math.min(texture.length, offset + 3 * 1024);
+                    chunk = Base64.getEncoder().encode(Arrays.copyOfRange(texture, offset, end));
+                    offset = end;
+                    pos = 0;
+                }
+                return chunk[pos++];
+            }
+        };
+    }
+
+    private static class OneCharReader extends StringReader {
+
+        OneCharReader(String text) {
+            super(text);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
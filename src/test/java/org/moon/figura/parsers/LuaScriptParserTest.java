@@ -0,0 +1,98 @@
+package org.moon.figura.parsers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the golden files were produced by the old regex minifier, which avatar hashes depend on
+class LuaScriptParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic", "comments", "strings", "heavy", "crlf", "math"})
+    void lightMatchesGolden(String name) throws IOException {
+        assertEquals(read(name + ".light.lua"), LuaScriptParser.lightMinify(read(name + ".lua")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"basic", "comments", "strings", "heavy", "crlf", "math"})
+    void heavyMatchesGolden(String name) throws IOException {
+        assertEquals(read(name + ".heavy.lua"), LuaScriptParser.heavyMinify(read(name + ".lua")));
+    }
+
+    @Test
+    void givesUpOnBrokenScripts() {
+        assertNull(LuaScriptParser.lightMinify("local s = \"unfinished\nprint(s)"));
+        assertNull(LuaScriptParser.lightMinify("local a = b -"));
+        assertNull(LuaScriptParser.heavyMinify("local s = 'unfinished"));
+    }
+
+    //heavy output has nothing left to remove, unlike light output where blank lines collapse again
+    @Test
+    void heavyIsIdempotent() throws IOException {
+        String heavy = LuaScriptParser.heavyMinify(read("basic.lua"));
+        assertEquals(heavy, LuaScriptParser.heavyMinify(heavy));
+    }
+
+    // -- benchmark -- //
+
+    //the old minifier took over 10 seconds on a script this size
+    @Test
+    void minifiesLargeScriptsInLinearTime() {
+        String script = largeScript(500_000);
+
+        //warm up, so the timings below are not dominated by the jit
+        for (int i = 0; i < 3; i++)
+            LuaScriptParser.heavyMinify(script);
+
+        long light = time(() -> LuaScriptParser.lightMinify(script));
+        long heavy = time(() -> LuaScriptParser.heavyMinify(script));
+        System.out.printf("minified %d chars: light %.1f ms (%.1f MB/s), heavy %.1f ms (%.1f MB/s)%n",
+                script.length(), light / 1e6, script.length() * 1e3 / light, heavy / 1e6, script.length() * 1e3 / heavy);
+
+        //doubling the script should not quadruple the time, with a lot of headroom for noisy machines
+        String doubled = script + script;
+        long twice = time(() -> LuaScriptParser.heavyMinify(doubled));
+        assertTrue(twice < heavy * 6 + 50_000_000L, "heavy minify is not linear: " + heavy + " ns, then " + twice + " ns for twice the input");
+    }
+
+    private static long time(Runnable runnable) {
+        return assertTimeout(Duration.ofSeconds(5), () -> {
+            long start = System.nanoTime();
+            runnable.run();
+            return System.nanoTime() - start;
+        });
+    }
+
+    //random but valid avatar-like code, with every token kind the minifier handles
+    private static String largeScript(int size) {
+        String[] lines = {
+                "local value_%d = math.max(%d, 2) * 0.5 -- comment %d\n",
+                "\tif value_%d ~= %d then print(\"string %d -- not a comment\") end\n",
+                "--[[ block comment %d\n  spanning %d lines %d ]]\n",
+                "local text_%d = [==[ long %d\nstring %d ]==]\n",
+                "    models.model.Part_%d:setPos(%d, 'x', %d)   \n",
+                "\n\n",
+        };
+
+        Random random = new Random(1234);
+        StringBuilder builder = new StringBuilder(size + 100);
+        for (int i = 0; builder.length() < size; i++)
+            builder.append(lines[random.nextInt(lines.length)].formatted(i, i, i));
+        return builder.toString();
+    }
+
+    private static String read(String file) throws IOException {
+        try (InputStream stream = LuaScriptParserTest.class.getResourceAsStream("/minifier/" + file)) {
+            assertNotNull(stream, "missing test resource " + file);
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.moon.figura.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the particle engine tracks avatar particles through this index
+class OwnerIndexTest {
+
+    private static final int OWNERS = 200;
+    private static final int PARTICLES = 20_000;
+
+    //stand-in for a particle, compared by identity like the real ones
+    private static final class Particle {}
+
+    @Test
+    void countsParticlesPerOwner() {
+        OwnerIndex<Particle> index = new OwnerIndex<>();
+        List<UUID> owners = owners();
+        Map<UUID, List<Particle>> expected = fill(index, owners, new Random(1));
+
+        assertEquals(PARTICLES, index.size());
+        for (UUID owner : owners)
+            assertEquals(expected.get(owner).size(), index.count(owner));
+        assertEquals(0, index.count(UUID.randomUUID()));
+    }
+
+    @Test
+    void removesSingleParticles() {
+        OwnerIndex<Particle> index = new OwnerIndex<>();
+        List<UUID> owners = owners();
+        Random random = new Random(2);
+        Map<UUID, List<Particle>> expected = fill(index, owners, random);
+
+        //like particles dying or being evicted by the engine, in random order
+        int removed = 0;
+        for (List<Particle> particles : expected.values()) {
+            Collections.shuffle(particles, random);
+            int toRemove = random.nextInt(particles.size() + 1);
+            for (int i = 0; i < toRemove; i++)
+                assertTrue(index.remove(particles.remove(particles.size() - 1)));
+            removed += toRemove;
+        }
+
+        assertFalse(index.remove(new Particle()));
+        assertEquals(PARTICLES - removed, index.size());
+        for (UUID owner : owners)
+            assertEquals(expected.get(owner).size(), index.count(owner));
+    }
+
+    @Test
+    void removesOnlyTheOwnerParticles() {
+        OwnerIndex<Particle> index = new OwnerIndex<>();
+        List<UUID> owners = owners();
+        Map<UUID, List<Particle>> expected = fill(index, owners, new Random(3));
+
+        UUID cleared = owners.get(0);
+        Set<Particle> removed = index.removeOwner(cleared);
+        assertEquals(new HashSet<>(expected.get(cleared)), removed);
+        assertEquals(0, index.count(cleared));
+        assertEquals(PARTICLES - removed.size(), index.size());
+
+        //removing them again is a no-op, and does not touch anyone else
+        for (Particle particle : removed)
+            assertFalse(index.remove(particle));
+        assertTrue(index.removeOwner(cleared).isEmpty());
+        for (UUID owner : owners.subList(1, owners.size()))
+            assertEquals(expected.get(owner).size(), index.count(owner));
+    }
+
+    @Test
+    void clearsEverything() {
+        OwnerIndex<Particle> index = new OwnerIndex<>();
+        List<UUID> owners = owners();
+        fill(index, owners, new Random(4));
+
+        assertEquals(PARTICLES, index.clear().size());
+        assertEquals(0, index.size());
+        for (UUID owner : owners)
+            assertEquals(0, index.count(owner));
+    }
+
+    @Test
+    void movesParticlesBetweenOwners() {
+        OwnerIndex<Particle> index = new OwnerIndex<>();
+        UUID first = UUID.randomUUID(), second = UUID.randomUUID();
+        Particle particle = new Particle();
+
+        index.add(first, particle);
+        index.add(second, particle);
+
+        assertEquals(0, index.count(first));
+        assertEquals(1, index.count(second));
+        assertEquals(1, index.size());
+    }
+
+    private static List<UUID> owners() {
+        List<UUID> owners = new ArrayList<>();
+        for (int i = 0; i < OWNERS; i++)
+            owners.add(UUID.randomUUID());
+        return owners;
+    }
+
+    private static Map<UUID, List<Particle>> fill(OwnerIndex<Particle> index, List<UUID> owners, Random random) {
+        Map<UUID, List<Particle>> expected = new HashMap<>();
+        for (UUID owner : owners)
+            expected.put(owner, new ArrayList<>());
+
+        for (int i = 0; i < PARTICLES; i++) {
+            UUID owner = owners.get(random.nextInt(owners.size()));
+            Particle particle = new Particle();
+            index.add(owner, particle);
+            expected.get(owner).add(particle);
+        }
+
+        return expected;
+    }
+}
@@ -0,0 +1,145 @@
+package org.moon.figura.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//config and cache files are saved through the scheduler, on every change
+class SaveSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    private final SaveScheduler scheduler = new SaveScheduler();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void writesTheLatestStateOfEveryFile() throws IOException {
+        Random random = new Random(5);
+        Map<Path, String> expected = new HashMap<>();
+
+        //changes spread over many ticks, with some files changing far more than others
+        for (int tick = 0; tick < 500; tick++) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                Path path = dir.resolve("file" + random.nextInt(12) + ".json");
+                String value = "tick " + tick + " change " + i;
+                expected.put(path, value);
+                scheduler.schedule(path, serializer(value));
+            }
+            scheduler.tick();
+        }
+        scheduler.flush();
+
+        for (Map.Entry<Path, String> entry : expected.entrySet())
+            assertEquals(entry.getValue(), read(entry.getKey()));
+        try (var files = Files.list(dir)) {
+            assertEquals(expected.size(), files.count(), "temp files were left behind");
+        }
+    }
+
+    @Test
+    void coalescesChangesWithinTheDelay() throws IOException {
+        Path path = dir.resolve("config.json");
+
+        //like dragging a slider, one change every tick
+        int ticks = 1000;
+        for (int tick = 0; tick < ticks; tick++) {
+            scheduler.schedule(path, serializer("value " + tick));
+            scheduler.tick();
+        }
+        scheduler.flush();
+
+        assertEquals("value " + (ticks - 1), read(path));
+        assertTrue(writes.get() <= ticks / SaveScheduler.DELAY + 1, writes.get() + " writes for " + ticks + " ticks");
+    }
+
+    @Test
+    void waitsForTheDelay() {
+        Path path = dir.resolve("config.json");
+        scheduler.schedule(path, serializer("value"));
+
+        for (int tick = 0; tick < SaveScheduler.DELAY - 1; tick++)
+            scheduler.tick();
+        assertEquals(0, writes.get());
+
+        scheduler.tick();
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void keepsWritingAfterFlushing() throws IOException {
+        Path path = dir.resolve("config.json");
+        scheduler.schedule(path, serializer("first"));
+        scheduler.flush();
+        assertEquals("first", read(path));
+
+        scheduler.schedule(path, serializer("second"));
+        for (int tick = 0; tick < SaveScheduler.DELAY; tick++)
+            scheduler.tick();
+        scheduler.flush();
+        assertEquals("second", read(path));
+    }
+
+    @Test
+    void writesRightAwayAfterShuttingDown() throws IOException {
+        Path path = dir.resolve("config.json");
+        scheduler.schedule(path, serializer("before"));
+        scheduler.shutdown();
+        assertEquals("before", read(path));
+
+        //no ticks nor flushes happen anymore
+        scheduler.schedule(path, serializer("after"));
+        assertEquals("after", read(path));
+    }
+
+    @Test
+    void failedSavesDoNotStopTheOthers() throws IOException {
+        Path broken = dir.resolve("broken.json");
+        Path path = dir.resolve("config.json");
+
+        scheduler.schedule(broken, () -> {
+            throw new IllegalStateException("test failure");
+        });
+        scheduler.schedule(path, serializer("value"));
+        scheduler.flush();
+
+        assertFalse(Files.exists(broken));
+        assertEquals("value", read(path));
+    }
+
+    @Test
+    void replacesExistingFiles() throws IOException {
+        Path path = dir.resolve("config.json");
+        Files.writeString(path, "a much longer old value than the new one");
+
+        scheduler.schedule(path, serializer("new"));
+        scheduler.flush();
+        assertEquals("new", read(path));
+    }
+
+    private Callable<byte[]> serializer(String value) {
+        return () -> {
+            writes.incrementAndGet();
+            return value.getBytes(StandardCharsets.UTF_8);
+        };
+    }
+
+    private static String read(Path path) throws IOException {
+        return Files.readString(path, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1 @@
+local model=models.model local speed=0.5 function events.tick()local pos=player:getPos()if pos.y>64 then model.Head:setRot(0,world.getTime()*speed,0)end end function events.render(delta,context)model:setVisible(context~="FIRST_PERSON")end
\ No newline at end of file
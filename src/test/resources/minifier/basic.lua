@@ -0,0 +1,19 @@
+#!/usr/bin/env lua
+-- simple avatar script
+local model = models.model   -- trailing comment
+local speed  =  0.5
+
+function events.tick()
+	local pos = player:getPos()
+	if pos.y > 64 then
+		model.Head:setRot(0, world.getTime() * speed, 0)
+	end
+end
+
+
+
+function events.render(delta, context)
+    model:setVisible(context ~= "FIRST_PERSON")
+end
+
+
@@ -0,0 +1 @@
+local a=1 local b=2 local c=3 local function f(x)return x--x end local d=a-b print(a,b,c,d,f(4))
\ No newline at end of file
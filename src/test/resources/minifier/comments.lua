@@ -0,0 +1,12 @@
+--[[
+  block comment
+  spanning lines
+]]
+local a = 1 --[==[ inline
+block ]==] local b = 2
+--[[ single line block ]] local c = 3
+---@param x number
+local function f(x) return x - -x end -- minus minus
+--[=[ unclosed long comment
+local d = a-b
+print(a, b, c, d, f(4))
@@ -0,0 +1 @@
+local a=1 local b="x"print(a,b)
\ No newline at end of file
@@ -0,0 +1,6 @@
+local a = 1
+
+
+
+local b = "x"
+print(a, b)
@@ -0,0 +1,7 @@
+local a = 1
+-- comment
+
+
+local b = "x"  
+print(a, b)
+
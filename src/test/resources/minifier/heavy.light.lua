@@ -0,0 +1,9 @@
+local x = 10
+local y=x + 20
+if x == 10 and y ~= 5 then
+return x, y
+end
+for i = 1, 10 do print ( i ) end
+local tbl = { a = 1 , b = 2 , [ "c d" ] = 3 }
+while not done do done = true end
+return 1 .. 2
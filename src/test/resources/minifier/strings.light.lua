@@ -0,0 +1,11 @@
+local s1 = "double -- not a comment"
+local s2 = 'single [[ not long ]]'
+local s3 = [[long
+  string -- kept
+	as is]]
+local s4 = [==[ level ]] two ]==]
+local s5 = "escaped \"quote\" inside"
+local s6 = 'tab	and   spaces'
+local t = { s1, s2, s3, s4, s5, s6 }
+local i = t[1] .. t [ 2 ]
+return i